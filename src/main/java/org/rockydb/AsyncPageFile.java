@@ -0,0 +1,99 @@
+package org.rockydb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Asynchronous page reads on an {@link AsynchronousFileChannel}. A read is issued without
+ * blocking the caller and completes on a small fixed group of I/O threads, so many outstanding
+ * misses need no thread each. Blocking reads and writes go through the regular channel instead of
+ * waiting on an asynchronous one, so code running on an I/O thread can never wait for a
+ * completion that needs that same thread.
+ */
+final class AsyncPageFile implements PageFile {
+    static final int IO_THREADS = 4;
+
+    private final ExecutorService ioThreads;
+    private final AsynchronousFileChannel channel;
+    private final PageFile blocking;
+
+    AsyncPageFile(File dbFile, FileChannel fileChannel) {
+        this.blocking = new ChannelPageFile(fileChannel);
+        this.ioThreads = Executors.newFixedThreadPool(IO_THREADS, task -> {
+            Thread thread = new Thread(task, "rockydb-async-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            this.channel = AsynchronousFileChannel.open(dbFile.toPath(),
+                    Set.of(StandardOpenOption.READ, StandardOpenOption.WRITE), ioThreads);
+        } catch (IOException e) {
+            ioThreads.shutdown();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void read(long id, ByteBuffer page) {
+        blocking.read(id, page);
+    }
+
+    @Override
+    public void write(long id, ByteBuffer page) {
+        blocking.write(id, page);
+    }
+
+    @Override
+    public CompletableFuture<Void> readAsync(long id, ByteBuffer page) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ByteBuffer dst = page.duplicate().clear();
+        long position = id * Store.PAGE_SIZE;
+        channel.read(dst, position, dst, new CompletionHandler<>() {
+            @Override
+            public void completed(Integer read, ByteBuffer buffer) {
+                if (read >= 0 && buffer.hasRemaining()) {
+                    channel.read(buffer, position + buffer.position(), buffer, this);
+                    return;
+                }
+                while (buffer.hasRemaining()) {
+                    buffer.put((byte) 0);
+                }
+                done.complete(null);
+            }
+
+            @Override
+            public void failed(Throwable e, ByteBuffer buffer) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
+    }
+
+    @Override
+    public long pageCount() throws IOException {
+        return blocking.pageCount();
+    }
+
+    @Override
+    public void force() throws IOException {
+        blocking.force();
+    }
+
+    @Override
+    public void close(long pageCount) throws IOException {
+        channel.force(false);
+        channel.close();
+        ioThreads.shutdown();
+        blocking.close(pageCount);
+    }
+}
@@ -0,0 +1,43 @@
+package org.rockydb;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A counting semaphore whose {@link #acquire} never blocks: it returns a future that completes once
+ * a permit is granted, in request order. A released permit is handed straight to the oldest waiter.
+ * The waiter is completed on the common pool rather than on the releasing thread, so a chain of
+ * waiters that finish immediately cannot recurse through one stack.
+ */
+final class AsyncPermits {
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int available;
+
+    AsyncPermits(int permits) {
+        this.available = permits;
+    }
+
+    CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if (available > 0) {
+                available--;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.addLast(waiter);
+            return waiter;
+        }
+    }
+
+    void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            next = waiters.pollFirst();
+            if (next == null) {
+                available++;
+                return;
+            }
+        }
+        next.completeAsync(() -> null);
+    }
+}
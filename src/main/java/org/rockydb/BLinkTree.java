@@ -1,33 +1,295 @@
 package org.rockydb;
 
-
 import org.rockydb.Node.CreationResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+/**
+ * A B-link tree: every node links to its right sibling, so readers need no latches and writers
+ * latch one node per level at a time. All operations on a tree must go through one instance.
+ */
 public class BLinkTree {
+    public static final double DEFAULT_FILL_FACTOR = 0.9;
+    public static final int DEFAULT_READ_AHEAD = 8;
+    /** Nodes smaller than this are merged with a sibling after a delete. */
+    static final int UNDERFULL_SIZE = Node.MAX_NODE_SIZE / 4;
+    /** Merges that would produce a node bigger than this are skipped, so it does not split again soon. */
+    static final int MERGED_SIZE_LIMIT = Node.MAX_NODE_SIZE * 3 / 4;
+
     private final Store store;
     private final RootRef rootRef;
+    private final RetiredPages retired;
+    private final ValueStorage values;
 
     public BLinkTree(Store store) {
         this(store, new StoreBackedRootRef(store));
     }
 
     public BLinkTree(Store store, RootRef rootRef) {
+        this(store, rootRef, new OverflowChain(store));
+    }
+
+    BLinkTree(Store store, RootRef rootRef, ValueStorage values) {
         this.store = store;
         this.rootRef = rootRef;
+        this.retired = new RetiredPages(store);
+        this.values = values;
     }
 
     public Value get(Value key) {
-        long rootId = rootRef.get();
-        Node node = store.readNode(rootId);
-        while (node.nextNode(key) != -1) {
-            node = store.readNode(node.nextNode(key));
+        long ticket = retired.enter();
+        try {
+            return resolve(find(key));
+        } finally {
+            retired.exit(ticket);
+        }
+    }
+
+    /**
+     * Streams the value stored for {@code key}, or returns {@code null} if there is none. Close it
+     * promptly: until then, pages this tree retires are not freed.
+     */
+    public InputStream openValue(Value key) {
+        long ticket = retired.enter();
+        boolean handedOver = false;
+        try {
+            Value value = find(key);
+            if (value == null) {
+                return null;
+            }
+            if (!value.isOverflowRef()) {
+                return new ByteArrayInputStream(value.bytes());
+            }
+            InputStream stream = values.open(value, () -> retired.exit(ticket));
+            handedOver = true;
+            return stream;
+        } finally {
+            if (!handedOver) {
+                retired.exit(ticket);
+            }
+        }
+    }
+
+    private Value find(Value key) {
+        return find(store, rootRef, retired, key);
+    }
+
+    /** The value stored for {@code key}, as the leaf holds it; call within an operation. */
+    static Value find(Store store, RootRef rootRef, RetiredPages retired, Value key) {
+        long id = rootRef.get();
+        while (true) {
+            Store.SearchResult step = store.search(id, key);
+            if (retired.isRetired(id)) {
+                id = rootRef.get();
+            } else if (step.next() == -1) {
+                return step.value();
+            } else {
+                id = step.next();
+            }
+        }
+    }
+
+    /** The value stored for {@code key} as the leaf holds it, a reference left unresolved. */
+    Value storedValue(Value key) {
+        long ticket = retired.enter();
+        try {
+            return find(key);
+        } finally {
+            retired.exit(ticket);
+        }
+    }
+
+    /** Reads the value behind a reference, within the operation that found it. */
+    private Value resolve(Value value) {
+        return value != null && value.isOverflowRef() ? values.read(value) : value;
+    }
+
+    /** Asynchronous {@link #get}, chaining each step of the descent on the previous page read. */
+    public CompletableFuture<Value> getAsync(Value key) {
+        long ticket = retired.enter();
+        CompletableFuture<Value> result;
+        try {
+            result = getAsync(rootRef.get(), key).thenApply(this::resolve);
+        } catch (RuntimeException e) {
+            retired.exit(ticket);
+            throw e;
+        }
+        return result.whenComplete((value, error) -> retired.exit(ticket));
+    }
+
+    private CompletableFuture<Value> getAsync(long id, Value key) {
+        return store.searchAsync(id, key).thenCompose(step -> {
+            if (retired.isRetired(id)) {
+                return getAsync(rootRef.get(), key);
+            }
+            return step.next() == -1
+                    ? CompletableFuture.completedFuture(step.value())
+                    : getAsync(step.next(), key);
+        });
+    }
+
+    /**
+     * Looks up every key in {@code keys} with one shared descent that reads each node once per run
+     * of keys it covers. Keys that are not present are absent from the returned map.
+     */
+    public Map<Value, Value> getAll(Collection<Value> keys) {
+        Value[] sorted = new TreeSet<>(keys).toArray(new Value[0]);
+        Map<Value, Value> result = new HashMap<>();
+        if (sorted.length == 0) {
+            return result;
+        }
+        long ticket = retired.enter();
+        try {
+            while (true) {
+                long rootId = rootRef.get();
+                Node root = store.readNode(rootId);
+                if (!retired.isRetired(rootId) && collect(root, sorted, 0, sorted.length, result)) {
+                    result.replaceAll((key, value) -> resolve(value));
+                    return result;
+                }
+                result.clear(); // landed on a page merged away meanwhile; start over
+            }
+        } finally {
+            retired.exit(ticket);
+        }
+    }
+
+    /** Returns {@code false} if the descent reached a retired page and has to start over. */
+    private boolean collect(Node node, Value[] keys, int from, int to, Map<Value, Value> result) {
+        int runStart = from;
+        while (runStart < to) {
+            long next = node.nextNode(keys[runStart]);
+            if (next == -1) {
+                // a leaf that covers keys[runStart]; every key it does not cover has to go right
+                LeafNode leaf = (LeafNode) node;
+                Value value = leaf.getValueForKey(keys[runStart]);
+                if (value != null) {
+                    result.put(keys[runStart], value);
+                }
+                runStart++;
+                continue;
+            }
+            int runEnd = runStart + 1;
+            while (runEnd < to && node.nextNode(keys[runEnd]) == next) {
+                runEnd++;
+            }
+            Node child = store.readNode(next);
+            if (retired.isRetired(next) || !collect(child, keys, runStart, runEnd, result)) {
+                return false;
+            }
+            runStart = runEnd;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the entries with {@code from <= key < to} in key order. Either bound may be
+     * {@code null} to leave that side open.
+     */
+    public Iterator<Map.Entry<Value, Value>> scan(Value from, Value to) {
+        return scan(from, to, DEFAULT_READ_AHEAD);
+    }
+
+    /**
+     * Like {@link #scan(Value, Value)}, keeping up to {@code readAhead} upcoming leaves of the range
+     * prefetching in the store while the current one is consumed; {@code 0} disables read-ahead.
+     */
+    public Iterator<Map.Entry<Value, Value>> scan(Value from, Value to, int readAhead) {
+        if (readAhead < 0) {
+            throw new IllegalArgumentException("readAhead must be >= 0");
         }
-        return ((LeafNode) node).getValueForKey(key);
+        return new RangeCursor(store, rootRef, retired, values, from, to, readAhead);
     }
 
     public void addValue(Value key, Value value) {
+        Value stored = values.stored(key, value); // the leaf keeps a reference to a value too big for it
+        insert(key, handle -> handle.putInPlace(key, stored), leaf -> leaf.copyWith(key, stored, store.nodeIdGenerator()));
+    }
+
+    /**
+     * Inserts or overwrites every entry of {@code entries}, writing consecutive keys that land in the
+     * same leaf under one latch and one page write.
+     */
+    public void putAll(SortedMap<Value, Value> entries) {
+        NavigableMap<Value, Value> pending = new TreeMap<>();
+        entries.forEach((key, value) -> pending.put(key, values.stored(key, value)));
+        while (!pending.isEmpty()) {
+            insert(pending.firstKey(), handle -> false, leaf -> leaf.copyWithAll(pending, store.nodeIdGenerator()));
+        }
+    }
+
+    /**
+     * Latches the leaf covering {@code key} and offers it to {@code inPlace}, falling back to
+     * {@code mutation} on the deserialized node and propagating any split upwards.
+     */
+    private void insert(Value key, Predicate<WriteHandle> inPlace, Function<LeafNode, CreationResult> mutation) {
+        List<Value> replaced = new ArrayList<>();
+        long ticket = retired.enter();
+        try {
+            while (!tryInsert(key, inPlace, leaf -> replacing(leaf, mutation, replaced))) {
+                // the leaf was merged away before we latched it
+            }
+            replaced.forEach(this::release); // what they free waits for running operations
+        } finally {
+            retired.exit(ticket);
+        }
+    }
+
+    /** Applies {@code mutation} to {@code leaf}, adding the references the result dropped to {@code replaced}. */
+    private static CreationResult replacing(LeafNode leaf, Function<LeafNode, CreationResult> mutation, List<Value> replaced) {
+        // taken first, as the mutation may reuse the leaf's arrays
+        Value[] keys = leaf.getKeys();
+        Value[] values = leaf.getValues();
+        Map<Value, Value> refs = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].isOverflowRef()) {
+                refs.put(keys[i], values[i]);
+            }
+        }
+        CreationResult result = mutation.apply(leaf);
+        refs.forEach((key, ref) -> {
+            Value now = ((LeafNode) result.left()).getValueForKey(key);
+            if (now == null && result.right() != null) {
+                now = ((LeafNode) result.right()).getValueForKey(key);
+            }
+            if (!ref.equals(now)) {
+                replaced.add(ref);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Sets {@code key} to {@code replacement} if it still holds {@code expected}, both as a leaf
+     * stores them, and returns whether it did. The value storage uses it to move values.
+     */
+    boolean replace(Value key, Value expected, Value replacement) {
+        boolean[] replaced = new boolean[1];
+        insert(key, handle -> false, leaf -> {
+            if (!expected.equals(leaf.getValueForKey(key))) {
+                return new CreationResult(leaf, null, null);
+            }
+            replaced[0] = true;
+            return leaf.copyWith(key, replacement, store.nodeIdGenerator());
+        });
+        return replaced[0];
+    }
+
+    /** Runs {@code action} once every operation on the tree running now has finished. */
+    void afterRunningOperations(Runnable action) {
+        retired.defer(action);
+    }
+
+    private void release(Value ref) {
+        values.release(ref, retired);
+    }
+
+    private boolean tryInsert(Value key, Predicate<WriteHandle> inPlace, Function<LeafNode, CreationResult> mutation) {
         Deque<Long> ancestors = new ArrayDeque<>();
         long currentId = rootRef.get();
         Node node = store.readNode(currentId);
@@ -41,6 +303,12 @@ public class BLinkTree {
 
         WriteHandle handle = store.latchForWrite(currentId);
         try {
+            if (retired.isRetired(currentId)) {
+                return false;
+            }
+            if (inPlace.test(handle)) {
+                return true;
+            }
             LeafNode leaf = (LeafNode) handle.get();
 
             while (leaf.nextNode(key) != -1) {
@@ -51,7 +319,7 @@ public class BLinkTree {
             }
 
             boolean isRoot = rootRef.get() == leaf.id();
-            CreationResult result = leaf.copyWith(key, value, store.nodeIdGenerator());
+            CreationResult result = mutation.apply(leaf);
 
             while (result.promotedValue() != null) {
                 Node rightChild = store.writeNode(result.right());
@@ -71,6 +339,11 @@ public class BLinkTree {
                     parentId = descendToLevel(result.promotedValue(), leftChild.height() + 1);
                 }
                 WriteHandle parent = store.latchForWrite(parentId);
+                while (retired.isRetired(parentId)) {
+                    parent.close();
+                    parentId = descendToLevel(result.promotedValue(), leftChild.height() + 1);
+                    parent = store.latchForWrite(parentId);
+                }
                 try {
                     BranchNode parentNode = (BranchNode) parent.get();
 
@@ -95,12 +368,37 @@ public class BLinkTree {
             if (result != null) {
                 handle.set(result.left());
             }
+            return true;
         } finally {
             handle.close();
         }
     }
 
+    /**
+     * Removes {@code key}. A leaf left smaller than {@link #UNDERFULL_SIZE} is then merged with a
+     * sibling under the same parent, and so on upwards while parents become underfull.
+     */
     public void delete(Value key) {
+        List<Value> removed = new ArrayList<>();
+        long ticket = retired.enter();
+        try {
+            int size;
+            while ((size = tryDelete(key, removed)) == RETRY) {
+                // the leaf was merged away before we latched it
+            }
+            removed.forEach(this::release);
+            if (size < UNDERFULL_SIZE) {
+                mergeUnderfull(key, 1);
+            }
+        } finally {
+            retired.exit(ticket);
+        }
+    }
+
+    private static final int RETRY = -1;
+
+    /** Returns the size of the leaf the key was removed from, or {@link #RETRY}. */
+    private int tryDelete(Value key, List<Value> removed) {
         long currentId = rootRef.get();
         Node node = store.readNode(currentId);
         while (!node.isLeaf()) {
@@ -110,6 +408,12 @@ public class BLinkTree {
 
         WriteHandle handle = store.latchForWrite(currentId);
         try {
+            if (retired.isRetired(currentId)) {
+                return RETRY;
+            }
+            if (handle.removeInPlace(key)) {
+                return handle.nodeSize();
+            }
             LeafNode leaf = (LeafNode) handle.get();
             while (leaf.nextNode(key) != -1) {
                 WriteHandle next = store.latchForWrite(leaf.nextNode(key));
@@ -118,15 +422,174 @@ public class BLinkTree {
                 leaf = (LeafNode) handle.get();
             }
 
+            Value value = leaf.getValueForKey(key);
             LeafNode updated = leaf.without(key);
-            if (updated != null) {
-                handle.set(updated);
+            if (updated == null) {
+                return leaf.size();
             }
+            handle.set(updated);
+            if (value != null && value.isOverflowRef()) {
+                removed.add(value); // released once the leaf no longer holds it
+            }
+            return updated.size();
         } finally {
             handle.close();
         }
     }
 
+    /**
+     * Merges the node at {@code height} that covers {@code key} with a sibling under the same parent,
+     * and repeats one level up while that leaves the parent underfull. A merge a concurrent change
+     * got in the way of is dropped.
+     */
+    private void mergeUnderfull(Value key, int height) {
+        while (true) {
+            long parentId = descendToLevel(key, height + 1);
+            Node parentNode = store.readNode(parentId);
+            if (parentNode.height() != height + 1) {
+                return; // the node is the root
+            }
+            BranchNode parent = (BranchNode) parentNode;
+            long[] pointers = parent.getPointers();
+            int idx = indexOf(pointers, parent.nextNode(key));
+            if (pointers.length < 2 || idx == pointers.length) {
+                return;
+            }
+            // the last child has no right sibling, and an empty leaf is cheaper to fold into its left one
+            int left = idx == pointers.length - 1 || idx > 0 && isEmptyLeaf(pointers[idx]) ? idx - 1 : idx;
+            int parentSize = mergeSiblings(parentId, pointers[left], pointers[left + 1]);
+            if (parentSize < 0 || parentSize >= UNDERFULL_SIZE) {
+                return;
+            }
+            height++;
+        }
+    }
+
+    private boolean isEmptyLeaf(long id) {
+        Node node = store.readNode(id);
+        return node.isLeaf() && ((LeafNode) node).getKeys().length == 0;
+    }
+
+    /**
+     * Folds {@code rightId} into its left sibling {@code leftId}. Returns the parent's new size, or
+     * {@code -1} if the merge was dropped.
+     */
+    private int mergeSiblings(long parentId, long leftId, long rightId) {
+        // left, right, then parent: the order every writer latches in
+        try (WriteHandle left = store.latchForWrite(leftId)) {
+            Node leftNode = left.get();
+            if (retired.isRetired(leftId) || leftNode.link() != rightId) {
+                return -1;
+            }
+            try (WriteHandle right = store.latchForWrite(rightId)) {
+                Node rightNode = right.get();
+                // until the left node is rewritten, it must send the right one's keys over its link,
+                // which an empty leaf without a high key does not
+                if (leftNode.isLeaf() && ((LeafNode) leftNode).getHighKey() == null
+                        && ((LeafNode) leftNode).getKeys().length == 0 && ((LeafNode) rightNode).getKeys().length > 0) {
+                    return -1;
+                }
+                Node merged = leftNode.isLeaf()
+                        ? ((LeafNode) leftNode).mergedWith((LeafNode) rightNode)
+                        : ((BranchNode) leftNode).mergedWith((BranchNode) rightNode);
+                int mergedSize = merged.isLeaf() ? ((LeafNode) merged).size() : ((BranchNode) merged).size();
+                if (retired.isRetired(rightId) || mergedSize > MERGED_SIZE_LIMIT) {
+                    return -1;
+                }
+                try (WriteHandle parentHandle = store.latchForWrite(parentId)) {
+                    if (retired.isRetired(parentId)) {
+                        return -1;
+                    }
+                    BranchNode parent = (BranchNode) parentHandle.get();
+                    long[] pointers = parent.getPointers();
+                    int idx = indexOf(pointers, leftId);
+                    if (idx + 1 >= pointers.length || pointers[idx + 1] != rightId) {
+                        return -1;
+                    }
+                    BranchNode updatedParent = parent.withMergedChildren(idx);
+                    // parent first: until the left node is written, readers and recovery reach the
+                    // right one through its link, as after a split whose parent is not updated yet
+                    parentHandle.set(updatedParent);
+                    left.set(merged);
+                    retired.retire(rightId);
+                    return updatedParent.size();
+                }
+            }
+        }
+    }
+
+    private static int indexOf(long[] pointers, long id) {
+        for (int i = 0; i < pointers.length; i++) {
+            if (pointers[i] == id) {
+                return i;
+            }
+        }
+        return pointers.length;
+    }
+
+    /**
+     * Frees pages merged out of this tree that are still waiting for running operations to finish.
+     * Only call it once nothing uses the tree any more, e.g. when it is dropped or closed.
+     */
+    void freeRetiredPages() {
+        retired.freeAll();
+    }
+
+    public void bulkLoad(Iterator<Map.Entry<Value, Value>> sortedEntries) {
+        bulkLoad(sortedEntries, DEFAULT_FILL_FACTOR);
+    }
+
+    /**
+     * Fills an empty tree from entries in strictly ascending key order, packing every node to
+     * {@code fillFactor} of a page.
+     *
+     * @throws IllegalStateException if the tree already holds entries
+     */
+    public void bulkLoad(Iterator<Map.Entry<Value, Value>> sortedEntries, double fillFactor) {
+        BulkLoader loader = new BulkLoader(store, values, fillFactor);
+        long rootId = rootRef.get();
+        // the root leaf becomes the first leaf, latched throughout so writers wait and then follow its link
+        try (WriteHandle handle = store.latchForWrite(rootId)) {
+            Node root = handle.get();
+            if (rootRef.get() != rootId || !root.isLeaf() || ((LeafNode) root).getKeys().length > 0) {
+                throw new IllegalStateException("Bulk load requires an empty tree");
+            }
+            BulkLoader.Result result = loader.load(rootId, sortedEntries);
+            handle.set(result.firstLeaf());
+            if (result.rootId() != rootId) {
+                rootRef.set(result.rootId());
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of every page of the tree, overflow pages included, e.g. to free them once the
+     * tree is dropped. Concurrent splits may or may not be seen.
+     */
+    public List<Long> pageIds() {
+        List<Long> ids = new ArrayList<>();
+        long levelStart = rootRef.get();
+        while (levelStart != -1) {
+            Node node = store.readNode(levelStart);
+            levelStart = node.isLeaf() ? -1 : ((BranchNode) node).getPointers()[0];
+            while (true) {
+                ids.add(node.id());
+                if (node.isLeaf()) {
+                    for (Value value : ((LeafNode) node).getValues()) {
+                        if (value.isOverflowRef()) {
+                            ids.addAll(values.pageIds(value));
+                        }
+                    }
+                }
+                if (node.link() == -1) {
+                    break;
+                }
+                node = store.readNode(node.link());
+            }
+        }
+        return ids;
+    }
+
     private void createNewRoot(Node leftChild, Node rightChild, Value promotedValue) {
         Node newRoot = store.writeNode(new BranchNode(
                         store.nodeIdGenerator().get(),
@@ -69,28 +69,57 @@ public class BranchNode extends Node {
         }
     }
 
+    /** Bytes this node takes up in a page, as measured against {@link #MAX_NODE_SIZE}. */
+    public int size() {
+        return sizeOf(keys, pointers);
+    }
+
+    /**
+     * Returns this node with child {@code idx + 1} folded into child {@code idx}: the separator
+     * between them goes, so child {@code idx} takes over the upper bound of the one removed.
+     */
+    public BranchNode withMergedChildren(int idx) {
+        Value[] newKeys = new Value[keys.length - 1];
+        long[] newPointers = new long[pointers.length - 1];
+        System.arraycopy(keys, 0, newKeys, 0, idx);
+        System.arraycopy(keys, idx + 1, newKeys, idx, keys.length - idx - 1);
+        System.arraycopy(pointers, 0, newPointers, 0, idx + 1);
+        System.arraycopy(pointers, idx + 2, newPointers, idx + 1, pointers.length - idx - 2);
+        return new BranchNode(id(), height(), newKeys, newPointers, link());
+    }
+
+    /**
+     * Returns this node with the children of its right sibling {@code right} appended, taking over
+     * the sibling's link.
+     */
+    public BranchNode mergedWith(BranchNode right) {
+        Value[] newKeys = Arrays.copyOf(keys, keys.length + right.keys.length);
+        long[] newPointers = Arrays.copyOf(pointers, pointers.length + right.pointers.length);
+        System.arraycopy(right.keys, 0, newKeys, keys.length, right.keys.length);
+        System.arraycopy(right.pointers, 0, newPointers, pointers.length, right.pointers.length);
+        return new BranchNode(id(), height(), newKeys, newPointers, right.link());
+    }
+
+    private int sizeOf(Value[] keys, long[] pointers) {
+        return size(keys) + size(pointers) + keys.length * Store.SLOT_SIZE + Store.LINK_POINTER_SIZE
+                - SlottedPage.prefixSaving(keys);
+    }
+
     private CreationResult splitIfNeeded(Value[] keys, long[] pointers, Supplier<Long> nodeIdGenerator) {
-        int newSize = size(keys) + size(pointers) + Store.LINK_POINTER_SIZE;
+        int newSize = sizeOf(keys, pointers);
         if (needsSplit(newSize)) {
-            return split(keys, pointers, newSize, nodeIdGenerator);
+            return split(keys, pointers, nodeIdGenerator);
         } else {
             return new CreationResult(new BranchNode(id(), height(), keys, pointers, link()), null, null);
         }
     }
 
-    private CreationResult split(Value[] keys, long[] pointers, int size, Supplier<Long> nodeIdGenerator) {
-        int keyMid = 0;
-        int leftSize = sizeOfCell(0, keys);
-        int rightSize = size - leftSize;
-        while (
-                keyMid < keys.length - 1 &&
-                        Math.abs(rightSize - leftSize) >
-                                Math.abs((rightSize - sizeOfCell(keyMid + 1, keys)) - (leftSize + sizeOfCell(keyMid + 1, keys)))
-        ) {
-            keyMid++;
-            leftSize += sizeOfCell(keyMid, keys);
-            rightSize -= sizeOfCell(keyMid, keys);
+    private CreationResult split(Value[] keys, long[] pointers, Supplier<Long> nodeIdGenerator) {
+        int[] cellSizes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            cellSizes[i] = sizeOfCell(i, keys);
         }
+        int keyMid = splitIndex(keys, cellSizes);
 
         Value promotedValue = keys[keyMid];
         Value[] leftKeys = new Value[keyMid + 1];
@@ -135,7 +164,11 @@ public class BranchNode extends Node {
     }
 
     private int sizeOfCell(int keyIdx, Value[] keys) {
-        return Store.KEY_PREFIX_SIZE + keys[keyIdx].bytes().length + Store.VALUE_POINTER_SIZE;
+        return sizeOfCell(keys[keyIdx]);
+    }
 
+    static int sizeOfCell(Value key) {
+        int keyLength = key.bytes().length;
+        return ByteUtils.varIntSize(keyLength) + keyLength + Store.VALUE_POINTER_SIZE + Store.SLOT_SIZE;
     }
 }
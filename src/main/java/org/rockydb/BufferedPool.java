@@ -3,50 +3,110 @@ package org.rockydb;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 public class BufferedPool implements Store, Closeable {
 
     private final DiscStore discStore;
+    private final WriteAheadLog wal;
     private final Frame[] frames;
-    private final Clock clock;
-    private final ConcurrentMap<Long, Frame> pageToFrame = new ConcurrentHashMap<>();
+    private final ReplacementPolicy policy;
+    private final PageTable pageToFrame;
+    private final AtomicInteger dirtyFrames = new AtomicInteger();
+    private final PageCleaner cleaner;
+    private final Checkpointer checkpointer;
+    private final ExecutorService prefetcher;
+    private final int maxPrefetchesInFlight;
+    private final AtomicInteger prefetchesInFlight = new AtomicInteger();
+    private final AsyncPermits asyncLoads;
+    private final List<ValueStorage> valueStorages = new CopyOnWriteArrayList<>();
 
     private final LongAdder hits = new LongAdder();
     private final LongAdder misses = new LongAdder();
     private final LongAdder evictions = new LongAdder();
+    private final LongAdder foregroundFlushes = new LongAdder();
+    private final LongAdder backgroundFlushes = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder optimisticRetries = new LongAdder();
+    private final int recoveredRecords;
 
     private volatile boolean closed = false;
 
     public BufferedPool(File dbFile, int numFrames) throws IOException {
+        this(dbFile, numFrames, PoolOptions.defaults());
+    }
+
+    public BufferedPool(File dbFile, int numFrames, PoolOptions options) throws IOException {
         if (numFrames <= 0) {
             throw new IllegalArgumentException("numFrames must be > 0");
         }
-        this.discStore = new DiscStore(dbFile);
-        this.frames = new Frame[numFrames];
-        for (int i = 0; i < numFrames; i++) {
-            this.frames[i] = new Frame(i);
+        this.discStore = new DiscStore(dbFile, options.storageBackend());
+        this.wal = options.writeAheadLog()
+                ? new WriteAheadLog(WriteAheadLog.fileFor(dbFile), discStore.checkpointLsn())
+                : null;
+        this.recoveredRecords = wal == null ? 0 : Recovery.run(wal, discStore);
+        if (wal != null) {
+            wal.beforeWrite(this::syncValueStorages);
         }
-        this.clock = new Clock(this.frames);
+        this.frames = FrameArena.allocate(numFrames, options.offHeapFrames());
+        this.policy = options.evictionPolicy().create(this.frames);
+        this.pageToFrame = new PageTable(numFrames);
+        this.cleaner = new PageCleaner(frames, policy, dirtyFrames, this::cleanInBackground, options);
+        this.checkpointer = new Checkpointer(frames, new CheckpointTarget(), options, wal != null);
+        this.prefetcher = options.prefetchThreads() == 0 ? null : Executors.newFixedThreadPool(options.prefetchThreads(), task -> {
+            Thread thread = new Thread(task, "rockydb-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPrefetchesInFlight = Math.max(1, numFrames / 4);
+        this.asyncLoads = new AsyncPermits(Math.max(1, numFrames / 2));
     }
 
     @Override
     public Node readNode(long id) {
+        return readPage(id, null, (pageId, page, key) -> PageCodec.deserialize(pageId, page));
+    }
+
+    @Override
+    public SearchResult search(long id, Value key) {
+        return readPage(id, key, (pageId, page, k) -> PageCodec.search(page, k));
+    }
+
+    @Override
+    public void readRawPage(long id, ByteBuffer page) {
+        readPage(id, null, (pageId, frame, key) -> page.put(0, frame, 0, Store.PAGE_SIZE));
+    }
+
+    private <T> T readPage(long id, Value key, PageReader<T> reader) {
         ensureOpen();
+        T optimistic = readOptimistically(id, key, reader);
+        if (optimistic != null) {
+            return optimistic;
+        }
         while (true) {
             Frame frame = acquirePinned(id);
-            Node result = null;
+            T result = null;
             boolean matched = false;
             frame.ioLock.readLock().lock();
             try {
                 if (frame.pageId() == id) {
-                    frame.bumpUsage();
-                    hits.increment();
-                    result = PageCodec.deserialize(id, ByteBuffer.wrap(frame.bytes));
+                    policy.recordAccess(frame);
+                    result = reader.read(id, frame.buffer, key);
                     matched = true;
                 }
             } finally {
@@ -59,20 +119,129 @@ public class BufferedPool implements Store, Closeable {
         }
     }
 
+    /**
+     * Reads a resident page without locking or pinning its frame, so concurrent readers of a hot
+     * page write no shared state. The frame's version is checked after reading; if a writer or an
+     * eviction got in meanwhile, whatever was read is discarded (it may be torn, which is also why
+     * failures while decoding are ignored) and {@code null} sends the caller down the locked path.
+     * Page readers never return {@code null} themselves.
+     */
+    private <T> T readOptimistically(long id, Value key, PageReader<T> reader) {
+        int cached = pageToFrame.get(id);
+        if (cached == PageTable.ABSENT) {
+            return null;
+        }
+        Frame frame = frames[cached];
+        long stamp = frame.ioLock.tryOptimisticRead();
+        if (stamp == 0 || frame.pageId() != id || frame.pendingLoad() != null) {
+            return null;
+        }
+        T result = null;
+        try {
+            result = reader.read(id, frame.buffer, key);
+        } catch (RuntimeException e) {
+            // torn read, or a real failure that the locked path reports
+        }
+        if (!frame.ioLock.validate(stamp)) {
+            optimisticRetries.increment();
+            return null;
+        }
+        if (result == null) {
+            return null;
+        }
+        if (frame.usage() < Frame.MAX_USAGE) {
+            policy.recordAccess(frame); // a saturated frame (the root, say) gains nothing from it
+        }
+        hits.increment();
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface PageReader<T> {
+        T read(long pageId, ByteBuffer page, Value key);
+    }
+
+    /**
+     * Non-blocking {@link #readNode}: a miss issues the page read and returns at once, and the node
+     * is decoded when the read completes. Only the victim search and, rarely, writing back a dirty
+     * victim run on the calling thread.
+     */
+    @Override
+    public CompletableFuture<Node> readNodeAsync(long id) {
+        return readPageAsync(id, null, (pageId, page, key) -> PageCodec.deserialize(pageId, page));
+    }
+
+    @Override
+    public CompletableFuture<SearchResult> searchAsync(long id, Value key) {
+        return readPageAsync(id, key, (pageId, page, k) -> PageCodec.search(page, k));
+    }
+
+    private <T> CompletableFuture<T> readPageAsync(long id, Value key, PageReader<T> reader) {
+        T optimistic = closed ? null : readOptimistically(id, key, reader);
+        if (optimistic != null) {
+            return CompletableFuture.completedFuture(optimistic);
+        }
+        return withPageAsync(id, false, frame -> reader.read(id, frame.buffer, key));
+    }
+
+    @Override
+    public CompletableFuture<Node> writeNodeAsync(Node node) {
+        return withPageAsync(node.id(), true, frame -> {
+            PageCodec.serialize(node, frame.buffer);
+            logPage(frame);
+            markDirty(frame);
+            return node;
+        });
+    }
+
+    private <T> CompletableFuture<T> withPageAsync(long id, boolean write, Function<Frame, T> action) {
+        try {
+            ensureOpen();
+            return acquirePinnedAsync(id).thenCompose(frame -> {
+                Lock lock = write ? frame.ioLock.writeLock() : frame.ioLock.readLock();
+                T result = null;
+                boolean matched = false;
+                lock.lock();
+                try {
+                    if (frame.pageId() == id) {
+                        policy.recordAccess(frame);
+                        result = action.apply(frame);
+                        matched = true;
+                    }
+                } finally {
+                    lock.unlock();
+                    frame.unpin();
+                }
+                return matched ? CompletableFuture.completedFuture(result) : withPageAsync(id, write, action);
+            });
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     @Override
     public Node writeNode(Node node) {
+        writePage(node.id(), page -> PageCodec.serialize(node, page));
+        return node;
+    }
+
+    @Override
+    public void writeRawPage(long id, ByteBuffer page) {
+        writePage(id, frame -> frame.put(0, page, 0, Store.PAGE_SIZE));
+    }
+
+    private void writePage(long id, Consumer<ByteBuffer> writer) {
         ensureOpen();
-        long id = node.id();
         while (true) {
             Frame frame = acquirePinned(id);
             boolean matched = false;
             frame.ioLock.writeLock().lock();
             try {
                 if (frame.pageId() == id) {
-                    ByteBuffer serialized = PageCodec.serialize(node);
-                    System.arraycopy(serialized.array(), 0, frame.bytes, 0, Store.PAGE_SIZE);
-                    frame.setDirty(true);
-                    frame.bumpUsage();
+                    writer.accept(frame.buffer);
+                    logPage(frame);
+                    markDirty(frame);
+                    policy.recordAccess(frame);
                     matched = true;
                 }
             } finally {
@@ -80,7 +249,7 @@ public class BufferedPool implements Store, Closeable {
             }
             frame.unpin();
             if (matched) {
-                return node;
+                return;
             }
         }
     }
@@ -105,7 +274,7 @@ public class BufferedPool implements Store, Closeable {
         }
     }
 
-    private static final class PinnedWriteHandle implements WriteHandle {
+    private final class PinnedWriteHandle implements WriteHandle {
         private final Frame frame;
         private volatile boolean closed = false;
 
@@ -117,7 +286,7 @@ public class BufferedPool implements Store, Closeable {
         public Node get() {
             frame.ioLock.readLock().lock();
             try {
-                return PageCodec.deserialize(frame.pageId(), ByteBuffer.wrap(frame.bytes));
+                return PageCodec.deserialize(frame.pageId(), frame.buffer);
             } finally {
                 frame.ioLock.readLock().unlock();
             }
@@ -127,15 +296,68 @@ public class BufferedPool implements Store, Closeable {
         public void set(Node node) {
             frame.ioLock.writeLock().lock();
             try {
-                ByteBuffer serialized = PageCodec.serialize(node);
-                System.arraycopy(serialized.array(), 0, frame.bytes, 0, Store.PAGE_SIZE);
-                frame.setDirty(true);
-                frame.bumpUsage();
+                PageCodec.serialize(node, frame.buffer);
+                logPage(frame);
+                markDirty(frame);
+                policy.recordAccess(frame);
+            } finally {
+                frame.ioLock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean putInPlace(Value key, Value value) {
+            frame.ioLock.writeLock().lock();
+            try {
+                if (!SlottedPage.put(frame.buffer, key, value)) {
+                    return false;
+                }
+                if (wal != null) {
+                    frame.setPageLsn(wal.logPut(frame.pageId(), key, value));
+                }
+                markDirty(frame);
+                policy.recordAccess(frame);
+                return true;
+            } finally {
+                frame.ioLock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean removeInPlace(Value key) {
+            frame.ioLock.writeLock().lock();
+            try {
+                int before = SlottedPage.count(frame.buffer);
+                if (!SlottedPage.remove(frame.buffer, key)) {
+                    return false;
+                }
+                if (SlottedPage.count(frame.buffer) != before) {
+                    if (wal != null) {
+                        frame.setPageLsn(wal.logDelete(frame.pageId(), key));
+                    }
+                    markDirty(frame);
+                    policy.recordAccess(frame);
+                }
+                return true;
             } finally {
                 frame.ioLock.writeLock().unlock();
             }
         }
 
+        @Override
+        public int nodeSize() {
+            frame.ioLock.readLock().lock();
+            try {
+                int size = SlottedPage.leafSize(frame.buffer);
+                if (size >= 0) {
+                    return size;
+                }
+            } finally {
+                frame.ioLock.readLock().unlock();
+            }
+            return WriteHandle.super.nodeSize();
+        }
+
         @Override
         public void close() {
             if (closed) {
@@ -147,13 +369,99 @@ public class BufferedPool implements Store, Closeable {
         }
     }
 
+    /**
+     * Starts loading the given pages into frames on the prefetch threads without waiting for them.
+     * Resident pages are skipped, and requests are dropped once a quarter of the pool is already
+     * being prefetched, so read-ahead cannot flush the pool. A later read of a prefetched page
+     * counts as a hit.
+     */
+    @Override
+    public void prefetch(long... pageIds) {
+        if (prefetcher == null || closed) {
+            return;
+        }
+        for (long id : pageIds) {
+            if (pageToFrame.get(id) != PageTable.ABSENT) {
+                continue;
+            }
+            if (prefetchesInFlight.incrementAndGet() > maxPrefetchesInFlight) {
+                prefetchesInFlight.decrementAndGet();
+                return;
+            }
+            try {
+                prefetcher.execute(() -> {
+                    try {
+                        prefetchPage(id);
+                    } finally {
+                        prefetchesInFlight.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                prefetchesInFlight.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void prefetchPage(long id) {
+        if (closed || pageToFrame.get(id) != PageTable.ABSENT) {
+            return;
+        }
+        Frame victim;
+        try {
+            victim = policy.findVictim();
+        } catch (BufferExhaustedException e) {
+            return;
+        }
+        if (installAndLoad(victim, id)) {
+            prefetches.increment();
+        }
+        victim.unpin();
+    }
+
     @Override
     public Supplier<Long> nodeIdGenerator() {
         return discStore.nodeIdGenerator();
     }
 
+    /**
+     * Drops the cached copy of page {@code id}, without writing it, and hands the page back to the
+     * allocator. The free is logged before the page can be handed out again, so recovery never
+     * sees a reused page go free afterwards.
+     */
+    @Override
+    public void freePage(long id) {
+        ensureOpen();
+        int cached = pageToFrame.get(id);
+        if (cached != PageTable.ABSENT) {
+            Frame frame = frames[cached];
+            frame.ioLock.writeLock().lock();
+            try {
+                if (frame.pageId() == id) {
+                    markClean(frame);
+                    pageToFrame.remove(id, frame.index);
+                    frame.setPageId(Frame.FREE);
+                    frame.setPageLsn(0);
+                }
+            } finally {
+                frame.ioLock.writeLock().unlock();
+            }
+        }
+        if (wal != null) {
+            wal.logFree(id);
+        }
+        discStore.freePage(id);
+    }
+
+    /**
+     * Publishes a new root. The root pointer is written in place rather than through a frame, so
+     * its log record is forced first; root changes are rare enough for that to be cheap.
+     */
     @Override
     public void updateRootId(long id) {
+        if (wal != null) {
+            wal.flush(wal.logRoot(id));
+        }
         discStore.updateRootId(id);
     }
 
@@ -164,66 +472,350 @@ public class BufferedPool implements Store, Closeable {
 
     private Frame acquirePinned(long id) {
         while (true) {
-            Frame cached = pageToFrame.get(id);
-            if (cached != null) {
-                cached.pin();
-                return cached;
+            int cached = pageToFrame.get(id);
+            if (cached != PageTable.ABSENT) {
+                Frame frame = frames[cached];
+                frame.pin();
+                hits.increment();
+                awaitLoad(frame);
+                return frame;
             }
-            Frame victim = clock.findVictim(); // exclusively claimed (pinCount == 1)
+            Frame victim = policy.findVictim(); // exclusively claimed (pinCount == 1)
             if (installAndLoad(victim, id)) {
+                misses.increment();
                 return victim; // pinned, pageId == id, content loaded
             }
             victim.unpin(); // lost the race for id; release the claim and retry
         }
     }
 
+    /**
+     * Asynchronous {@link #acquirePinned}: the returned frame is pinned and holds {@code id} unless
+     * a failed load released it, which callers detect by re-checking the page id under the lock.
+     * At most half the pool may be pinned by asynchronous loads; further misses queue for a permit
+     * instead of exhausting the pool.
+     */
+    private CompletableFuture<Frame> acquirePinnedAsync(long id) {
+        Frame cached = pinIfCached(id);
+        if (cached != null) {
+            return whenLoaded(cached);
+        }
+        return asyncLoads.acquire().thenCompose(ignored -> {
+            CompletableFuture<Frame> frame;
+            try {
+                frame = startLoad(id);
+            } catch (RuntimeException e) {
+                asyncLoads.release();
+                throw e;
+            }
+            return frame.whenComplete((ignoredFrame, error) -> asyncLoads.release());
+        });
+    }
+
+    private Frame pinIfCached(long id) {
+        int cached = pageToFrame.get(id);
+        if (cached == PageTable.ABSENT) {
+            return null;
+        }
+        Frame frame = frames[cached];
+        frame.pin();
+        hits.increment();
+        return frame;
+    }
+
+    private static CompletableFuture<Frame> whenLoaded(Frame frame) {
+        CompletableFuture<Void> loading = frame.pendingLoad();
+        return loading == null
+                ? CompletableFuture.completedFuture(frame)
+                : loading.handle((ignored, error) -> frame);
+    }
+
+    private CompletableFuture<Frame> startLoad(long id) {
+        while (true) {
+            Frame cached = pinIfCached(id);
+            if (cached != null) {
+                return whenLoaded(cached);
+            }
+            Frame victim = policy.findVictim(); // exclusively claimed (pinCount == 1)
+            CompletableFuture<Void> loaded = new CompletableFuture<>();
+            victim.setPendingLoad(loaded); // published before the table entry, see Frame#pendingLoad
+            if (!install(victim, id)) {
+                victim.setPendingLoad(null);
+                loaded.complete(null);
+                victim.unpin(); // lost the race for id; release the claim and retry
+                continue;
+            }
+            discStore.readPageAsync(id, victim.buffer).whenComplete((ignored, error) -> {
+                if (error == null) {
+                    policy.recordLoad(victim);
+                    misses.increment();
+                    victim.setPendingLoad(null);
+                    loaded.complete(null);
+                } else {
+                    abandonLoad(victim, id);
+                    loaded.completeExceptionally(error);
+                }
+            });
+            return loaded.handle((ignored, error) -> {
+                if (error != null) {
+                    victim.unpin();
+                    throw new CompletionException(error);
+                }
+                return victim;
+            });
+        }
+    }
+
+    private void abandonLoad(Frame victim, long id) {
+        victim.ioLock.writeLock().lock();
+        try {
+            pageToFrame.remove(id, victim.index);
+            victim.setPageId(Frame.FREE);
+            victim.setPendingLoad(null);
+        } finally {
+            victim.ioLock.writeLock().unlock();
+        }
+    }
+
+    private static void awaitLoad(Frame frame) {
+        CompletableFuture<Void> loading = frame.pendingLoad();
+        if (loading != null) {
+            // a failed load frees the frame; the caller's page id check then retries
+            loading.handle((ignored, error) -> null).join();
+        }
+    }
+
     private boolean installAndLoad(Frame victim, long id) {
         victim.ioLock.writeLock().lock();
         try {
-            Frame existing = pageToFrame.putIfAbsent(id, victim);
-            if (existing != null) {
+            if (!install(victim, id)) {
+                return false;
+            }
+            discStore.readPage(id, victim.buffer);
+            policy.recordLoad(victim);
+            return true;
+        } finally {
+            victim.ioLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Maps {@code id} to the claimed {@code victim}, writing back and unmapping its previous page.
+     * Returns {@code false} if another thread mapped {@code id} first. The frame's content is not
+     * loaded yet; the caller does that before anyone can read it.
+     */
+    private boolean install(Frame victim, long id) {
+        victim.ioLock.writeLock().lock();
+        try {
+            if (pageToFrame.putIfAbsent(id, victim.index) != PageTable.ABSENT) {
                 return false;
             }
             long oldId = victim.pageId();
             if (oldId != Frame.FREE) {
-
                 if (victim.isDirty()) {
-                    discStore.writeRawPage(oldId, ByteBuffer.wrap(victim.bytes));
+                    writeBack(victim, oldId);
+                    markClean(victim);
+                    foregroundFlushes.increment();
                 }
-                pageToFrame.remove(oldId, victim);
+                pageToFrame.remove(oldId, victim.index);
                 evictions.increment();
             }
-            ByteBuffer page = discStore.readRawPage(id);
-            System.arraycopy(page.array(), 0, victim.bytes, 0, Store.PAGE_SIZE);
-            victim.setDirty(false);
             victim.setPageId(id);
-            misses.increment();
+            victim.setPageLsn(0);
+            victim.resetUsage();
             return true;
         } finally {
             victim.ioLock.writeLock().unlock();
         }
     }
 
+    /** Logs the current image of a frame's page; the caller holds the frame's write lock. */
+    private void logPage(Frame frame) {
+        if (wal != null) {
+            frame.setPageLsn(wal.logPage(frame.pageId(), frame.buffer));
+        }
+    }
+
+    /** Writes a frame's page to the file once the log describing it is durable. */
+    private void writeBack(Frame frame, long pageId) {
+        if (wal != null) {
+            wal.flush(frame.pageLsn());
+        }
+        discStore.writePage(pageId, frame.buffer);
+    }
+
+    /**
+     * Blocks until every change made through this pool so far is durable in the write-ahead log.
+     * Concurrent callers share a single log force. Without a log this only syncs the registered
+     * {@linkplain #registerValueStorage value storages}.
+     */
+    public void commit() {
+        if (wal != null) {
+            wal.flushAll();
+        } else {
+            syncValueStorages();
+        }
+    }
+
+    /**
+     * Has {@code values} {@linkplain ValueStorage#sync synced} whenever log records are about to
+     * reach the log file, so the values that trees store in it are durable before the records that
+     * refer to them, and the commit that forces the log makes both durable at once.
+     */
+    void registerValueStorage(ValueStorage values) {
+        valueStorages.add(values);
+    }
+
+    /** Stops syncing {@code values}, e.g. before it is closed. */
+    void unregisterValueStorage(ValueStorage values) {
+        valueStorages.remove(values);
+    }
+
+    private void syncValueStorages() {
+        for (ValueStorage values : valueStorages) {
+            values.sync();
+        }
+    }
+
     private void ensureOpen() {
         if (closed) {
             throw new IllegalStateException("BufferedPool is closed");
         }
     }
 
+    private void markDirty(Frame frame) {
+        if (frame.markDirty()) {
+            cleaner.onDirtied(dirtyFrames.incrementAndGet());
+        }
+    }
+
+    private boolean markClean(Frame frame) {
+        if (frame.markClean()) {
+            dirtyFrames.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes {@code frame} if it is dirty, under the read lock so lookups on the page proceed while
+     * it is written. Busy frames (being evicted or modified) are skipped rather than waited for.
+     * Frames are marked clean only once written (writers are shut out by the lock meanwhile), so
+     * a checkpoint that sees a clean frame knows its page has reached the file.
+     */
+    private boolean cleanInBackground(Frame frame) {
+        if (!frame.isDirty() || !frame.ioLock.readLock().tryLock()) {
+            return false;
+        }
+        try {
+            long pageId = frame.pageId();
+            if (pageId == Frame.FREE || !frame.isDirty()) {
+                return false;
+            }
+            try {
+                writeBack(frame, pageId);
+            } catch (RuntimeException e) {
+                return false;
+            }
+            if (!markClean(frame)) {
+                return false; // a checkpoint wrote it at the same time
+            }
+            backgroundFlushes.increment();
+            return true;
+        } finally {
+            frame.ioLock.readLock().unlock();
+        }
+    }
+
+    private final class CheckpointTarget implements Checkpointer.Target {
+        @Override
+        public long logEnd() {
+            return wal == null ? 0 : wal.appendedLsn();
+        }
+
+        /** Like {@link #cleanInBackground}, but waits for a busy frame instead of skipping it. */
+        @Override
+        public boolean flush(Frame frame, long pageId) {
+            frame.ioLock.readLock().lock();
+            try {
+                if (frame.pageId() != pageId || !frame.isDirty()) {
+                    return false; // evicted or cleaned since the checkpoint began, so already written
+                }
+                writeBack(frame, pageId);
+                return markClean(frame);
+            } finally {
+                frame.ioLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void complete(long redoLsn) {
+            try {
+                if (wal == null) {
+                    discStore.checkpoint(discStore.checkpointLsn());
+                } else {
+                    discStore.checkpoint(redoLsn, wal::flushAll);
+                    wal.truncateBefore(redoLsn);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes every dirty page in page-id order at full speed, makes them durable and moves the
+     * restart point to the log's current end, deleting the log segments behind it. Writers may
+     * keep going meanwhile. Returns the number of pages written.
+     */
+    public int checkpoint() {
+        ensureOpen();
+        return checkpointer.checkpoint(false);
+    }
+
     @Override
     public void close() throws IOException {
         closed = true;
-        for (Frame frame : frames) {
-            frame.ioLock.writeLock().lock();
+        if (prefetcher != null) {
+            // never shutdownNow: interrupting a thread inside FileChannel I/O closes the channel
+            prefetcher.shutdown();
             try {
-                if (!frame.isFree() && frame.isDirty()) {
-                    discStore.writeRawPage(frame.pageId(), ByteBuffer.wrap(frame.bytes));
-                    frame.setDirty(false);
+                while (!prefetcher.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // in-flight loads are bounded; wait for them before flushing
                 }
-            } finally {
-                frame.ioLock.writeLock().unlock();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+        cleaner.close();
+        checkpointer.close();
+        commit();
+        discStore.trimFreeTail();
+        checkpointer.checkpoint(false);
+        if (wal != null) {
+            wal.delete(); // the final checkpoint covers the whole log; nothing left to redo
+        }
+        closeDiscStore();
+    }
+
+    /**
+     * Releases the files without writing dirty frames or unflushed log records, leaving the file
+     * as a crash would. For recovery tests.
+     */
+    void crash() throws IOException {
+        closed = true;
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        cleaner.close();
+        checkpointer.close();
+        if (wal != null) {
+            wal.close();
+        }
+        closeDiscStore();
+    }
+
+    private void closeDiscStore() throws IOException {
         try {
             discStore.close();
         } catch (IOException e) {
@@ -246,6 +838,46 @@ public class BufferedPool implements Store, Closeable {
         return (int) evictions.sum();
     }
 
+    /** Dirty victims an evicting caller had to write itself before reusing the frame. */
+    public int getForegroundFlushes() {
+        return (int) foregroundFlushes.sum();
+    }
+
+    /** Pages loaded by {@link #prefetch} before anyone asked for them. */
+    public int getPrefetches() {
+        return (int) prefetches.sum();
+    }
+
+    /** Lock-free page reads that a concurrent writer invalidated, each redone under the read lock. */
+    public long getOptimisticRetries() {
+        return optimisticRetries.sum();
+    }
+
+    /** Times the write-ahead log was forced to stable storage, for commits and page writes alike. */
+    public long getLogForces() {
+        return wal == null ? 0 : wal.forces();
+    }
+
+    /** Completed checkpoints, background and explicit ones alike. */
+    public long getCheckpoints() {
+        return checkpointer.checkpoints();
+    }
+
+    /** Pages no tree uses any more, waiting to be handed out again. */
+    public int getFreePages() {
+        return discStore.freePageCount();
+    }
+
+    /** Log records replayed when this pool was opened. */
+    public int getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    /** Pages written by the background cleaner. */
+    public int getBackgroundFlushes() {
+        return (int) backgroundFlushes.sum();
+    }
+
     public int getNumFrames() {
         return frames.length;
     }
@@ -0,0 +1,196 @@
+package org.rockydb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a tree bottom-up from entries that are already in ascending key order. Leaves are packed
+ * up to {@code fillFactor} of a page and chained left to right, then each branch level is packed
+ * the same way over the level below until a single node remains.
+ * <p>
+ * Every node except the first leaf is written straight through {@link Store#writeNode}; none of them
+ * is reachable until the caller publishes the first leaf and the new root. A load that fails on its
+ * input frees what it has written before rethrowing.
+ */
+final class BulkLoader {
+    private final Store store;
+    private final ValueStorage valueStorage;
+    private final int capacity;
+
+    BulkLoader(Store store, ValueStorage valueStorage, double fillFactor) {
+        if (!(fillFactor > 0.0 && fillFactor <= 1.0)) {
+            throw new IllegalArgumentException("fillFactor must be in (0, 1]: " + fillFactor);
+        }
+        this.store = store;
+        this.valueStorage = valueStorage;
+        this.capacity = (int) (Node.MAX_NODE_SIZE * fillFactor);
+    }
+
+    /**
+     * Loads {@code entries} into leaves starting at page {@code firstLeafId}. The first leaf is
+     * returned unwritten so the caller can install it under the latch it already holds.
+     */
+    Result load(long firstLeafId, Iterator<Map.Entry<Value, Value>> entries) {
+        Level leaves = new Level();
+        List<Value> keys = new ArrayList<>();
+        List<Value> values = new ArrayList<>();
+        int size = Store.LINK_POINTER_SIZE;
+        long leafId = firstLeafId;
+        LeafNode firstLeaf = null;
+        Value previous = null;
+
+        try {
+            while (entries.hasNext()) {
+                Map.Entry<Value, Value> entry = entries.next();
+                Value key = entry.getKey();
+                if (previous != null && previous.compareTo(key) >= 0) {
+                    throw new IllegalArgumentException("Bulk load input is not strictly ascending");
+                }
+                Value value = valueStorage.stored(key, entry.getValue());
+                int cell = LeafNode.sizeOfCell(key, value);
+                int highKey = highKeyRoom(key);
+                if (Node.needsSplit(cell + highKey + Store.LINK_POINTER_SIZE)) {
+                    throw new IllegalArgumentException("Entry does not fit in a page: " + cell + " bytes");
+                }
+                if (!keys.isEmpty() && size + cell + highKey > capacity) {
+                    long nextId = store.nodeIdGenerator().get();
+                    Value bound = LeafNode.separator(previous, key);
+                    LeafNode leaf = leaf(leafId, keys, values, nextId, bound);
+                    if (firstLeaf == null) {
+                        firstLeaf = leaf;
+                    } else {
+                        store.writeNode(leaf);
+                    }
+                    leaves.add(leaf, bound);
+                    leafId = nextId;
+                    keys.clear();
+                    values.clear();
+                    size = Store.LINK_POINTER_SIZE;
+                }
+                keys.add(key);
+                values.add(value);
+                size += cell;
+                previous = key;
+            }
+        } catch (RuntimeException e) {
+            discard(firstLeafId, leaves, firstLeaf, leafId, values);
+            throw e;
+        }
+
+        LeafNode leaf = leaf(leafId, keys, values, -1L, null);
+        if (firstLeaf == null) {
+            return new Result(leaf, firstLeafId);
+        }
+        store.writeNode(leaf);
+        leaves.add(leaf);
+
+        Level level = leaves;
+        int height = 1;
+        while (level.size() > 1) {
+            level = buildParents(level, ++height);
+        }
+        return new Result(firstLeaf, level.ids.get(0));
+    }
+
+    /**
+     * Frees what a load that failed part-way has written: the leaves so far, the page allocated
+     * for the leaf being filled and the overflow pages of every value stored. None of it is
+     * reachable yet; the first leaf's page stays with the caller.
+     */
+    private void discard(long firstLeafId, Level leaves, LeafNode firstLeaf, long leafId, List<Value> pending) {
+        List<Long> pages = new ArrayList<>();
+        if (firstLeaf != null) {
+            addValuePages(pages, List.of(firstLeaf.getValues()));
+        }
+        for (long id : leaves.ids) {
+            if (id != firstLeafId) {
+                addValuePages(pages, List.of(((LeafNode) store.readNode(id)).getValues()));
+                pages.add(id);
+            }
+        }
+        addValuePages(pages, pending);
+        if (leafId != firstLeafId) {
+            pages.add(leafId);
+        }
+        for (long id : pages) {
+            store.freePage(id);
+        }
+    }
+
+    private void addValuePages(List<Long> pages, List<Value> values) {
+        for (Value value : values) {
+            if (value.isOverflowRef()) {
+                pages.addAll(valueStorage.pageIds(value));
+            }
+        }
+    }
+
+    private Level buildParents(Level children, int height) {
+        Level parents = new Level();
+        List<Value> keys = new ArrayList<>();
+        List<Long> pointers = new ArrayList<>();
+        int size = Store.LINK_POINTER_SIZE;
+        long nodeId = store.nodeIdGenerator().get();
+
+        for (int i = 0; i < children.size(); i++) {
+            Value key = children.bounds.get(i);
+            int cell = BranchNode.sizeOfCell(key);
+            if (!keys.isEmpty() && size + cell > capacity) {
+                long nextId = store.nodeIdGenerator().get();
+                parents.add(store.writeNode(branch(nodeId, height, keys, pointers, nextId)));
+                nodeId = nextId;
+                keys.clear();
+                pointers.clear();
+                size = Store.LINK_POINTER_SIZE;
+            }
+            keys.add(key);
+            pointers.add(children.ids.get(i));
+            size += cell;
+        }
+        parents.add(store.writeNode(branch(nodeId, height, keys, pointers, -1L)));
+        return parents;
+    }
+
+    private static LeafNode leaf(long id, List<Value> keys, List<Value> values, long link, Value highKey) {
+        return new LeafNode(id, 1, keys.toArray(new Value[0]), values.toArray(new Value[0]), link, highKey);
+    }
+
+    /**
+     * Room to leave for the high key of a leaf ending in {@code last}: a separator shares all but at
+     * most one byte with it.
+     */
+    private static int highKeyRoom(Value last) {
+        return ByteUtils.varIntSize(last.bytes().length) + 2;
+    }
+
+    private static BranchNode branch(long id, int height, List<Value> keys, List<Long> pointers, long link) {
+        long[] ptrs = new long[pointers.size()];
+        for (int i = 0; i < ptrs.length; i++) {
+            ptrs[i] = pointers.get(i);
+        }
+        return new BranchNode(id, height, keys.toArray(new Value[0]), ptrs, link);
+    }
+
+    record Result(LeafNode firstLeaf, long rootId) {
+    }
+
+    private static final class Level {
+        private final List<Value> bounds = new ArrayList<>();
+        private final List<Long> ids = new ArrayList<>();
+
+        void add(Node node) {
+            add(node, node.biggestKey());
+        }
+
+        void add(Node node, Value bound) {
+            bounds.add(bound);
+            ids.add(node.id());
+        }
+
+        int size() {
+            return ids.size();
+        }
+    }
+}
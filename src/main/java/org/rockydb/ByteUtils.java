@@ -1,16 +1,143 @@
 package org.rockydb;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class ByteUtils {
+    public static final int FORMAT_LEGACY = 0;
+    public static final int FORMAT_SLOTTED = 1;
+    public static final int FORMAT_PREFIXED = 2;
+    public static final int FORMAT_VARINT = 3;
+    public static final int FORMAT_VARINT_PREFIXED = 4;
+    /** A page of an {@link OverflowChain}, holding part of a value rather than a node. */
+    public static final int FORMAT_OVERFLOW = 5;
+
+    private static final int FORMAT_SHIFT = 1;
+    private static final int FORMAT_MASK = 0b111; // pages written before varints never set the third bit
+    private static final int HIGH_KEY_FLAG = 1 << 4;
 
     public static boolean readIsLeafFlag(byte flags) {
         return (flags & 1) > 0;
     }
 
+    public static int readFormatFlag(byte flags) {
+        return (flags >> FORMAT_SHIFT) & FORMAT_MASK;
+    }
+
+    /** Whether the page is in a {@link SlottedPage} layout, with or without a key prefix. */
+    public static boolean isSlotted(byte flags) {
+        int format = readFormatFlag(flags);
+        return format >= FORMAT_SLOTTED && format <= FORMAT_VARINT_PREFIXED;
+    }
+
+    /** Whether the page is in a {@link SlottedPage} layout whose lengths are varints. */
+    public static boolean isVarint(byte flags) {
+        int format = readFormatFlag(flags);
+        return format == FORMAT_VARINT || format == FORMAT_VARINT_PREFIXED;
+    }
+
+    /** Whether a {@link SlottedPage} leaf stores the high key that bounds its key range. */
+    public static boolean hasHighKey(byte flags) {
+        return (flags & HIGH_KEY_FLAG) != 0;
+    }
+
+    public static byte withHighKey(byte flags) {
+        return (byte) (flags | HIGH_KEY_FLAG);
+    }
+
     public static byte createFlags(boolean isLeaf) {
+        return createFlags(isLeaf, FORMAT_LEGACY);
+    }
+
+    public static byte createFlags(boolean isLeaf, int format) {
         byte flags = 0;
         if (isLeaf) {
             flags |= 1;
         }
+        flags |= (byte) ((format & FORMAT_MASK) << FORMAT_SHIFT);
         return flags;
     }
+
+    /**
+     * Compares {@code length} bytes of {@code page} starting at absolute index {@code offset} with
+     * {@code key}, using the same ordering as {@link Value#compareTo}. The buffer's position is not
+     * used or changed, so concurrent readers may share it.
+     */
+    public static int compare(ByteBuffer page, int offset, int length, Value key) {
+        byte[] other = key.bytes();
+        return compare(page, offset, length, other, 0, other.length);
+    }
+
+    /** Like {@link #compare(ByteBuffer, int, int, Value)}, against {@code keyLength} bytes of {@code key} from {@code keyFrom}. */
+    public static int compare(ByteBuffer page, int offset, int length, byte[] key, int keyFrom, int keyLength) {
+        if (page.hasArray()) {
+            int from = page.arrayOffset() + offset;
+            return Arrays.compare(page.array(), from, from + length, key, keyFrom, keyFrom + keyLength);
+        }
+        int common = Math.min(length, keyLength);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compare(page.get(offset + i), key[keyFrom + i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - keyLength;
+    }
+
+    /** Bytes {@link #putVarInt} writes for {@code value}: one per started group of seven bits. */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes {@code value} at index {@code offset} as a varint, seven bits per byte from the lowest,
+     * the high bit set on every byte but the last. Returns the index just past it.
+     */
+    public static int putVarInt(ByteBuffer page, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            page.put(offset++, (byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        page.put(offset++, (byte) value);
+        return offset;
+    }
+
+    /**
+     * Reads the varint at index {@code offset}. At most five bytes are read, so a torn page yields
+     * some value rather than a runaway scan.
+     */
+    public static int getVarInt(ByteBuffer page, int offset) {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte b = page.get(offset++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Copies {@code length} bytes of {@code page} from index {@code from} to index {@code to}; the
+     * two ranges may overlap.
+     */
+    public static void move(ByteBuffer page, int from, int to, int length) {
+        if (page.hasArray()) {
+            int base = page.arrayOffset();
+            System.arraycopy(page.array(), base + from, page.array(), base + to, length);
+        } else if (to < from) {
+            for (int i = 0; i < length; i++) {
+                page.put(to + i, page.get(from + i));
+            }
+        } else {
+            for (int i = length - 1; i >= 0; i--) {
+                page.put(to + i, page.get(from + i));
+            }
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package org.rockydb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One positional {@link FileChannel} read or write per page.
+ */
+final class ChannelPageFile implements PageFile {
+    private final FileChannel fileChannel;
+
+    ChannelPageFile(FileChannel fileChannel) {
+        this.fileChannel = fileChannel;
+    }
+
+    @Override
+    public void read(long id, ByteBuffer page) {
+        ByteBuffer dst = page.duplicate().clear();
+        long position = id * Store.PAGE_SIZE;
+        try {
+            while (dst.hasRemaining()) {
+                int read = fileChannel.read(dst, position + dst.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        while (dst.hasRemaining()) {
+            dst.put((byte) 0);
+        }
+    }
+
+    @Override
+    public void write(long id, ByteBuffer page) {
+        ByteBuffer src = page.duplicate().clear();
+        long position = id * Store.PAGE_SIZE;
+        try {
+            while (src.hasRemaining()) {
+                fileChannel.write(src, position + src.position());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long pageCount() throws IOException {
+        return fileChannel.size() / Store.PAGE_SIZE;
+    }
+
+    @Override
+    public void force() throws IOException {
+        fileChannel.force(false);
+    }
+
+    @Override
+    public void close(long pageCount) throws IOException {
+        if (fileChannel.size() > pageCount * Store.PAGE_SIZE) {
+            fileChannel.truncate(pageCount * Store.PAGE_SIZE);
+        }
+        fileChannel.force(false);
+    }
+}
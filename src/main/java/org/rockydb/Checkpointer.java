@@ -0,0 +1,190 @@
+package org.rockydb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fuzzy checkpoints: writers keep going while one runs. A checkpoint notes the end of the log,
+ * writes every frame that was dirty at that moment, or is being marked dirty for a change logged
+ * before it, in page-id order, at most
+ * {@link PoolOptions#checkpointPagesPerSecond()} pages per second, and then makes the noted LSN
+ * the restart point. Changes logged after it may or may not reach the file; recovery replays them
+ * either way. A background thread starts a checkpoint every
+ * {@link PoolOptions#checkpointIntervalMillis()} or once
+ * {@link PoolOptions#checkpointLogBytes()} of log have been written since the last one, which
+ * bounds both the log kept on disk and the work of a restart.
+ */
+final class Checkpointer implements AutoCloseable {
+    static final long POLL_MILLIS = 100;
+
+    /** What a checkpoint acts on; implemented by the pool. */
+    interface Target {
+        /** LSN just past the last change logged so far. */
+        long logEnd();
+
+        /** Writes {@code frame} if it still holds {@code pageId} and is dirty; returns whether it did. */
+        boolean flush(Frame frame, long pageId);
+
+        /** Makes the written pages durable and records {@code redoLsn} as the restart point. */
+        void complete(long redoLsn);
+    }
+
+    private record DirtyPage(long pageId, Frame frame) {
+    }
+
+    private final Frame[] frames;
+    private final Target target;
+    private final long intervalNanos;
+    private final long logBytes;
+    private final int pagesPerSecond;
+    private final Thread worker;
+    private final Object signal = new Object();
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAdder pagesWritten = new LongAdder();
+    private volatile boolean stopped = false;
+    private volatile long redoLsn;
+    private volatile long lastCheckpointNanos = System.nanoTime();
+
+    /**
+     * @param background whether to run periodic checkpoints; {@link #checkpoint} works either way
+     */
+    Checkpointer(Frame[] frames, Target target, PoolOptions options, boolean background) {
+        this.frames = frames;
+        this.target = target;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(options.checkpointIntervalMillis());
+        this.logBytes = options.checkpointLogBytes();
+        this.pagesPerSecond = options.checkpointPagesPerSecond();
+        this.redoLsn = target.logEnd();
+        if (background && options.checkpointIntervalMillis() > 0) {
+            worker = new Thread(this::run, "rockydb-checkpointer");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            worker = null;
+        }
+    }
+
+    /**
+     * Runs a checkpoint and returns the number of pages it wrote. A throttled checkpoint paces its
+     * writes and gives up, without moving the restart point, if the checkpointer is closed.
+     */
+    synchronized int checkpoint(boolean throttled) {
+        long checkpointLsn = target.logEnd();
+        List<DirtyPage> dirty = new ArrayList<>();
+        for (Frame frame : frames) {
+            // writers log a change and mark the frame dirty under its write lock, so the read lock
+            // lets one that logged before checkpointLsn finish marking before the frame is judged
+            frame.ioLock.readLock().lock();
+            try {
+                long pageId = frame.pageId();
+                if (pageId != Frame.FREE && frame.isDirty()) {
+                    dirty.add(new DirtyPage(pageId, frame));
+                }
+            } finally {
+                frame.ioLock.readLock().unlock();
+            }
+        }
+        dirty.sort(Comparator.comparingLong(DirtyPage::pageId));
+
+        long start = System.nanoTime();
+        int written = 0;
+        for (DirtyPage page : dirty) {
+            if (throttled && stopped) {
+                return written;
+            }
+            if (target.flush(page.frame(), page.pageId())) {
+                written++;
+                pagesWritten.increment();
+                if (throttled) {
+                    pace(start, written);
+                }
+            }
+        }
+        target.complete(checkpointLsn);
+        redoLsn = checkpointLsn;
+        lastCheckpointNanos = System.nanoTime();
+        checkpoints.increment();
+        return written;
+    }
+
+    private void pace(long start, int written) {
+        if (pagesPerSecond <= 0) {
+            return;
+        }
+        long due = start + written * TimeUnit.SECONDS.toNanos(1) / pagesPerSecond;
+        long wait;
+        while (!stopped && (wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /** LSN from which a restart would replay the log. */
+    long redoLsn() {
+        return redoLsn;
+    }
+
+    long checkpoints() {
+        return checkpoints.sum();
+    }
+
+    long pagesWritten() {
+        return pagesWritten.sum();
+    }
+
+    private boolean due() {
+        long logged = target.logEnd() - redoLsn;
+        return logged > 0 && (logged >= logBytes || System.nanoTime() - lastCheckpointNanos >= intervalNanos);
+    }
+
+    private void run() {
+        while (!stopped) {
+            synchronized (signal) {
+                if (!stopped) {
+                    try {
+                        signal.wait(POLL_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            if (!stopped && due()) {
+                try {
+                    checkpoint(true);
+                } catch (RuntimeException e) {
+                    // the restart point stays where it was; the next poll tries again
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops periodic checkpoints, abandoning one in progress, and waits for the thread. Like the
+     * page cleaner it is never interrupted, as that would close the file channel under a write.
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        if (worker == null) {
+            return;
+        }
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        boolean interrupted = false;
+        while (worker.isAlive()) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
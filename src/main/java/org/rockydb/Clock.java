@@ -3,7 +3,7 @@ package org.rockydb;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.LockSupport;
 
-final class Clock {
+final class Clock implements ReplacementPolicy {
     private static final int PROBES_BEFORE_BACKOFF = 64;
 
     private static final int MAX_SWEEPS = Frame.MAX_USAGE;
@@ -17,7 +17,13 @@ final class Clock {
         this.frames = frames;
     }
 
-    Frame findVictim() {
+    @Override
+    public int hand() {
+        return Math.floorMod(nextVictim.get(), frames.length);
+    }
+
+    @Override
+    public Frame findVictim() {
         final int n = frames.length;
         int stalled = 0;
 
@@ -31,6 +37,11 @@ final class Clock {
                         stalled = 0;
                         continue;
                     }
+                    if (sweep == 0 && frame.isDirty()) {
+                        // first lap: leave cold dirty frames to the page cleaner if a clean one exists
+                        frame.releaseClaim();
+                        continue;
+                    }
                     return frame;
                 }
                 if (++stalled >= PROBES_BEFORE_BACKOFF) {
@@ -3,26 +3,80 @@ package org.rockydb;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class Database implements Closeable {
+    /** Catalog keys of dropped tables whose pages are still being reclaimed start with this byte. */
+    private static final byte DROPPED = 0;
+    /** Log id of a table that keeps its values in its leaves. */
+    private static final long NO_VALUE_LOG = -1L;
 
+    private final File dbFile;
+    private final long valueLogSegmentSize;
     private final BufferedPool pool;
     private final BLinkTree catalog;
-    private final ConcurrentMap<String, BLinkTree> tables = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Table> tables = new ConcurrentHashMap<>();
     private final ReentrantLock catalogLock = new ReentrantLock();
+    private final ExecutorService reclaimer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "rockydb-reclaimer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public Database(File dbFile, int numFrames) throws IOException {
-        this.pool = new BufferedPool(dbFile, numFrames);
+        this(dbFile, numFrames, PoolOptions.defaults());
+    }
+
+    /** An open table, with the value log it keeps its values in, if any. */
+    private record Table(BLinkTree tree, ValueLog valueLog) {
+    }
+
+    public Database(File dbFile, int numFrames, PoolOptions options) throws IOException {
+        this(dbFile, numFrames, options, ValueLog.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /** Opens the database with value logs rolling over to a new segment at {@code valueLogSegmentSize}. */
+    Database(File dbFile, int numFrames, PoolOptions options, long valueLogSegmentSize) throws IOException {
+        this.dbFile = dbFile;
+        this.valueLogSegmentSize = valueLogSegmentSize;
+        this.pool = new BufferedPool(dbFile, numFrames, options);
         this.catalog = new BLinkTree(pool); // catalog root = page 0 (StoreBackedRootRef)
+        Iterator<Map.Entry<Value, Value>> dropped = catalog.scan(new Value(new byte[]{DROPPED}),
+                new Value(new byte[]{DROPPED + 1}));
+        while (dropped.hasNext()) {
+            Map.Entry<Value, Value> entry = dropped.next();
+            reclaimer.execute(() -> reclaim(entry.getKey(), entry.getValue()));
+        }
     }
 
     public void createTable(String name) {
+        createTable(name, false);
+    }
+
+    /**
+     * Creates {@code name}. With {@code separateValues} the table keeps values longer than a
+     * reference in a {@link ValueLog} next to the database file and its leaves hold only keys and
+     * references, so they stay dense with values of a few kilobytes. Writes to such a table
+     * schedule garbage collection of its log in the background.
+     */
+    public void createTable(String name, boolean separateValues) {
         Value nameKey = nameKey(name);
         catalogLock.lock();
         try {
@@ -31,38 +85,184 @@ public class Database implements Closeable {
             }
             long rootId = pool.nodeIdGenerator().get();
             pool.writeNode(new LeafNode(rootId, 1, new Value[]{}, new Value[]{}, -1L));
-            catalog.addValue(nameKey, encodeRootId(rootId));
-            tables.put(name, new BLinkTree(pool, new TableRootRef(nameKey, rootId)));
+            long logId = separateValues ? rootId : NO_VALUE_LOG;
+            catalog.addValue(nameKey, encodeTable(rootId, logId));
+            tables.put(name, openTable(nameKey, rootId, logId));
+        } finally {
+            catalogLock.unlock();
+        }
+        pool.commit();
+    }
+
+    /**
+     * Creates {@code name} and bulk-loads it from {@code sortedEntries}, which must be in strictly
+     * ascending key order. See {@link BLinkTree#bulkLoad(Iterator, double)}. The table enters the
+     * catalog only once it is loaded, so a load that fails leaves no table behind and hands back
+     * the pages it wrote.
+     */
+    public void createTable(String name, Iterator<Map.Entry<Value, Value>> sortedEntries, double fillFactor) {
+        Value nameKey = nameKey(name);
+        if (catalog.get(nameKey) != null) {
+            throw new IllegalStateException("Table already exists: " + name);
+        }
+        long rootId = pool.nodeIdGenerator().get();
+        pool.writeNode(new LeafNode(rootId, 1, new Value[]{}, new Value[]{}, -1L));
+        LoadingRootRef rootRef = new LoadingRootRef(rootId);
+        BLinkTree loaded = new BLinkTree(pool, rootRef);
+        try {
+            loaded.bulkLoad(sortedEntries, fillFactor);
+        } catch (RuntimeException e) {
+            pool.freePage(rootId);
+            pool.commit();
+            throw e;
+        }
+        catalogLock.lock();
+        try {
+            if (catalog.get(nameKey) != null) { // created by someone else while this one loaded
+                for (long id : loaded.pageIds()) {
+                    pool.freePage(id);
+                }
+                throw new IllegalStateException("Table already exists: " + name);
+            }
+            catalog.addValue(nameKey, encodeTable(rootRef.get(), NO_VALUE_LOG));
+            tables.put(name, openTable(nameKey, rootRef.get(), NO_VALUE_LOG));
         } finally {
             catalogLock.unlock();
+            pool.commit();
         }
     }
 
+    /**
+     * Removes {@code name}. Its pages and value log are handed back in the background; until
+     * then the catalog keeps a marker for them, so reclamation resumes after a restart. The table
+     * must not be in use by other threads while it is dropped.
+     */
     public void dropTable(String name) {
         Value nameKey = nameKey(name);
+        Value marker;
+        Value rootVal;
         catalogLock.lock();
         try {
-            if (catalog.get(nameKey) == null) {
+            rootVal = catalog.get(nameKey);
+            if (rootVal == null) {
                 throw new IllegalStateException("No such table: " + name);
             }
+            marker = droppedKey(decodeRootId(rootVal));
+            catalog.addValue(marker, rootVal);
             catalog.delete(nameKey);
-            tables.remove(name);
-            // NOTE: the dropped tree's pages are not reclaimed (no freelist; monotonic ids).
+            Table dropped = tables.remove(name);
+            if (dropped != null) {
+                if (dropped.valueLog() != null) {
+                    close(dropped.valueLog()); // waits for a running collection
+                }
+                dropped.tree().freeRetiredPages(); // merged out before the drop, so not reachable from the root
+            }
         } finally {
             catalogLock.unlock();
         }
+        pool.commit();
+        reclaimer.execute(() -> reclaim(marker, rootVal));
     }
 
+    /**
+     * Frees the pages of a dropped table, after deleting its value log. The marker goes first, so
+     * a crash part-way through can leak some of the pages but never frees a page twice: once
+     * freed, a page may already belong to another table.
+     */
+    private void reclaim(Value marker, Value rootVal) {
+        long rootId = decodeRootId(rootVal);
+        long logId = decodeLogId(rootVal);
+        List<Long> pages;
+        if (logId == NO_VALUE_LOG) {
+            pages = new BLinkTree(pool, new FixedRootRef(rootId)).pageIds();
+        } else {
+            ValueLog valueLog = openValueLog(logId);
+            pages = new BLinkTree(pool, new FixedRootRef(rootId), valueLog).pageIds();
+            close(valueLog);
+            ValueLog.delete(ValueLog.fileFor(dbFile, logId));
+        }
+        catalogLock.lock();
+        try {
+            catalog.delete(marker);
+        } finally {
+            catalogLock.unlock();
+        }
+        for (long id : pages) {
+            pool.freePage(id);
+        }
+        pool.commit();
+    }
+
+    /** Waits until the pages of every table dropped so far are reclaimed. For tests. */
+    void awaitReclaimed() throws InterruptedException, ExecutionException {
+        reclaimer.submit(() -> {
+        }).get();
+    }
+
+    /**
+     * Inserts or overwrites {@code key}. The change is durable when this returns; concurrent
+     * writers share the log force that makes it so.
+     */
     public void insert(String table, Value key, Value value) {
-        resolve(table).addValue(key, value);
+        Table resolved = resolve(table);
+        resolved.tree().addValue(key, value);
+        pool.commit();
+        collectGarbage(resolved);
+    }
+
+    public void insertAll(String table, SortedMap<Value, Value> entries) {
+        Table resolved = resolve(table);
+        resolved.tree().putAll(entries);
+        pool.commit();
+        collectGarbage(resolved);
     }
 
     public Value get(String table, Value key) {
-        return resolve(table).get(key);
+        return resolve(table).tree().get(key);
+    }
+
+    /** Streams the value of {@code key}, or returns {@code null}; see {@link BLinkTree#openValue}. */
+    public InputStream openValue(String table, Value key) {
+        return resolve(table).tree().openValue(key);
+    }
+
+    public CompletableFuture<Value> getAsync(String table, Value key) {
+        return resolve(table).tree().getAsync(key);
+    }
+
+    public Map<Value, Value> getAll(String table, Collection<Value> keys) {
+        return resolve(table).tree().getAll(keys);
     }
 
     public void delete(String table, Value key) {
-        resolve(table).delete(key);
+        Table resolved = resolve(table);
+        resolved.tree().delete(key);
+        pool.commit();
+        collectGarbage(resolved);
+    }
+
+    /**
+     * Schedules collection of the table's value log on the reclaimer thread if a segment is due
+     * and no collection is scheduled yet.
+     */
+    private void collectGarbage(Table table) {
+        ValueLog valueLog = table.valueLog();
+        if (valueLog == null || !valueLog.needsCollection() || !valueLog.startCollecting()) {
+            return;
+        }
+        reclaimer.execute(() -> {
+            try {
+                while (valueLog.collect(table.tree(), pool::commit)) {
+                    // until no segment is due
+                }
+            } finally {
+                valueLog.finishCollecting();
+            }
+        });
+    }
+
+    public Iterator<Map.Entry<Value, Value>> scan(String table, Value from, Value to) {
+        return resolve(table).tree().scan(from, to);
     }
 
     public boolean tableExists(String name) {
@@ -77,8 +277,8 @@ public class Database implements Closeable {
         return v == null ? -1L : decodeRootId(v);
     }
 
-    private BLinkTree resolve(String table) {
-        BLinkTree cached = tables.get(table);
+    private Table resolve(String table) {
+        Table cached = tables.get(table);
         if (cached != null) {
             return cached;
         }
@@ -93,26 +293,107 @@ public class Database implements Closeable {
             if (rootVal == null) {
                 throw new IllegalStateException("No such table: " + table);
             }
-            BLinkTree tree = new BLinkTree(pool, new TableRootRef(nameKey, decodeRootId(rootVal)));
-            tables.put(table, tree);
-            return tree;
+            Table opened = openTable(nameKey, decodeRootId(rootVal), decodeLogId(rootVal));
+            tables.put(table, opened);
+            return opened;
         } finally {
             catalogLock.unlock();
         }
     }
 
+    private Table openTable(Value nameKey, long rootId, long logId) {
+        TableRootRef rootRef = new TableRootRef(nameKey, rootId, logId);
+        if (logId == NO_VALUE_LOG) {
+            return new Table(new BLinkTree(pool, rootRef), null);
+        }
+        ValueLog valueLog = openValueLog(logId);
+        return new Table(new BLinkTree(pool, rootRef, valueLog), valueLog);
+    }
+
+    /** Opens a table's value log, registered with the pool so that commits sync it. */
+    private ValueLog openValueLog(long logId) {
+        ValueLog valueLog;
+        try {
+            valueLog = new ValueLog(ValueLog.fileFor(dbFile, logId), valueLogSegmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pool.registerValueStorage(valueLog);
+        return valueLog;
+    }
+
+    private void close(ValueLog valueLog) {
+        pool.unregisterValueStorage(valueLog);
+        try {
+            valueLog.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Waits for pending reclamation and value log collection, then closes the logs and the pool. */
     @Override
     public void close() throws IOException {
+        awaitReclaimer();
+        tables.values().forEach(table -> table.tree().freeRetiredPages());
+        for (Table table : tables.values()) {
+            if (table.valueLog() != null) {
+                pool.unregisterValueStorage(table.valueLog());
+                table.valueLog().close();
+            }
+        }
+        catalog.freeRetiredPages();
         pool.close();
     }
 
+    /** Drops the database without flushing anything, as a crash would. For recovery tests. */
+    void crash() throws IOException {
+        awaitReclaimer();
+        for (Table table : tables.values()) {
+            if (table.valueLog() != null) {
+                pool.unregisterValueStorage(table.valueLog());
+                table.valueLog().close();
+            }
+        }
+        pool.crash();
+    }
+
+    private void awaitReclaimer() {
+        reclaimer.shutdown();
+        boolean interrupted = false;
+        while (!reclaimer.isTerminated()) {
+            try {
+                reclaimer.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static Value nameKey(String name) {
+        if (!name.isEmpty() && name.charAt(0) == DROPPED) {
+            throw new IllegalArgumentException("Table names must not start with \\0");
+        }
         return new Value(name.getBytes(StandardCharsets.UTF_8));
     }
 
-    private static Value encodeRootId(long id) {
-        ByteBuffer b = ByteBuffer.allocate(Long.BYTES);
-        b.putLong(id);
+    private static Value droppedKey(long rootId) {
+        return new Value(ByteBuffer.allocate(1 + Long.BYTES).put(DROPPED).putLong(rootId).array());
+    }
+
+    /**
+     * Catalog entry of a table: its root id, followed by the id of its value log if it has one.
+     * The log id is the table's first root id, so it stays unique while the root moves.
+     */
+    private static Value encodeTable(long rootId, long logId) {
+        ByteBuffer b = ByteBuffer.allocate(logId == NO_VALUE_LOG ? Long.BYTES : 2 * Long.BYTES);
+        b.putLong(rootId);
+        if (logId != NO_VALUE_LOG) {
+            b.putLong(logId);
+        }
         return new Value(b.array());
     }
 
@@ -120,13 +401,46 @@ public class Database implements Closeable {
         return ByteBuffer.wrap(v.bytes()).getLong();
     }
 
+    private static long decodeLogId(Value v) {
+        return v.bytes().length > Long.BYTES ? ByteBuffer.wrap(v.bytes()).getLong(Long.BYTES) : NO_VALUE_LOG;
+    }
+
+    /** Root of a dropped table, which never changes again. */
+    private record FixedRootRef(long get) implements RootRef {
+        @Override
+        public void set(long id) {
+            throw new IllegalStateException("Dropped table");
+        }
+    }
+
+    /** Root of a table being bulk-loaded, before it is in the catalog. */
+    private static final class LoadingRootRef implements RootRef {
+        private long rootId;
+
+        LoadingRootRef(long rootId) {
+            this.rootId = rootId;
+        }
+
+        @Override
+        public long get() {
+            return rootId;
+        }
+
+        @Override
+        public void set(long id) {
+            rootId = id;
+        }
+    }
+
     private final class TableRootRef implements RootRef {
         private final Value nameKey;
         private final AtomicLong rootId;
+        private final long logId;
 
-        TableRootRef(Value nameKey, long initialRootId) {
+        TableRootRef(Value nameKey, long initialRootId, long logId) {
             this.nameKey = nameKey;
             this.rootId = new AtomicLong(initialRootId);
+            this.logId = logId;
         }
 
         @Override
@@ -137,7 +451,7 @@ public class Database implements Closeable {
         @Override
         public void set(long id) {
             rootId.set(id);
-            catalog.addValue(nameKey, encodeRootId(id));
+            catalog.addValue(nameKey, encodeTable(id, logId));
         }
     }
 }
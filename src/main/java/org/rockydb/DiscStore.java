@@ -5,74 +5,183 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 final class DiscStore implements AutoCloseable {
     private static final long TREE_ROOT_FILE_POSITION = 0;
+    private static final long CHECKPOINT_LSN_FILE_POSITION = Long.BYTES;
+    private static final long FREE_LIST_FILE_POSITION = 2 * Long.BYTES;
 
     private final RandomAccessFile raf;
     private final FileChannel fileChannel;
+    private final PageFile pageFile;
     private final AtomicLong nextPageId;
     private final AtomicLong rootId;
+    private final FreePageList freePages;
+    private volatile long checkpointLsn;
 
     DiscStore(File dbFile) throws IOException {
+        this(dbFile, StorageBackend.FILE_CHANNEL);
+    }
+
+    DiscStore(File dbFile, StorageBackend backend) throws IOException {
         raf = new RandomAccessFile(dbFile, "rw");
         this.fileChannel = raf.getChannel();
+        this.pageFile = backend.open(dbFile, fileChannel);
         this.nextPageId = new AtomicLong(loadNextPageId());
         this.rootId = new AtomicLong(loadRootId());
+        this.checkpointLsn = readHeaderLong(CHECKPOINT_LSN_FILE_POSITION);
+        this.freePages = FreePageList.load(readHeaderLong(FREE_LIST_FILE_POSITION), this::readPage);
+        freePages.dropFrom(nextPageId.get()); // freed before they were ever written, so past the end
         checkAndInitTree();
     }
 
     ByteBuffer readRawPage(long id) {
-        ByteBuffer buffer = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
-        try {
-            fileChannel.read(buffer, id * Store.PAGE_SIZE);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        buffer.rewind();
+        ByteBuffer buffer = ByteBuffer.allocate(Store.PAGE_SIZE);
+        readPage(id, buffer);
         return buffer;
     }
 
     void writeRawPage(long id, ByteBuffer buffer) {
-        buffer.rewind();
-        try {
-            fileChannel.write(buffer, Store.PAGE_SIZE * id);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        writePage(id, buffer);
+    }
+
+    /**
+     * Reads page {@code id} into {@code page} (a page-sized buffer, such as a frame slice) without
+     * going through an intermediate array. Bytes past the end of the file read as zeros.
+     */
+    void readPage(long id, ByteBuffer page) {
+        pageFile.read(id, page);
     }
 
+    void writePage(long id, ByteBuffer page) {
+        pageFile.write(id, page);
+    }
+
+    CompletableFuture<Void> readPageAsync(long id, ByteBuffer page) {
+        return pageFile.readAsync(id, page);
+    }
+
+    /** Forces written pages and the root pointer to stable storage. */
+    void force() throws IOException {
+        pageFile.force();
+    }
+
+    /** Makes sure ids up to {@code id} are never handed out again, e.g. after recovery wrote them. */
+    void reservePageIds(long id) {
+        nextPageId.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /** Hands out freed pages, lowest first, before growing the file. */
     Supplier<Long> nodeIdGenerator() {
-        return nextPageId::getAndIncrement;
+        return this::allocatePageId;
+    }
+
+    private long allocatePageId() {
+        long id = freePages.poll();
+        return id != -1 ? id : nextPageId.getAndIncrement();
+    }
+
+    /**
+     * Returns page {@code id} to the allocator. The caller makes sure nothing references it any
+     * more; the list reaches the file at the next {@link #checkpoint}.
+     */
+    void freePage(long id) {
+        freePages.add(id);
+    }
+
+    /** Takes page {@code id} off the free list, e.g. when recovery finds it in use. */
+    void markPageUsed(long id) {
+        freePages.remove(id);
+    }
+
+    int freePageCount() {
+        return freePages.size();
+    }
+
+    /**
+     * Drops free pages at the end of the file, so that closing the store shrinks the file. Call it
+     * once nothing allocates any more, before the last {@link #checkpoint}.
+     */
+    void trimFreeTail() {
+        nextPageId.set(freePages.trimTail(nextPageId.get()));
+    }
+
+    /**
+     * Records that every change logged before {@code lsn} is in the file, so recovery can start
+     * replaying there. Forces written pages, stores the free list and then points the header at
+     * both in a single write, so a crash at any step leaves a consistent header behind.
+     */
+    void checkpoint(long lsn) throws IOException {
+        checkpoint(lsn, () -> {
+        });
+    }
+
+    /**
+     * Like {@link #checkpoint(long)}, running {@code forceLog} once the free list to store is
+     * fixed. A page is logged as free before it joins the list, after the changes that unlinked
+     * it, so forcing the log to its end there keeps a crash from losing those records while the
+     * stored list already hands the page out.
+     */
+    void checkpoint(long lsn, Runnable forceLog) throws IOException {
+        force();
+        FreePageList.Chain chain = freePages.prepare(nextPageId::getAndIncrement);
+        try {
+            forceLog.run();
+            for (int i = 0; i < chain.pages().size(); i++) {
+                writePage(chain.trunkIds().get(i), chain.pages().get(i));
+            }
+            force();
+        } catch (IOException | RuntimeException e) {
+            freePages.abort(chain);
+            throw e;
+        }
+        ByteBuffer header = ByteBuffer.allocate(2 * Long.BYTES);
+        header.putLong(0, lsn).putLong(Long.BYTES, chain.head());
+        fileChannel.write(header, CHECKPOINT_LSN_FILE_POSITION);
+        checkpointLsn = lsn;
+        force();
+        freePages.commit(chain);
     }
 
     void updateRootId(long id) {
+        writeHeaderLong(TREE_ROOT_FILE_POSITION, id);
+        rootId.set(id);
+    }
+
+    long rootId() {
+        return rootId.get();
+    }
+
+    long checkpointLsn() {
+        return checkpointLsn;
+    }
+
+    private void writeHeaderLong(long position, long value) {
         ByteBuffer buffer = ByteBuffer.wrap(new byte[Long.BYTES]);
-        buffer.putLong(id);
+        buffer.putLong(value);
         buffer.rewind();
         try {
-            fileChannel.write(buffer, TREE_ROOT_FILE_POSITION);
+            fileChannel.write(buffer, position);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        rootId.set(id);
     }
 
-    long rootId() {
-        return rootId.get();
+    private long readHeaderLong(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[Long.BYTES]);
+        fileChannel.read(buffer, position);
+        return buffer.getLong(0);
     }
 
     private long loadNextPageId() throws IOException {
-        return Math.max(1, raf.length() / Store.PAGE_SIZE);
+        return Math.max(1, pageFile.pageCount());
     }
 
     private long loadRootId() throws IOException {
-        ByteBuffer buffer = ByteBuffer.wrap(new byte[Long.BYTES]);
-        fileChannel.read(buffer, TREE_ROOT_FILE_POSITION);
-        buffer.rewind();
-        long val = buffer.getLong();
+        long val = readHeaderLong(TREE_ROOT_FILE_POSITION);
         if (val < 1) return -1;
         else return val;
     }
@@ -88,6 +197,7 @@ final class DiscStore implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        pageFile.close(nextPageId.get());
         if (fileChannel != null) {
             fileChannel.close();
         }
@@ -0,0 +1,22 @@
+package org.rockydb;
+
+/**
+ * Replacement policies a {@link BufferedPool} can run.
+ */
+public enum EvictionPolicy {
+    /** Plain CLOCK with usage counts; cheap and good for stable working sets. */
+    CLOCK,
+    /**
+     * Two-queue CLOCK: pages enter a probation segment and are only protected once re-referenced or
+     * known to be frequent, so a large one-pass scan recycles probation frames instead of flushing
+     * hot branch pages and the working set.
+     */
+    TWO_QUEUE;
+
+    ReplacementPolicy create(Frame[] frames) {
+        return switch (this) {
+            case CLOCK -> new Clock(frames);
+            case TWO_QUEUE -> new TwoQueueClock(frames);
+        };
+    }
+}
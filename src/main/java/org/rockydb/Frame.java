@@ -1,26 +1,37 @@
 package org.rockydb;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 final class Frame {
     static final int MAX_USAGE = 5;
     static final long FREE = -1L;
 
     final int index;
-    final byte[] bytes = new byte[Store.PAGE_SIZE];
-    final ReadWriteLock ioLock = new ReentrantReadWriteLock();
+    final ByteBuffer buffer;
+    final VersionedLock ioLock = new VersionedLock();
     private final Lock treeLatch = new ReentrantLock();
     private volatile long pageId = FREE;
     private final AtomicInteger pinCount = new AtomicInteger();
     private final AtomicInteger usageCount = new AtomicInteger();
-    private volatile boolean dirty = false;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile CompletableFuture<Void> pendingLoad;
+    private volatile long pageLsn;
 
     Frame(int index) {
+        this(index, ByteBuffer.allocate(Store.PAGE_SIZE));
+    }
+
+    Frame(int index, ByteBuffer buffer) {
+        if (buffer.capacity() != Store.PAGE_SIZE) {
+            throw new IllegalArgumentException("frame buffer must hold exactly one page");
+        }
         this.index = index;
+        this.buffer = buffer;
     }
 
     long pageId() {
@@ -35,16 +46,51 @@ final class Frame {
         return pageId == FREE;
     }
 
+    /**
+     * The asynchronous read filling this frame, or {@code null} once its content is valid. It is set
+     * before the page is published in the page table, so anyone who finds the frame through the
+     * table and sees {@code null} also sees the loaded bytes.
+     */
+    CompletableFuture<Void> pendingLoad() {
+        return pendingLoad;
+    }
+
+    void setPendingLoad(CompletableFuture<Void> pendingLoad) {
+        this.pendingLoad = pendingLoad;
+    }
+
+    /**
+     * LSN of the last log record describing a change to this frame's page, or {@code 0} if it has
+     * not changed since it was loaded. The page may only be written once the log is durable up to it.
+     */
+    long pageLsn() {
+        return pageLsn;
+    }
+
+    void setPageLsn(long pageLsn) {
+        this.pageLsn = pageLsn;
+    }
+
     Lock treeLatch() {
         return treeLatch;
     }
 
     boolean isDirty() {
-        return dirty;
+        return dirty.get();
     }
 
     void setDirty(boolean dirty) {
-        this.dirty = dirty;
+        this.dirty.set(dirty);
+    }
+
+    /** Marks the frame dirty and reports whether it was clean before. */
+    boolean markDirty() {
+        return !dirty.getAndSet(true);
+    }
+
+    /** Clears the dirty flag; only one of several concurrent callers gets {@code true}. */
+    boolean markClean() {
+        return dirty.compareAndSet(true, false);
     }
 
     void pin() {
@@ -71,6 +117,10 @@ final class Frame {
         }
     }
 
+    int usage() {
+        return usageCount.get();
+    }
+
     boolean hasUsage() {
         return usageCount.get() > 0;
     }
@@ -79,6 +129,10 @@ final class Frame {
         usageCount.decrementAndGet();
     }
 
+    void resetUsage() {
+        usageCount.set(0);
+    }
+
     void bumpUsage() {
         int current;
         do {
@@ -0,0 +1,34 @@
+package org.rockydb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocates the page buffers backing the pool's frames. With off-heap frames the pool lives in a
+ * few large direct chunks carved into page-sized slices, so it adds no objects for the collector to
+ * trace, does not grow the heap, and disc I/O goes straight to and from frame memory without the
+ * JDK's temporary direct-buffer copy. A direct buffer holds at most 2 GB, hence the chunking.
+ */
+final class FrameArena {
+    static final int CHUNK_BYTES = 1 << 30;
+
+    private FrameArena() {}
+
+    static Frame[] allocate(int numFrames, boolean offHeap) {
+        Frame[] frames = new Frame[numFrames];
+        if (!offHeap) {
+            for (int i = 0; i < numFrames; i++) {
+                frames[i] = new Frame(i);
+            }
+            return frames;
+        }
+        int framesPerChunk = CHUNK_BYTES / Store.PAGE_SIZE;
+        for (int first = 0; first < numFrames; first += framesPerChunk) {
+            int inChunk = Math.min(framesPerChunk, numFrames - first);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(inChunk * Store.PAGE_SIZE);
+            for (int i = 0; i < inChunk; i++) {
+                frames[first + i] = new Frame(first + i, chunk.slice(i * Store.PAGE_SIZE, Store.PAGE_SIZE));
+            }
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,147 @@
+package org.rockydb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+
+/**
+ * Pages released by dropped tables and merged nodes. The lowest free id is handed out first, which
+ * keeps the file dense and lets a free tail be trimmed. At each checkpoint the list is stored as a
+ * chain of trunk pages taken from the list itself:
+ * <pre>
+ *  0  count       int
+ *  4  next trunk  long, 0 at the end of the chain
+ * 12  page ids    count longs
+ * </pre>
+ * The chain the file header points to has to stay intact until a newer one replaces it, so its
+ * trunk pages are handed out only after that. Between checkpoints the write-ahead log records each
+ * freed page, and recovery treats any other record for a page as proof that it is in use.
+ */
+final class FreePageList {
+    static final int COUNT_OFFSET = 0;
+    static final int NEXT_OFFSET = 4;
+    static final int IDS_OFFSET = 12;
+    static final int IDS_PER_TRUNK = (Store.PAGE_SIZE - IDS_OFFSET) / Long.BYTES;
+
+    private final TreeSet<Long> free = new TreeSet<>();
+    private Set<Long> trunks = Set.of();
+
+    /** A chain ready to be written; see {@link #prepare}. */
+    record Chain(long head, List<Long> trunkIds, List<ByteBuffer> pages) {
+    }
+
+    @FunctionalInterface
+    interface PageReader {
+        void read(long id, ByteBuffer page);
+    }
+
+    /** Reads the chain starting at {@code head}, or an empty list when {@code head} is 0. */
+    static FreePageList load(long head, PageReader reader) {
+        FreePageList list = new FreePageList();
+        Set<Long> trunks = new HashSet<>();
+        ByteBuffer page = ByteBuffer.allocate(Store.PAGE_SIZE);
+        for (long id = head; id != 0 && trunks.add(id); id = page.getLong(NEXT_OFFSET)) {
+            reader.read(id, page);
+            int count = page.getInt(COUNT_OFFSET);
+            for (int i = 0; i < count; i++) {
+                list.free.add(page.getLong(IDS_OFFSET + i * Long.BYTES));
+            }
+        }
+        list.trunks = trunks;
+        return list;
+    }
+
+    /** Takes the lowest free page id, or returns {@code -1} if there is none. */
+    synchronized long poll() {
+        Long id = free.pollFirst();
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Adds {@code id} to the list. A trunk of the stored chain is already on its way back: it is
+     * free again once the next chain is stored.
+     */
+    synchronized void add(long id) {
+        if (!trunks.contains(id)) {
+            free.add(id);
+        }
+    }
+
+    synchronized void remove(long id) {
+        free.remove(id);
+    }
+
+    /** Pages not in use, counting the trunks of the stored chain, which are only held back. */
+    synchronized int size() {
+        return free.size() + trunks.size();
+    }
+
+    /**
+     * Drops free pages from the end of a file of {@code pageCount} pages and returns the new count.
+     */
+    synchronized long trimTail(long pageCount) {
+        while (pageCount > 1 && free.remove(pageCount - 1)) {
+            pageCount--;
+        }
+        return pageCount;
+    }
+
+    /** Drops free pages at or past {@code pageCount}, which the file no longer reaches. */
+    synchronized void dropFrom(long pageCount) {
+        free.tailSet(pageCount).clear();
+    }
+
+    /**
+     * Lays out the current list, plus the trunks of the stored chain, as a new chain. Its trunk
+     * pages come from the list, or from {@code newPage} when it runs short, and are out of
+     * circulation from now on. Once the chain is written and the header points to it, call
+     * {@link #commit}.
+     */
+    synchronized Chain prepare(LongSupplier newPage) {
+        TreeSet<Long> entries = new TreeSet<>(free);
+        entries.addAll(trunks);
+        List<Long> trunkIds = new ArrayList<>();
+        while ((long) trunkIds.size() * IDS_PER_TRUNK < entries.size()) {
+            Long id = free.pollFirst();
+            if (id == null) {
+                trunkIds.add(newPage.getAsLong());
+            } else {
+                entries.remove(id);
+                trunkIds.add(id);
+            }
+        }
+        List<ByteBuffer> pages = new ArrayList<>(trunkIds.size());
+        for (int t = 0; t < trunkIds.size(); t++) {
+            ByteBuffer page = ByteBuffer.allocate(Store.PAGE_SIZE);
+            int count = 0;
+            while (count < IDS_PER_TRUNK && !entries.isEmpty()) {
+                page.putLong(IDS_OFFSET + count * Long.BYTES, entries.pollFirst());
+                count++;
+            }
+            page.putInt(COUNT_OFFSET, count);
+            page.putLong(NEXT_OFFSET, t + 1 < trunkIds.size() ? trunkIds.get(t + 1) : 0);
+            pages.add(page);
+        }
+        return new Chain(trunkIds.isEmpty() ? 0 : trunkIds.get(0), trunkIds, pages);
+    }
+
+    /** The header now points to {@code chain}: the trunks of the previous chain become free. */
+    synchronized void commit(Chain chain) {
+        Set<Long> previous = trunks;
+        trunks = new HashSet<>(chain.trunkIds());
+        for (long id : previous) {
+            add(id);
+        }
+    }
+
+    /** {@code chain} was not stored: its trunk pages go back to the list. */
+    synchronized void abort(Chain chain) {
+        for (long id : chain.trunkIds()) {
+            add(id);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.rockydb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch of recent page access frequencies, as used by TinyLFU: four rows of small
+ * saturating counters, and every counter is halved once {@code 10 * capacity} accesses have been
+ * recorded, so the estimate tracks the recent past rather than all time.
+ */
+final class FrequencySketch {
+    static final int MAX_COUNT = 15;
+
+    private static final int ROWS = 4;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private final AtomicIntegerArray counters;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    FrequencySketch(int capacity) {
+        int width = Integer.highestOneBit(Math.max(16, capacity * 4 - 1) << 1);
+        this.counters = new AtomicIntegerArray(ROWS * width);
+        this.mask = width - 1;
+        this.sampleSize = 10 * Math.max(1, capacity);
+    }
+
+    void increment(long pageId) {
+        for (int row = 0; row < ROWS; row++) {
+            int idx = indexOf(pageId, row);
+            int current;
+            do {
+                current = counters.get(idx);
+                if (current >= MAX_COUNT) {
+                    break;
+                }
+            } while (!counters.compareAndSet(idx, current, current + 1));
+        }
+        if (additions.incrementAndGet() == sampleSize) {
+            age();
+        }
+    }
+
+    int frequency(long pageId) {
+        int min = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            min = Math.min(min, counters.get(indexOf(pageId, row)));
+        }
+        return min;
+    }
+
+    private void age() {
+        for (int i = 0; i < counters.length(); i++) {
+            int current;
+            do {
+                current = counters.get(i);
+            } while (!counters.compareAndSet(i, current, current >>> 1));
+        }
+        additions.addAndGet(-sampleSize / 2);
+    }
+
+    private int indexOf(long pageId, int row) {
+        long h = (pageId + SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+        h ^= h >>> 32;
+        return row * (mask + 1) + ((int) h & mask);
+    }
+}
@@ -1,11 +1,16 @@
 package org.rockydb;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.function.Supplier;
 
 public class LeafNode extends Node {
     private final Value[] keys;
     private final Value[] values;
+    private final Value highKey;
 
     public LeafNode(
         long id,
@@ -13,16 +18,34 @@ public class LeafNode extends Node {
         Value[] keys,
         Value[] values,
         long link
+    ) {
+        this(id, height, keys, values, link, null);
+    }
+
+    /**
+     * {@code highKey} is the separator that bounds this leaf in its parent, or {@code null} for
+     * the rightmost leaf and leaves written before high keys were stored.
+     */
+    public LeafNode(
+        long id,
+        int height,
+        Value[] keys,
+        Value[] values,
+        long link,
+        Value highKey
     ) {
         super(id, true, height, link);
         this.keys = keys;
         this.values = values;
+        this.highKey = highKey;
     }
 
     @Override
     public boolean shouldGoRight(Value key) {
+        if (link() == -1) return false;
+        if (highKey != null) return highKey.compareTo(key) < 0;
         if (keys.length == 0) return false;
-        return keys[keys.length - 1].compareTo(key) < 0 && link() != -1;
+        return keys[keys.length - 1].compareTo(key) < 0;
     }
 
     @Override
@@ -49,6 +72,10 @@ public class LeafNode extends Node {
         return values;
     }
 
+    public Value getHighKey() {
+        return highKey;
+    }
+
     public Value getValueForKey(Value key) {
         int idx = Arrays.binarySearch(keys, key);
         if (idx > -1) return values[idx];
@@ -68,46 +95,101 @@ public class LeafNode extends Node {
         }
     }
 
+    /**
+     * Merges the leading run of {@code pending} that belongs in this leaf and removes the merged
+     * entries from {@code pending}. The first entry is taken unconditionally — the caller has already
+     * walked right to the leaf that covers it — and later ones only while this leaf still covers
+     * them. The run also ends at the first entry that
+     * overflows the page, so the result splits at most once, exactly like {@link #copyWith}.
+     */
+    public CreationResult copyWithAll(NavigableMap<Value, Value> pending, Supplier<Long> nodeIdGenerator) {
+        List<Value> newKeys = new ArrayList<>(keys.length + pending.size());
+        List<Value> newValues = new ArrayList<>(keys.length + pending.size());
+        Value bound = highKey != null || keys.length == 0 ? highKey : biggestKey();
+        int rawSize = uncompressedSizeOf(keys, values);
+        int newSize = size();
+        int idx = 0;
+        boolean first = true;
+
+        while (!pending.isEmpty() && !needsSplit(newSize)) {
+            Map.Entry<Value, Value> entry = pending.firstEntry();
+            Value key = entry.getKey();
+            if (!first && link() != -1 && (bound == null || key.compareTo(bound) > 0)) {
+                break;
+            }
+            while (idx < keys.length && keys[idx].compareTo(key) < 0) {
+                newKeys.add(keys[idx]);
+                newValues.add(values[idx]);
+                idx++;
+            }
+            if (idx < keys.length && keys[idx].equals(key)) {
+                rawSize += sizeOfCell(key, entry.getValue()) - sizeOfCell(key, values[idx]);
+                idx++;
+            } else {
+                rawSize += sizeOfCell(key, entry.getValue());
+            }
+            newKeys.add(key);
+            newValues.add(entry.getValue());
+            pending.pollFirstEntry();
+            first = false;
+            Value last = idx < keys.length ? keys[keys.length - 1] : key;
+            newSize = rawSize - SlottedPage.prefixSaving(newKeys.get(0), last, newKeys.size() + keys.length - idx)
+                    + SlottedPage.highKeySize(highKey, last);
+        }
+        for (; idx < keys.length; idx++) {
+            newKeys.add(keys[idx]);
+            newValues.add(values[idx]);
+        }
+        return splitIfNeeded(newKeys.toArray(new Value[0]), newValues.toArray(new Value[0]), nodeIdGenerator);
+    }
+
     /**
      * Returns a new leaf node with {@code key} and its value physically removed, or {@code null}
      * if this leaf does not contain {@code key} (so the caller can skip the write).
      * <p>
-     * Deletion-only: the node is never merged into or redistributed from a sibling, even when the
-     * removal empties it. An empty leaf stays linked in the chain — harmless to {@code get}
-     * ({@code shouldGoRight} returns {@code false} on an empty node) and self-healing on the next
-     * insert — and its parent separator is left untouched, since a stale separator remains a
-     * correct partition point.
+     * The node itself is never merged here; {@link BLinkTree#delete} merges underfull leaves with
+     * a sibling afterwards.
      */
     public LeafNode without(Value key) {
         int idx = Arrays.binarySearch(keys, key);
         if (idx < 0) return null;
-        return new LeafNode(id(), height(), remove(keys, idx), remove(values, idx), link());
+        return new LeafNode(id(), height(), remove(keys, idx), remove(values, idx), link(), highKey);
+    }
+
+    /** Bytes this node takes up in a page, as measured against {@link #MAX_NODE_SIZE}. */
+    public int size() {
+        return sizeOf(keys, values, highKey);
+    }
+
+    /**
+     * Returns this leaf with the entries of its right sibling {@code right} appended, taking over
+     * the sibling's link and high key.
+     */
+    public LeafNode mergedWith(LeafNode right) {
+        Value[] newKeys = Arrays.copyOf(keys, keys.length + right.keys.length);
+        Value[] newValues = Arrays.copyOf(values, values.length + right.values.length);
+        System.arraycopy(right.keys, 0, newKeys, keys.length, right.keys.length);
+        System.arraycopy(right.values, 0, newValues, values.length, right.values.length);
+        return new LeafNode(id(), height(), newKeys, newValues, right.link(), right.highKey);
     }
 
     private CreationResult splitIfNeeded(Value[] keys, Value[] values, Supplier<Long> nodeIdGenerator) {
-        int newSize = size(keys) + size(values) + Store.LINK_POINTER_SIZE;
+        int newSize = sizeOf(keys, values, highKey);
         if (needsSplit(newSize)) {
-            return split(keys, values, newSize, nodeIdGenerator);
+            return split(keys, values, nodeIdGenerator);
         } else {
-            return new CreationResult(new LeafNode(id(), height(), keys, values, link()), null, null);
+            return new CreationResult(new LeafNode(id(), height(), keys, values, link(), highKey), null, null);
         }
     }
 
-    private CreationResult split(Value[] keys, Value[] values, int newSize, Supplier<Long> nodeIdGenerator) {
-        int keyMid = 0;
-        int leftSize = sizeOfCell(0, keys, values);
-        int rightSize = newSize - leftSize;
-        while (
-            keyMid < keys.length - 1 &&
-                Math.abs(rightSize - leftSize) >
-                    Math.abs((rightSize - sizeOfCell(keyMid + 1, keys, values)) - (leftSize + sizeOfCell(keyMid + 1, keys, values)))
-        ) {
-            keyMid++;
-            leftSize += sizeOfCell(keyMid, keys, values);
-            rightSize -= sizeOfCell(keyMid, keys, values);
+    private CreationResult split(Value[] keys, Value[] values, Supplier<Long> nodeIdGenerator) {
+        int[] cellSizes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            cellSizes[i] = sizeOfCell(i, keys, values);
         }
+        int keyMid = splitIndex(keys, cellSizes);
 
-        Value promotedValue = keys[keyMid];
+        Value promotedValue = separator(keys[keyMid], keys[keyMid + 1]);
         Value[] leftKeys = new Value[keyMid + 1];
         Value[] leftValues = new Value[leftKeys.length];
 
@@ -121,12 +203,36 @@ public class LeafNode extends Node {
 
         long rightNodeId = nodeIdGenerator.get();
         return new CreationResult(
-            new LeafNode(id(), height(), leftKeys, leftValues, rightNodeId),
-            new LeafNode(rightNodeId, height(), rightKeys, rightValues, this.link()),
+            new LeafNode(id(), height(), leftKeys, leftValues, rightNodeId, promotedValue),
+            new LeafNode(rightNodeId, height(), rightKeys, rightValues, this.link(), highKey),
             promotedValue
         );
     }
 
+    /**
+     * The shortest key {@code s} with {@code leftMax <= s < rightMin}, to bound the left half of a
+     * split in its parent and as its high key instead of the whole of {@code leftMax}. Keys that share a prefix of {@code n} bytes need at
+     * least {@code n + 1}; that is reached by cutting {@code rightMin} short, or by bumping the
+     * first differing byte of {@code leftMax} when {@code rightMin} is only that long itself.
+     */
+    static Value separator(Value leftMax, Value rightMin) {
+        byte[] left = leftMax.bytes();
+        byte[] right = rightMin.bytes();
+        int common = Arrays.mismatch(left, right);
+        if (common >= left.length - 1) {
+            return leftMax; // a prefix of rightMin, or no longer than any separator could be
+        }
+        if (right.length > common + 1) {
+            return new Value(Arrays.copyOf(right, common + 1));
+        }
+        if (left[common] + 1 < right[common]) {
+            byte[] bumped = Arrays.copyOf(left, common + 1);
+            bumped[common]++;
+            return new Value(bumped);
+        }
+        return leftMax;
+    }
+
     private Value[] insert(Value[] array, Value e, int idx) {
         Value[] newArray = new Value[array.length + 1];
         System.arraycopy(array, 0, newArray, 0, idx);
@@ -143,6 +249,21 @@ public class LeafNode extends Node {
     }
 
     private int sizeOfCell(int keyIdx, Value[] keys, Value[] values) {
-        return 2 * Store.KEY_PREFIX_SIZE + keys[keyIdx].bytes().length + values[keyIdx].bytes().length;
+        return sizeOfCell(keys[keyIdx], values[keyIdx]);
+    }
+
+    private int sizeOf(Value[] keys, Value[] values, Value highKey) {
+        return uncompressedSizeOf(keys, values) - SlottedPage.prefixSaving(keys)
+                + SlottedPage.highKeySize(highKey, keys.length == 0 ? null : keys[keys.length - 1]);
+    }
+
+    private int uncompressedSizeOf(Value[] keys, Value[] values) {
+        return size(keys) + size(values) + keys.length * Store.SLOT_SIZE + Store.LINK_POINTER_SIZE;
+    }
+
+    static int sizeOfCell(Value key, Value value) {
+        int keyLength = key.bytes().length;
+        return ByteUtils.varIntSize(keyLength) + keyLength
+                + ByteUtils.varIntSize(SlottedPage.storedValueLength(value)) + value.bytes().length + Store.SLOT_SIZE;
     }
 }
\ No newline at end of file
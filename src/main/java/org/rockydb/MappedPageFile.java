@@ -0,0 +1,121 @@
+package org.rockydb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Serves pages from memory-mapped chunks of the file, so a miss on a page in the OS page cache is
+ * a copy rather than a system call. Chunks are mapped on first use; mapping a chunk past the end
+ * of the file grows the file to the chunk boundary, and {@link #close} trims it back to the pages
+ * actually allocated. After a crash, {@link #pageCount} trims it back to the last page written,
+ * as the pages past it were never written and read as zeros. Mapped and channel access share the OS page cache, so the header written
+ * through the channel stays coherent with the mapping.
+ */
+final class MappedPageFile implements PageFile {
+    static final int CHUNK_PAGES = 8 * 1024;
+    private static final long CHUNK_BYTES = (long) CHUNK_PAGES * Store.PAGE_SIZE;
+
+    private static final ByteBuffer NEVER_WRITTEN = ByteBuffer.allocate(Store.PAGE_SIZE);
+
+    private final FileChannel fileChannel;
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    MappedPageFile(FileChannel fileChannel) {
+        this.fileChannel = fileChannel;
+    }
+
+    @Override
+    public void read(long id, ByteBuffer page) {
+        MappedByteBuffer chunk = chunkFor(id, false);
+        if (chunk == null) {
+            page.put(0, new byte[Store.PAGE_SIZE]);
+            return;
+        }
+        page.put(0, chunk, offsetInChunk(id), Store.PAGE_SIZE);
+    }
+
+    @Override
+    public void write(long id, ByteBuffer page) {
+        chunkFor(id, true).put(offsetInChunk(id), page, 0, Store.PAGE_SIZE);
+    }
+
+    @Override
+    public long pageCount() throws IOException {
+        long pages = fileChannel.size() / Store.PAGE_SIZE;
+        ByteBuffer page = ByteBuffer.allocate(Store.PAGE_SIZE);
+        while (pages > 0) {
+            long position = (pages - 1) * Store.PAGE_SIZE;
+            page.clear();
+            while (page.hasRemaining()) {
+                if (fileChannel.read(page, position + page.position()) < 0) {
+                    break;
+                }
+            }
+            if (page.clear().mismatch(NEVER_WRITTEN) != -1) {
+                break;
+            }
+            pages--;
+        }
+        // before any chunk is mapped, as a mapping must not outlive the end of the file
+        if (fileChannel.size() > pages * Store.PAGE_SIZE) {
+            fileChannel.truncate(pages * Store.PAGE_SIZE);
+        }
+        return pages;
+    }
+
+    @Override
+    public void force() throws IOException {
+        for (MappedByteBuffer chunk : chunks) {
+            if (chunk != null) {
+                chunk.force();
+            }
+        }
+        fileChannel.force(false);
+    }
+
+    @Override
+    public void close(long pageCount) throws IOException {
+        force();
+        long used = pageCount * Store.PAGE_SIZE;
+        if (fileChannel.size() > used) {
+            fileChannel.truncate(used);
+        }
+    }
+
+    /**
+     * Returns the chunk holding page {@code id}, mapping it if needed. Without {@code grow}, a chunk
+     * lying entirely past the end of the file is not mapped and {@code null} is returned.
+     */
+    private MappedByteBuffer chunkFor(long id, boolean grow) {
+        int index = Math.toIntExact(id / CHUNK_PAGES);
+        MappedByteBuffer[] current = chunks;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            try {
+                if (!grow && (long) index * CHUNK_BYTES >= fileChannel.size()) {
+                    return null;
+                }
+                MappedByteBuffer chunk = fileChannel.map(FileChannel.MapMode.READ_WRITE, index * CHUNK_BYTES, CHUNK_BYTES);
+                MappedByteBuffer[] next = Arrays.copyOf(current, Math.max(current.length, index + 1));
+                next[index] = chunk;
+                chunks = next;
+                return chunk;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static int offsetInChunk(long id) {
+        return (int) (id % CHUNK_PAGES) * Store.PAGE_SIZE;
+    }
+}
@@ -38,10 +38,39 @@ public abstract class Node {
         return nodeSize > MAX_NODE_SIZE;
     }
 
+    /**
+     * Where to split a node that outgrew its page: the index of the last entry kept on the left,
+     * chosen so the bigger half is as small as possible. {@code cellSizes} are the uncompressed
+     * sizes of the entries, and each half is measured as it will be stored, without the prefix its
+     * keys share. A key that breaks a page's common prefix can make the whole node far bigger than
+     * its page; the halves are balanced by what they really take up, so both still fit.
+     */
+    protected static int splitIndex(Value[] keys, int[] cellSizes) {
+        int total = 0;
+        for (int cellSize : cellSizes) {
+            total += cellSize;
+        }
+        int last = keys.length - 1;
+        int best = 0;
+        int bestSize = Integer.MAX_VALUE;
+        int left = 0;
+        for (int i = 0; i < last; i++) {
+            left += cellSizes[i];
+            int leftSize = left - SlottedPage.prefixSaving(keys[0], keys[i], i + 1);
+            int rightSize = total - left - SlottedPage.prefixSaving(keys[i + 1], keys[last], last - i);
+            int bigger = Math.max(leftSize, rightSize);
+            if (bigger <= bestSize) { // ties keep more on the left
+                best = i;
+                bestSize = bigger;
+            }
+        }
+        return best;
+    }
+
     protected int size(Value[] array) {
         int size = 0;
         for (Value value : array) {
-            size += Store.KEY_PREFIX_SIZE + value.bytes().length;
+            size += ByteUtils.varIntSize(SlottedPage.storedValueLength(value)) + value.bytes().length;
         }
         return size;
     }
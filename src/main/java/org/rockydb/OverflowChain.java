@@ -0,0 +1,201 @@
+package org.rockydb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Out-of-line storage for values too big to keep leaves dense. A value longer than
+ * {@link #INLINE_LIMIT} is written to a chain of overflow pages allocated from the store, and the
+ * leaf keeps only a {@link #REF_SIZE}-byte reference: the value's length and its first page. Each
+ * page of a chain is laid out as:
+ * <pre>
+ *  0  flags          {@link ByteUtils#FORMAT_OVERFLOW}
+ *  1  length         short, value bytes on this page
+ *  3  next           long, the next page of the chain, or -1 on the last one
+ * 11  data
+ * </pre>
+ * A chain is written before its reference is stored and never changes afterwards: a new value
+ * gets a new chain, and the tree retires the old chain's pages like a merged-away node, so readers
+ * still holding the old reference can finish. Chains are read one page at a time, straight into
+ * the value's array or through {@link #open}.
+ */
+final class OverflowChain implements ValueStorage {
+    /** Values longer than this are stored in a chain; a leaf holds at least four inline ones. */
+    static final int INLINE_LIMIT = Node.MAX_NODE_SIZE / 4;
+    static final int REF_SIZE = Integer.BYTES + Long.BYTES;
+    static final int LENGTH_OFFSET = 1;
+    static final int NEXT_OFFSET = 3;
+    static final int DATA_OFFSET = NEXT_OFFSET + Long.BYTES;
+    static final int PAGE_CAPACITY = Store.PAGE_SIZE - DATA_OFFSET;
+
+    private final Store store;
+
+    OverflowChain(Store store) {
+        this.store = store;
+    }
+
+    /** The value itself if it is short enough, otherwise a reference to a new chain that holds it. */
+    @Override
+    public Value stored(Value key, Value value) {
+        return value.bytes().length > INLINE_LIMIT ? write(value.bytes()) : value;
+    }
+
+    @Override
+    public Value read(Value ref) {
+        byte[] bytes = new byte[length(ref)];
+        Walk walk = new Walk(store, ref);
+        for (int read = 0; walk.next(); read += walk.length) {
+            walk.page.get(DATA_OFFSET, bytes, read, walk.length);
+        }
+        return new Value(bytes);
+    }
+
+    /** Streams the value behind {@code ref}, reading a page whenever the previous one is used up. */
+    @Override
+    public InputStream open(Value ref, Runnable onClose) {
+        return new ChainInputStream(new Walk(store, ref), onClose);
+    }
+
+    /** Retires the chain's pages, to be freed like a merged-away node. */
+    @Override
+    public void release(Value ref, RetiredPages retired) {
+        pageIds(ref).forEach(retired::retire);
+    }
+
+    /** Ids of the pages of the chain behind {@code ref}, first to last. */
+    @Override
+    public List<Long> pageIds(Value ref) {
+        List<Long> ids = new ArrayList<>();
+        Walk walk = new Walk(store, ref);
+        while (walk.next()) {
+            ids.add(walk.current);
+        }
+        return ids;
+    }
+
+    static boolean isOverflowPage(ByteBuffer page) {
+        return ByteUtils.readFormatFlag(page.get(0)) == ByteUtils.FORMAT_OVERFLOW;
+    }
+
+    /** Bytes of an overflow page in use: the header and the data. */
+    static int usedBytes(ByteBuffer page) {
+        return DATA_OFFSET + page.getShort(LENGTH_OFFSET);
+    }
+
+    static int length(Value ref) {
+        return ByteBuffer.wrap(ref.bytes()).getInt(0);
+    }
+
+    private static long firstPage(Value ref) {
+        return ByteBuffer.wrap(ref.bytes()).getLong(Integer.BYTES);
+    }
+
+    private Value write(byte[] value) {
+        long[] ids = new long[(value.length + PAGE_CAPACITY - 1) / PAGE_CAPACITY];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = store.nodeIdGenerator().get();
+        }
+        ByteBuffer page = ByteBuffer.allocate(Store.PAGE_SIZE);
+        for (int i = 0; i < ids.length; i++) {
+            int from = i * PAGE_CAPACITY;
+            int length = Math.min(PAGE_CAPACITY, value.length - from);
+            page.put(0, ByteUtils.createFlags(false, ByteUtils.FORMAT_OVERFLOW));
+            page.putShort(LENGTH_OFFSET, (short) length);
+            page.putLong(NEXT_OFFSET, i + 1 < ids.length ? ids[i + 1] : -1);
+            page.put(DATA_OFFSET, value, from, length);
+            store.writeRawPage(ids[i], page);
+        }
+        byte[] ref = ByteBuffer.allocate(REF_SIZE).putInt(value.length).putLong(ids[0]).array();
+        return new Value(ref, true);
+    }
+
+    /** Reads a chain page by page, checking each page against the bytes still expected. */
+    private static final class Walk {
+        private final Store store;
+        private final ByteBuffer page = ByteBuffer.allocate(Store.PAGE_SIZE);
+        private long current = -1;
+        private long next;
+        private int remaining;
+        private int length;
+
+        Walk(Store store, Value ref) {
+            this.store = store;
+            this.next = firstPage(ref);
+            this.remaining = length(ref);
+        }
+
+        /** Loads the next page into {@link #page}; {@code false} once the whole value was read. */
+        boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            current = next;
+            store.readRawPage(current, page);
+            length = page.getShort(LENGTH_OFFSET);
+            if (!isOverflowPage(page) || length <= 0 || length > remaining) {
+                throw new IllegalStateException("Broken overflow chain at page " + current);
+            }
+            remaining -= length;
+            next = page.getLong(NEXT_OFFSET);
+            return true;
+        }
+    }
+
+    private static final class ChainInputStream extends InputStream {
+        private final Walk walk;
+        private final Runnable onClose;
+        private int position;
+        private int limit;
+        private boolean closed;
+
+        ChainInputStream(Walk walk, Runnable onClose) {
+            this.walk = walk;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit) {
+                if (!walk.next()) {
+                    return -1;
+                }
+                position = DATA_OFFSET;
+                limit = DATA_OFFSET + walk.length;
+            }
+            int n = Math.min(len, limit - position);
+            walk.page.get(position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                onClose.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.rockydb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Background writers that keep the share of dirty frames near {@link PoolOptions#dirtyLowRatio()}
+ * by flushing frames in the order the replacement policy's hand will reach them, so eviction
+ * mostly finds clean victims and a read miss rarely has to write a page first. Workers wake every
+ * {@link PoolOptions#cleanerIntervalMillis()} or as soon as a writer pushes the pool past
+ * {@link PoolOptions#dirtyHighRatio()}.
+ */
+final class PageCleaner implements AutoCloseable {
+    private final Frame[] frames;
+    private final ReplacementPolicy policy;
+    private final AtomicInteger dirtyFrames;
+    private final Predicate<Frame> flush;
+    private final int lowWater;
+    private final int highWater;
+    private final long intervalMillis;
+    private final List<Thread> workers = new ArrayList<>();
+    private final Object signal = new Object();
+    private boolean wakeRequested = false;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param flush writes one frame if it is dirty and returns whether it did; called concurrently
+     */
+    PageCleaner(Frame[] frames, ReplacementPolicy policy, AtomicInteger dirtyFrames, Predicate<Frame> flush, PoolOptions options) {
+        this.frames = frames;
+        this.policy = policy;
+        this.dirtyFrames = dirtyFrames;
+        this.flush = flush;
+        this.lowWater = (int) (frames.length * options.dirtyLowRatio());
+        this.highWater = (int) (frames.length * options.dirtyHighRatio());
+        this.intervalMillis = options.cleanerIntervalMillis();
+        for (int i = 0; i < options.cleanerThreads(); i++) {
+            int stripe = i;
+            Thread worker = new Thread(() -> run(stripe, options.cleanerThreads()), "rockydb-page-cleaner-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        workers.forEach(Thread::start);
+    }
+
+    /** Called after a frame turns dirty; wakes the workers once the high-water mark is crossed. */
+    void onDirtied(int dirtyNow) {
+        if (dirtyNow > highWater && !workers.isEmpty()) {
+            synchronized (signal) {
+                wakeRequested = true;
+                signal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Flushes frames ahead of the policy's hand until at most {@code lowWater} are dirty or one full
+     * lap has been made. Returns the number of pages written.
+     */
+    int cleanOnce() {
+        return clean(0, 1);
+    }
+
+    /** One lap over every {@code stripes}-th frame, so concurrent workers never visit the same frame. */
+    private int clean(int stripe, int stripes) {
+        int written = 0;
+        int start = policy.hand();
+        for (int step = stripe; step < frames.length; step += stripes) {
+            if (stopped || dirtyFrames.get() <= lowWater) {
+                break;
+            }
+            if (flush.test(frames[(start + step) % frames.length])) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private void run(int stripe, int stripes) {
+        while (!stopped) {
+            synchronized (signal) {
+                if (!wakeRequested && !stopped) {
+                    try {
+                        signal.wait(intervalMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                wakeRequested = false;
+            }
+            if (!stopped && dirtyFrames.get() > lowWater) {
+                clean(stripe, stripes);
+            }
+        }
+    }
+
+    /**
+     * Stops the workers and waits for in-flight flushes. Workers are never interrupted, because
+     * interrupting a thread inside a {@code FileChannel} operation closes the channel.
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
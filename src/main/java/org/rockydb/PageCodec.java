@@ -1,14 +1,28 @@
 package org.rockydb;
 
 import java.nio.ByteBuffer;
+import java.util.Objects;
 
 import static org.rockydb.ByteUtils.readIsLeafFlag;
 
+/**
+ * Encodes nodes as pages. New pages use the {@link SlottedPage} layout with varint lengths, storing
+ * the keys' common prefix once where that saves space. Pages written in its earlier four-byte
+ * length variants or in the original layout (all keys, then all values or pointers, then the link)
+ * are still read. Nothing is written in the original layout any more: with varint lengths every
+ * slotted page is at most as big, its slots included.
+ */
 public final class PageCodec {
+    private static final int LEGACY_HEADERS_SIZE = 5;
+    private static final Store.SearchResult ABSENT = new Store.SearchResult(-1, null);
 
     private PageCodec() {}
 
     public static Node deserialize(long id, ByteBuffer buffer) {
+        if (ByteUtils.isSlotted(buffer.get(buffer.position()))) {
+            return SlottedPage.read(id, buffer.position() == 0 ? buffer : buffer.slice());
+        }
+        buffer = buffer.duplicate();
         byte flags = buffer.get();
         boolean isLeaf = readIsLeafFlag(flags);
         int elemCount = buffer.getShort();
@@ -21,16 +35,86 @@ public final class PageCodec {
         }
     }
 
+    /**
+     * Runs one lookup step for {@code key} directly on serialized page bytes, with the same outcome
+     * as {@code nextNode}/{@code getValueForKey} on the deserialized node. Nothing is allocated
+     * except the result and, on a hit, a copy of the matched value. The page starts at index 0 and
+     * its position is left untouched.
+     */
+    public static Store.SearchResult search(ByteBuffer page, Value key) {
+        if (ByteUtils.isSlotted(page.get(0))) {
+            return SlottedPage.search(page, key);
+        }
+        return searchLegacy(page, key);
+    }
+
     public static ByteBuffer serialize(Node node) {
+        ByteBuffer page = ByteBuffer.allocate(Store.PAGE_SIZE);
+        serialize(node, page);
+        return page;
+    }
+
+    /**
+     * Encodes {@code node} straight into {@code page}, a page-sized buffer such as a pool frame,
+     * starting at index 0. The buffer's position is not changed, and free space between the slot
+     * array and the cell heap is left as it was.
+     */
+    public static void serialize(Node node, ByteBuffer page) {
         if (node instanceof BranchNode branchNode) {
-            return createBuffer(node.isLeaf(), node.height(), branchNode.getKeys(), branchNode.getPointers(), branchNode.link());
+            SlottedPage.write(page, node.height(), branchNode.getKeys(), branchNode.getPointers(), branchNode.link());
         } else if (node instanceof LeafNode leafNode) {
-            return createBuffer(node.isLeaf(), node.height(), leafNode.getKeys(), leafNode.getValues(), leafNode.link());
+            SlottedPage.write(page, node.height(), leafNode.getKeys(), leafNode.getValues(), leafNode.link(),
+                    leafNode.getHighKey());
         } else {
             throw new IllegalArgumentException("Unsupported node type: " + node.getClass());
         }
     }
 
+    private static Store.SearchResult searchLegacy(ByteBuffer page, Value key) {
+        boolean isLeaf = readIsLeafFlag(page.get(0));
+        int elemCount = page.getShort(1);
+        int pos = LEGACY_HEADERS_SIZE;
+        int idx = elemCount;
+        boolean match = false;
+        for (int i = 0; i < elemCount; i++) {
+            int length = page.getInt(pos);
+            if (idx == elemCount) {
+                int cmp = ByteUtils.compare(page, pos + Store.KEY_PREFIX_SIZE, length, key);
+                if (cmp >= 0) {
+                    idx = i;
+                    match = cmp == 0;
+                }
+            }
+            pos += Store.KEY_PREFIX_SIZE + length;
+        }
+
+        if (!isLeaf) {
+            long link = page.getLong(pos + elemCount * Store.VALUE_POINTER_SIZE);
+            if (idx == elemCount && link != -1) {
+                return new Store.SearchResult(link, null);
+            }
+            int child = idx == elemCount ? idx - 1 : idx;
+            return new Store.SearchResult(page.getLong(pos + child * Store.VALUE_POINTER_SIZE), null);
+        }
+
+        Value value = null;
+        for (int i = 0; i < elemCount; i++) {
+            int length = page.getInt(pos);
+            if (match && i == idx) {
+                Objects.checkFromIndexSize(pos + Store.KEY_PREFIX_SIZE, length, page.capacity());
+                byte[] bytes = new byte[length];
+                page.get(pos + Store.KEY_PREFIX_SIZE, bytes);
+                value = new Value(bytes);
+            }
+            pos += Store.KEY_PREFIX_SIZE + length;
+        }
+        long link = page.getLong(pos);
+        if (idx == elemCount && elemCount > 0 && link != -1) {
+            return new Store.SearchResult(link, null);
+        }
+        return value == null ? ABSENT : new Store.SearchResult(-1, value);
+    }
+
     private static LeafNode readLeafNode(long id, int height, ByteBuffer buffer, int elemCount) {
         Value[] keys = readValueArray(buffer, elemCount);
         Value[] values = readValueArray(buffer, elemCount);
@@ -49,6 +133,7 @@ public final class PageCodec {
         Value[] arr = new Value[size];
         for (int i = 0; i < arr.length; i++) {
             int nextSize = buffer.getInt();
+            Objects.checkFromIndexSize(buffer.position(), nextSize, buffer.limit()); // see SlottedPage
             byte[] bytes = new byte[nextSize];
             buffer.get(bytes);
             arr[i] = new Value(bytes);
@@ -63,44 +148,4 @@ public final class PageCodec {
         }
         return arr;
     }
-
-    private static ByteBuffer createBuffer(boolean isLeaf, int height, Value[] keys, long[] pointers, long link) {
-        ByteBuffer buffer = createBuffer(isLeaf, keys.length, height);
-
-        for (Value key : keys) {
-            buffer.putInt(key.bytes().length);
-            buffer.put(key.bytes());
-        }
-        for (long valuePointer : pointers) {
-            buffer.putLong(valuePointer);
-        }
-        buffer.putLong(link);
-        return buffer;
-    }
-
-    private static ByteBuffer createBuffer(boolean isLeaf, int height, Value[] keys, Value[] values, long link) {
-        ByteBuffer buffer = createBuffer(isLeaf, keys.length, height);
-
-        for (Value key : keys) {
-            buffer.putInt(key.bytes().length);
-            buffer.put(key.bytes());
-        }
-        for (Value key : values) {
-            buffer.putInt(key.bytes().length);
-            buffer.put(key.bytes());
-        }
-        buffer.putLong(link);
-        return buffer;
-    }
-
-    private static ByteBuffer createBuffer(boolean isLeaf, int numOfKeys, int height) {
-        ByteBuffer buffer = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
-        // is-leaf flag
-        buffer.put(ByteUtils.createFlags(isLeaf));
-        // number of keys
-        buffer.putShort((short) numOfKeys);
-        // height
-        buffer.putShort((short) height);
-        return buffer;
-    }
 }
@@ -0,0 +1,42 @@
+package org.rockydb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Moves whole pages between the database file and page-sized buffers. Both calls use absolute
+ * indices into the caller's buffer and leave its position alone; pages never written read as
+ * zeros.
+ */
+interface PageFile {
+
+    void read(long id, ByteBuffer page);
+
+    void write(long id, ByteBuffer page);
+
+    /**
+     * Asynchronous {@link #read}. Backends without native asynchronous I/O complete the read on the
+     * calling thread and return a completed future.
+     */
+    default CompletableFuture<Void> readAsync(long id, ByteBuffer page) {
+        try {
+            read(id, page);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Number of pages in the file when it is opened, ending with the last page written. Space the
+     * backend reserved past that page and did not trim before a crash is given back.
+     */
+    long pageCount() throws IOException;
+
+    /** Forces written pages to stable storage. */
+    void force() throws IOException;
+
+    /** Makes written pages durable and trims the file to {@code pageCount} pages where it grew past them. */
+    void close(long pageCount) throws IOException;
+}
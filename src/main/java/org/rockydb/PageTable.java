@@ -0,0 +1,160 @@
+package org.rockydb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Open-addressing page id → frame index table for {@link BufferedPool}. Each slot is a single
+ * {@code long} packing the page id above the frame index, so lookups are lock-free and
+ * allocation-free, and installs and removals are one CAS on one slot.
+ * <p>
+ * Installs only ever claim {@link #EMPTY} slots and removals leave a {@link #TOMBSTONE}, so a slot
+ * that a probe has passed can never become the home of the key being probed for; this is what
+ * makes {@link #putIfAbsent} race-free without locking. Tombstones are swept by rebuilding the
+ * array once they crowd the table. Mutations hold the shared side of {@code resizeLock} only to
+ * keep out a rebuild; a lookup that races with a rebuild may see the old array, which is harmless
+ * because callers already re-check the frame's page id after pinning it.
+ */
+final class PageTable {
+    static final int ABSENT = -1;
+
+    private static final long EMPTY = -1L;
+    private static final long TOMBSTONE = -2L;
+
+    private final int frameBits;
+    private final long frameMask;
+    private final long maxPageId;
+    private final ReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    private final AtomicInteger usedSlots = new AtomicInteger();
+    private volatile AtomicLongArray slots;
+
+    PageTable(int numFrames) {
+        this.frameBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(numFrames - 1));
+        this.frameMask = (1L << frameBits) - 1;
+        this.maxPageId = Long.MAX_VALUE >>> frameBits;
+        // at most numFrames live entries plus one in-flight install per frame; keep load under a half
+        int capacity = Integer.highestOneBit(Math.max(8, numFrames) * 4 - 1) << 1;
+        this.slots = emptySlots(capacity);
+    }
+
+    int get(long pageId) {
+        AtomicLongArray table = slots;
+        int mask = table.length() - 1;
+        for (int i = home(pageId, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            long entry = table.get(i);
+            if (entry == EMPTY) {
+                return ABSENT;
+            }
+            if (entry >= 0 && entry >>> frameBits == pageId) {
+                return (int) (entry & frameMask);
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Maps {@code pageId} to {@code frameIndex} unless it is already mapped, in which case the
+     * existing frame index is returned and nothing changes. Returns {@link #ABSENT} on success.
+     */
+    int putIfAbsent(long pageId, int frameIndex) {
+        if (pageId < 0 || pageId > maxPageId) {
+            throw new IllegalArgumentException("Page id out of range for page table: " + pageId);
+        }
+        long newEntry = (pageId << frameBits) | frameIndex;
+        while (true) {
+            resizeLock.readLock().lock();
+            try {
+                AtomicLongArray table = slots;
+                int mask = table.length() - 1;
+                if (usedSlots.get() < table.length() - (table.length() >> 2)) {
+                    for (int i = home(pageId, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                        long entry = table.get(i);
+                        if (entry == EMPTY) {
+                            if (table.compareAndSet(i, EMPTY, newEntry)) {
+                                usedSlots.incrementAndGet();
+                                return ABSENT;
+                            }
+                            entry = table.get(i);
+                        }
+                        if (entry >= 0 && entry >>> frameBits == pageId) {
+                            return (int) (entry & frameMask);
+                        }
+                    }
+                }
+            } finally {
+                resizeLock.readLock().unlock();
+            }
+            rebuild();
+        }
+    }
+
+    /**
+     * Removes the mapping of {@code pageId} if it still points at {@code frameIndex}.
+     */
+    boolean remove(long pageId, int frameIndex) {
+        long expected = (pageId << frameBits) | frameIndex;
+        resizeLock.readLock().lock();
+        try {
+            AtomicLongArray table = slots;
+            int mask = table.length() - 1;
+            for (int i = home(pageId, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long entry = table.get(i);
+                if (entry == EMPTY) {
+                    return false;
+                }
+                if (entry == expected) {
+                    return table.compareAndSet(i, expected, TOMBSTONE);
+                }
+            }
+            return false;
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+
+    private void rebuild() {
+        resizeLock.writeLock().lock();
+        try {
+            AtomicLongArray old = slots;
+            if (usedSlots.get() < old.length() - (old.length() >> 2)) {
+                return; // another thread already swept the tombstones
+            }
+            AtomicLongArray fresh = emptySlots(old.length());
+            int mask = fresh.length() - 1;
+            int live = 0;
+            for (int j = 0; j < old.length(); j++) {
+                long entry = old.get(j);
+                if (entry >= 0) {
+                    int i = home(entry >>> frameBits, mask);
+                    while (fresh.get(i) != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    fresh.set(i, entry);
+                    live++;
+                }
+            }
+            usedSlots.set(live);
+            slots = fresh;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    private static int home(long pageId, int mask) {
+        return (int) ((pageId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static AtomicLongArray emptySlots(int capacity) {
+        AtomicLongArray table = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            table.set(i, EMPTY);
+        }
+        return table;
+    }
+}
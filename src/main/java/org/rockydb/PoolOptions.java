@@ -0,0 +1,159 @@
+package org.rockydb;
+
+import java.util.function.Consumer;
+
+/**
+ * Tuning knobs for a {@link BufferedPool}.
+ *
+ * @param offHeapFrames         keep frame pages in direct memory instead of on-heap arrays
+ * @param cleanerThreads        background threads writing dirty pages ahead of eviction; 0 disables them
+ * @param dirtyLowRatio         share of dirty frames the cleaner brings the pool down to
+ * @param dirtyHighRatio        share of dirty frames above which a writer wakes the cleaner immediately
+ * @param cleanerIntervalMillis how often an idle cleaner re-checks the dirty ratio
+ * @param evictionPolicy        how a miss picks the frame to reuse
+ * @param prefetchThreads       I/O threads serving {@link BufferedPool#prefetch}; 0 makes prefetch a no-op
+ * @param storageBackend        how pages move between the file and the pool
+ * @param writeAheadLog         log every page change so committed writes survive a crash; without
+ *                              it nothing is durable before {@link BufferedPool#close()}
+ * @param checkpointIntervalMillis  longest time between background checkpoints; 0 disables them
+ * @param checkpointLogBytes        log volume that triggers a checkpoint before the interval is up
+ * @param checkpointPagesPerSecond  write rate of a background checkpoint; 0 writes at full speed
+ */
+public record PoolOptions(boolean offHeapFrames,
+                          int cleanerThreads,
+                          double dirtyLowRatio,
+                          double dirtyHighRatio,
+                          long cleanerIntervalMillis,
+                          EvictionPolicy evictionPolicy,
+                          int prefetchThreads,
+                          StorageBackend storageBackend,
+                          boolean writeAheadLog,
+                          long checkpointIntervalMillis,
+                          long checkpointLogBytes,
+                          int checkpointPagesPerSecond) {
+
+    public PoolOptions {
+        if (cleanerThreads < 0) {
+            throw new IllegalArgumentException("cleanerThreads must be >= 0");
+        }
+        if (dirtyLowRatio < 0 || dirtyLowRatio > dirtyHighRatio || dirtyHighRatio > 1) {
+            throw new IllegalArgumentException("dirty ratios must satisfy 0 <= low <= high <= 1");
+        }
+        if (cleanerIntervalMillis <= 0) {
+            throw new IllegalArgumentException("cleanerIntervalMillis must be > 0");
+        }
+        if (evictionPolicy == null) {
+            throw new IllegalArgumentException("evictionPolicy must not be null");
+        }
+        if (prefetchThreads < 0) {
+            throw new IllegalArgumentException("prefetchThreads must be >= 0");
+        }
+        if (storageBackend == null) {
+            throw new IllegalArgumentException("storageBackend must not be null");
+        }
+        if (checkpointIntervalMillis < 0) {
+            throw new IllegalArgumentException("checkpointIntervalMillis must be >= 0");
+        }
+        if (checkpointLogBytes <= 0) {
+            throw new IllegalArgumentException("checkpointLogBytes must be > 0");
+        }
+        if (checkpointPagesPerSecond < 0) {
+            throw new IllegalArgumentException("checkpointPagesPerSecond must be >= 0");
+        }
+    }
+
+    public static PoolOptions defaults() {
+        return new PoolOptions(false, 1, 0.1, 0.3, 50, EvictionPolicy.CLOCK, 2, StorageBackend.FILE_CHANNEL, true,
+                30_000, 64L * 1024 * 1024, 4096);
+    }
+
+    public PoolOptions withOffHeapFrames(boolean offHeapFrames) {
+        return with(b -> b.offHeapFrames = offHeapFrames);
+    }
+
+    public PoolOptions withCleanerThreads(int cleanerThreads) {
+        return with(b -> b.cleanerThreads = cleanerThreads);
+    }
+
+    public PoolOptions withDirtyRatios(double low, double high) {
+        return with(b -> {
+            b.dirtyLowRatio = low;
+            b.dirtyHighRatio = high;
+        });
+    }
+
+    public PoolOptions withCleanerIntervalMillis(long cleanerIntervalMillis) {
+        return with(b -> b.cleanerIntervalMillis = cleanerIntervalMillis);
+    }
+
+    public PoolOptions withEvictionPolicy(EvictionPolicy evictionPolicy) {
+        return with(b -> b.evictionPolicy = evictionPolicy);
+    }
+
+    public PoolOptions withPrefetchThreads(int prefetchThreads) {
+        return with(b -> b.prefetchThreads = prefetchThreads);
+    }
+
+    public PoolOptions withStorageBackend(StorageBackend storageBackend) {
+        return with(b -> b.storageBackend = storageBackend);
+    }
+
+    public PoolOptions withWriteAheadLog(boolean writeAheadLog) {
+        return with(b -> b.writeAheadLog = writeAheadLog);
+    }
+
+    public PoolOptions withCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        return with(b -> b.checkpointIntervalMillis = checkpointIntervalMillis);
+    }
+
+    public PoolOptions withCheckpointLogBytes(long checkpointLogBytes) {
+        return with(b -> b.checkpointLogBytes = checkpointLogBytes);
+    }
+
+    public PoolOptions withCheckpointPagesPerSecond(int checkpointPagesPerSecond) {
+        return with(b -> b.checkpointPagesPerSecond = checkpointPagesPerSecond);
+    }
+
+    private PoolOptions with(Consumer<Builder> change) {
+        Builder builder = new Builder(this);
+        change.accept(builder);
+        return builder.build();
+    }
+
+    /** A mutable copy of the options, so each wither names only the components it changes. */
+    private static final class Builder {
+        boolean offHeapFrames;
+        int cleanerThreads;
+        double dirtyLowRatio;
+        double dirtyHighRatio;
+        long cleanerIntervalMillis;
+        EvictionPolicy evictionPolicy;
+        int prefetchThreads;
+        StorageBackend storageBackend;
+        boolean writeAheadLog;
+        long checkpointIntervalMillis;
+        long checkpointLogBytes;
+        int checkpointPagesPerSecond;
+
+        Builder(PoolOptions options) {
+            offHeapFrames = options.offHeapFrames;
+            cleanerThreads = options.cleanerThreads;
+            dirtyLowRatio = options.dirtyLowRatio;
+            dirtyHighRatio = options.dirtyHighRatio;
+            cleanerIntervalMillis = options.cleanerIntervalMillis;
+            evictionPolicy = options.evictionPolicy;
+            prefetchThreads = options.prefetchThreads;
+            storageBackend = options.storageBackend;
+            writeAheadLog = options.writeAheadLog;
+            checkpointIntervalMillis = options.checkpointIntervalMillis;
+            checkpointLogBytes = options.checkpointLogBytes;
+            checkpointPagesPerSecond = options.checkpointPagesPerSecond;
+        }
+
+        PoolOptions build() {
+            return new PoolOptions(offHeapFrames, cleanerThreads, dirtyLowRatio, dirtyHighRatio, cleanerIntervalMillis,
+                    evictionPolicy, prefetchThreads, storageBackend, writeAheadLog, checkpointIntervalMillis,
+                    checkpointLogBytes, checkpointPagesPerSecond);
+        }
+    }
+}
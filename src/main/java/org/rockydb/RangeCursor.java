@@ -0,0 +1,232 @@
+package org.rockydb;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Forward cursor over the leaf level: descends once to the leaf covering {@code from}, then walks
+ * the right-link chain one leaf snapshot at a time, holding no pin or latch between steps.
+ */
+final class RangeCursor implements Iterator<Map.Entry<Value, Value>> {
+    private static final Value LOWEST = new Value(new byte[0]);
+
+    private final Store store;
+    private final RootRef rootRef;
+    private final RetiredPages retired;
+    private final ValueStorage valueStorage;
+    private final Value from;
+    private final Value to;
+    private final int readAhead;
+    private final ArrayDeque<Long> prefetched = new ArrayDeque<>();
+
+    private Value lastKey;
+    private Value[] keys;
+    private Value[] values;
+    private int pos;
+    private long nextLeaf;
+    private long reclaimed;
+    private Value resolved; // the value behind the overflow reference at pos, once read
+
+    // read-ahead source: the leaf-parent branch and the next child pointer not yet prefetched
+    private BranchNode parent;
+    private int nextChild;
+    private Value lastSeparator;
+
+    RangeCursor(Store store, RootRef rootRef, RetiredPages retired, ValueStorage valueStorage, Value from, Value to, int readAhead) {
+        this.store = store;
+        this.rootRef = rootRef;
+        this.retired = retired;
+        this.valueStorage = valueStorage;
+        this.from = from == null ? LOWEST : from;
+        this.to = to;
+        this.readAhead = readAhead;
+
+        long ticket = retired.enter();
+        try {
+            reclaimed = retired.reclaimed();
+            load(descend(this.from));
+        } finally {
+            retired.exit(ticket);
+        }
+    }
+
+    /** Finds the leaf covering {@code key}, noting its parent as the read-ahead source. */
+    private LeafNode descend(Value key) {
+        while (true) {
+            long id = rootRef.get();
+            Node node = store.readNode(id);
+            for (long next = node.nextNode(key); next != -1 && !retired.isRetired(id); next = node.nextNode(key)) {
+                if (node instanceof BranchNode branch && branch.height() == 2) {
+                    parent = branch;
+                    nextChild = indexOf(branch.getPointers(), next) + 1;
+                    lastSeparator = nextChild > 0 && nextChild <= branch.getKeys().length ? branch.getKeys()[nextChild - 1] : null;
+                }
+                id = next;
+                node = store.readNode(id);
+            }
+            if (!retired.isRetired(id)) {
+                return (LeafNode) node;
+            }
+        }
+    }
+
+    private void advance() {
+        long ticket = retired.enter();
+        try {
+            // between steps only page ids are held, and merges may have freed them meanwhile
+            long now = retired.reclaimed();
+            Node node = now == reclaimed ? store.readNode(nextLeaf) : null;
+            if (node == null || retired.isRetired(nextLeaf)) {
+                parent = null;
+                prefetched.clear();
+                node = descend(lastKey == null ? from : lastKey);
+            }
+            reclaimed = now;
+            load((LeafNode) node);
+        } finally {
+            retired.exit(ticket);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            if (pos < keys.length) {
+                if (to != null && keys[pos].compareTo(to) >= 0) {
+                    pos = keys.length;
+                    nextLeaf = -1;
+                    return false;
+                }
+                if (values[pos].isOverflowRef() && resolved == null) {
+                    resolved = resolve(keys[pos], values[pos]);
+                    if (resolved == null) {
+                        pos++; // deleted since the snapshot
+                        continue;
+                    }
+                }
+                return true;
+            }
+            if (nextLeaf == -1) {
+                return false;
+            }
+            advance();
+        }
+    }
+
+    @Override
+    public Map.Entry<Value, Value> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        lastKey = keys[pos];
+        Value value = values[pos].isOverflowRef() ? resolved : values[pos];
+        resolved = null;
+        return Map.entry(keys[pos++], value);
+    }
+
+    /** The value behind the snapshot's overflow reference for {@code key}, or {@code null} if deleted. */
+    private Value resolve(Value key, Value ref) {
+        long ticket = retired.enter();
+        try {
+            // the snapshot's reference holds only while nothing is freed until its value is read
+            if (retired.reclaimed() == reclaimed) {
+                try {
+                    Value value = valueStorage.read(ref);
+                    if (retired.reclaimed() == reclaimed) {
+                        return value;
+                    }
+                } catch (RuntimeException e) {
+                    if (retired.reclaimed() == reclaimed) {
+                        throw e;
+                    }
+                    // what the reference points to was freed, and maybe reused, while it was read
+                }
+            }
+            Value current = BLinkTree.find(store, rootRef, retired, key); // not freed before this step ends
+            return current != null && current.isOverflowRef() ? valueStorage.read(current) : current;
+        } finally {
+            retired.exit(ticket);
+        }
+    }
+
+    private void load(LeafNode leaf) {
+        keys = leaf.getKeys();
+        values = leaf.getValues();
+        pos = firstUnseen();
+        // the upper bound falls inside this leaf, so there is nothing to gain from the next one
+        boolean boundReached = to != null && keys.length > 0 && leaf.biggestKey().compareTo(to) >= 0;
+        nextLeaf = boundReached ? -1 : leaf.link();
+        if (readAhead > 0) {
+            readAhead(leaf.id());
+        }
+    }
+
+    /** Keeps the next leaves {@linkplain Store#prefetch prefetching}; the walk itself still follows links. */
+    private void readAhead(long current) {
+        if (prefetched.contains(current)) {
+            while (prefetched.pollFirst() != current) {
+                // drop ids the walk went past, e.g. leaves merged away since they were listed
+            }
+        }
+        if (nextLeaf == -1) {
+            parent = null;
+            prefetched.clear();
+            return;
+        }
+        long[] batch = new long[readAhead];
+        int count = 0;
+        while (prefetched.size() < readAhead) {
+            long id = nextCandidate();
+            if (id == -1) {
+                break;
+            }
+            prefetched.addLast(id);
+            batch[count++] = id;
+        }
+        if (count > 0) {
+            store.prefetch(Arrays.copyOf(batch, count));
+        }
+    }
+
+    /** Next leaf id from the parent level that may hold keys below {@code to}, or -1. */
+    private long nextCandidate() {
+        while (parent != null) {
+            if (to != null && lastSeparator != null && lastSeparator.compareTo(to) >= 0) {
+                parent = null;
+                break;
+            }
+            long[] pointers = parent.getPointers();
+            if (nextChild < pointers.length) {
+                lastSeparator = parent.getKeys()[nextChild];
+                return pointers[nextChild++];
+            }
+            long link = parent.link();
+            // the link may be stale but, as nothing was freed since it was read, still a branch
+            parent = link == -1 || retired.reclaimed() != reclaimed ? null : (BranchNode) store.readNode(link);
+            nextChild = 0;
+        }
+        return -1;
+    }
+
+    private static int indexOf(long[] pointers, long id) {
+        for (int i = 0; i < pointers.length; i++) {
+            if (pointers[i] == id) {
+                return i;
+            }
+        }
+        return pointers.length;
+    }
+
+    // splits only move keys right, so the snapshot and its link cover everything after lastKey
+    private int firstUnseen() {
+        if (lastKey == null) {
+            int idx = Arrays.binarySearch(keys, from);
+            return idx < 0 ? -(idx + 1) : idx;
+        }
+        int idx = Arrays.binarySearch(keys, lastKey);
+        return idx < 0 ? -(idx + 1) : idx + 1;
+    }
+}
@@ -0,0 +1,162 @@
+package org.rockydb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Redoes the write-ahead log against the database file at startup. Pages in the file may be at
+ * any point of their logged history since the last checkpoint, because the page cleaner and
+ * eviction write them whenever their records are durable. Replaying the log from the checkpoint
+ * still converges on the last logged state:
+ * a page image replaces the page outright, and puts and deletes act on a leaf's key set, where
+ * re-applying a run of them leaves every key they touch with its last value and every other key
+ * as it was. They are therefore applied to an unbounded copy of the leaf's entries rather than to
+ * the page bytes, because an intermediate state rebuilt over a newer page may hold more entries
+ * than a page fits. A page whose last record frees it is not written at all, and the free list is
+ * brought up to date the same way: freeing a page adds it, any other record for it removes it.
+ * Touched pages are written, and the result made durable by a checkpoint, once at the end.
+ * <p>
+ * A put or delete may meet a page in the file that holds no leaf: one reused for something else
+ * after the record, or one that is damaged. The first case is covered by a later image or free of
+ * that page in the log, which replaces whatever the record was applied to; a page left without one
+ * fails recovery rather than have the records rebuild it as an empty leaf over what it held.
+ */
+final class Recovery implements WriteAheadLog.Redo {
+    private final DiscStore discStore;
+    private final Map<Long, ByteBuffer> images = new HashMap<>();
+    private final Map<Long, LeafEntries> leaves = new HashMap<>();
+    private final Set<Long> unreadable = new HashSet<>();
+    private long rootId = -1;
+
+    private Recovery(DiscStore discStore) {
+        this.discStore = discStore;
+    }
+
+    /**
+     * Replays {@code wal} from the last checkpoint into {@code discStore}, makes the result durable
+     * and empties the log. Returns the number of records replayed.
+     */
+    static int run(WriteAheadLog wal, DiscStore discStore) throws IOException {
+        Recovery recovery = new Recovery(discStore);
+        int replayed = wal.replay(discStore.checkpointLsn(), recovery);
+        if (!recovery.unreadable.isEmpty()) {
+            throw new IOException("Cannot redo logged changes to pages " + recovery.unreadable
+                    + ": they hold no leaf and no later record in the log replaces them");
+        }
+        if (replayed > 0) {
+            recovery.writePages();
+        }
+        discStore.checkpoint(wal.endLsn());
+        wal.reset();
+        return replayed;
+    }
+
+    @Override
+    public void page(long pageId, ByteBuffer page) {
+        discStore.markPageUsed(pageId);
+        leaves.remove(pageId);
+        unreadable.remove(pageId);
+        images.put(pageId, page);
+    }
+
+    @Override
+    public void put(long pageId, Value key, Value value) {
+        discStore.markPageUsed(pageId);
+        leaf(pageId).entries.put(key, value);
+    }
+
+    @Override
+    public void delete(long pageId, Value key) {
+        discStore.markPageUsed(pageId);
+        leaf(pageId).entries.remove(key);
+    }
+
+    @Override
+    public void root(long rootId) {
+        this.rootId = rootId;
+    }
+
+    @Override
+    public void free(long pageId) {
+        images.remove(pageId);
+        leaves.remove(pageId);
+        unreadable.remove(pageId);
+        discStore.reservePageIds(pageId); // the file may end before it; it must not be allocated twice
+        discStore.freePage(pageId);
+    }
+
+    private LeafEntries leaf(long pageId) {
+        LeafEntries leaf = leaves.get(pageId);
+        if (leaf != null) {
+            return leaf;
+        }
+        ByteBuffer page = images.remove(pageId);
+        if (page == null) {
+            page = ByteBuffer.allocate(Store.PAGE_SIZE);
+            discStore.readPage(pageId, page);
+        }
+        leaf = LeafEntries.of(pageId, page);
+        if (leaf == null) {
+            unreadable.add(pageId); // replayed as empty until a later image or free replaces it
+            leaf = new LeafEntries(1, -1L, null, new TreeMap<>());
+        }
+        leaves.put(pageId, leaf);
+        return leaf;
+    }
+
+    private void writePages() {
+        long maxPageId = 0;
+        for (Map.Entry<Long, ByteBuffer> image : images.entrySet()) {
+            discStore.writePage(image.getKey(), image.getValue());
+            maxPageId = Math.max(maxPageId, image.getKey());
+        }
+        for (Map.Entry<Long, LeafEntries> leaf : leaves.entrySet()) {
+            discStore.writePage(leaf.getKey(), PageCodec.serialize(leaf.getValue().toNode(leaf.getKey())));
+            maxPageId = Math.max(maxPageId, leaf.getKey());
+        }
+        discStore.reservePageIds(maxPageId);
+        if (rootId != -1) {
+            discStore.updateRootId(rootId);
+        }
+    }
+
+    /** A leaf being redone; its entries may temporarily exceed a page. */
+    private record LeafEntries(int height, long link, Value highKey, TreeMap<Value, Value> entries) {
+
+        private static final ByteBuffer NEVER_WRITTEN = ByteBuffer.allocate(Store.PAGE_SIZE);
+
+        /**
+         * The entries of the leaf in {@code page}; none for a page that was never written, and
+         * null for one that holds no leaf.
+         */
+        static LeafEntries of(long pageId, ByteBuffer page) {
+            TreeMap<Value, Value> entries = new TreeMap<>();
+            if (page.mismatch(NEVER_WRITTEN) == -1) {
+                return new LeafEntries(1, -1L, null, entries); // past the end of the file
+            }
+            Node node;
+            try {
+                node = PageCodec.deserialize(pageId, page);
+            } catch (RuntimeException e) {
+                return null;
+            }
+            if (!(node instanceof LeafNode leaf)) {
+                return null;
+            }
+            for (int i = 0; i < leaf.getKeys().length; i++) {
+                entries.put(leaf.getKeys()[i], leaf.getValues()[i]);
+            }
+            return new LeafEntries(leaf.height(), leaf.link(), leaf.getHighKey(), entries);
+        }
+
+        LeafNode toNode(long pageId) {
+            return new LeafNode(pageId, height, entries.keySet().toArray(new Value[0]),
+                    entries.values().toArray(new Value[0]), link, highKey);
+        }
+    }
+}
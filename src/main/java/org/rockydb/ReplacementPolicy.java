@@ -0,0 +1,27 @@
+package org.rockydb;
+
+/**
+ * Chooses which frame a miss reuses. Implementations see every page access and load, and keep any
+ * per-frame bookkeeping they need on top of {@link Frame}'s usage counter.
+ */
+interface ReplacementPolicy {
+
+    /**
+     * Returns a frame exclusively claimed for reuse (pin count 1).
+     *
+     * @throws BufferExhaustedException if every frame stays pinned
+     */
+    Frame findVictim();
+
+    /** A pinned frame was accessed (read or written) while holding its current page. */
+    default void recordAccess(Frame frame) {
+        frame.bumpUsage();
+    }
+
+    /** A claimed victim now holds {@code frame.pageId()}, freshly read from disc. */
+    default void recordLoad(Frame frame) {
+    }
+
+    /** Index of the frame likely to be chosen next; the page cleaner starts there. */
+    int hand();
+}
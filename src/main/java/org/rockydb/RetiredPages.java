@@ -0,0 +1,102 @@
+package org.rockydb;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pages merged out of a tree, kept until no operation can still reach them. Readers hold no latch
+ * between pages, so one that read a parent just before a merge may still be on its way to the
+ * page merged away. Every operation therefore brackets its page accesses with {@link #enter} and
+ * {@link #exit}, and a retired page is handed to {@link Store#freePage} only once each operation
+ * that was active when it was retired has exited. Until then the page keeps its last contents and
+ * {@link #isRetired} tells an operation that lands on it to start over from the root.
+ * <p>
+ * {@link #reclaimed} changes whenever pages are freed, which lets a cursor that holds a page id
+ * between operations tell whether the id may have been reused since. Other resources readers may
+ * still be using, such as value log segments, are released the same way through {@link #defer}.
+ */
+final class RetiredPages {
+    private record Retirement(long ticket, Runnable release) {
+    }
+
+    private final Store store;
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> active = new ConcurrentSkipListSet<>();
+    private final Set<Long> retired = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Retirement> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong reclaimed = new AtomicLong();
+
+    RetiredPages(Store store) {
+        this.store = store;
+    }
+
+    /** Starts an operation; pass the returned ticket to {@link #exit}. */
+    long enter() {
+        long ticket = clock.incrementAndGet();
+        active.add(ticket);
+        return ticket;
+    }
+
+    /** Ends an operation and frees the retired pages nobody can reach any more. */
+    void exit(long ticket) {
+        active.remove(ticket);
+        if (!pending.isEmpty()) {
+            reclaim();
+        }
+    }
+
+    /**
+     * Marks a page that was just unlinked from the tree, while its latch is still held. Operations
+     * that land on it from now on have to start over.
+     */
+    void retire(long pageId) {
+        retired.add(pageId);
+        pending.add(new Retirement(clock.incrementAndGet(), () -> {
+            store.freePage(pageId);
+            retired.remove(pageId);
+        }));
+    }
+
+    /**
+     * Runs {@code release} once each operation running now has exited, along with the pages retired
+     * before it; it counts as freeing for {@link #reclaimed}.
+     */
+    void defer(Runnable release) {
+        pending.add(new Retirement(clock.incrementAndGet(), release));
+    }
+
+    boolean isRetired(long pageId) {
+        return retired.contains(pageId);
+    }
+
+    /** Changes every time retired pages are freed. */
+    long reclaimed() {
+        return reclaimed.get();
+    }
+
+    private synchronized void reclaim() {
+        Long oldest = active.ceiling(0L);
+        boolean bumped = false;
+        Retirement next;
+        while ((next = pending.peek()) != null && (oldest == null || next.ticket() < oldest)) {
+            if (!bumped) {
+                reclaimed.incrementAndGet(); // before any page can be reused
+                bumped = true;
+            }
+            pending.poll();
+            next.release().run();
+        }
+    }
+
+    /** Frees every retired page at once; only safe while no operation is running. */
+    synchronized void freeAll() {
+        reclaimed.incrementAndGet();
+        Retirement next;
+        while ((next = pending.poll()) != null) {
+            next.release().run();
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package org.rockydb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static org.rockydb.ByteUtils.readFormatFlag;
+import static org.rockydb.ByteUtils.readIsLeafFlag;
+
+/**
+ * Slotted page layout ({@link ByteUtils#FORMAT_VARINT}):
+ * <pre>
+ *  0  flags          leaf bit and format version
+ *  1  cell count     short
+ *  3  height         short
+ *  5  heap start     short, offset of the lowest cell byte
+ *  7  link           long
+ * 15  slot array     one short cell offset per entry, in key order
+ *     free space
+ *     cell heap      up to the end of the page
+ * </pre>
+ * A leaf cell is a length-prefixed key followed by a length-prefixed value; a branch cell is a
+ * length-prefixed key followed by the child pointer. Lengths are varints, a single byte for keys
+ * and values shorter than 128 bytes. Entry {@code i} is reached through its slot in constant time,
+ * so lookups binary-search the slot array, and adding an entry only has to shift the slots behind
+ * it while the cell itself goes to the heap. Pages are accessed through absolute indices only, so
+ * heap and direct buffers work alike and readers never touch a buffer's position.
+ * <p>
+ * A leaf value kept in an {@link OverflowChain} is stored as its reference, with a value length of
+ * {@link #OVERFLOW_REF_LENGTH} plus the reference's length, which no inline value can have.
+ * <p>
+ * When the keys of a page share a prefix long enough to pay for storing it, the page is written
+ * in the prefixed variant ({@link ByteUtils#FORMAT_VARINT_PREFIXED}): the prefix length, a varint,
+ * and the prefix bytes sit between the link and the slot array, and cells hold only what follows
+ * the prefix. A cell's key length still counts the whole key, so a cell takes the same bytes on
+ * any page. Keys are sorted, so the prefix shared by the first and last key is shared by all of
+ * them, and a key outside it sorts before or after the whole page, which one comparison with the
+ * prefix settles before the binary search compares suffixes only.
+ * <p>
+ * A leaf that is not the rightmost one stores its high key, the separator bounding it in its
+ * parent, between the prefix and the slot array: the number of leading bytes it shares with the
+ * page's last key and the rest, each length a varint. Keys above it belong to the right sibling.
+ * <p>
+ * Pages written before lengths were varints ({@link ByteUtils#FORMAT_SLOTTED} and
+ * {@link ByteUtils#FORMAT_PREFIXED}, whose prefix length is a short) have four-byte lengths, and
+ * prefixed cells there count only the suffix. They are still read and searched, but updated in
+ * place only once the node path has rewritten them in the current format.
+ */
+final class SlottedPage {
+    static final int COUNT_OFFSET = 1;
+    static final int HEIGHT_OFFSET = 3;
+    static final int HEAP_START_OFFSET = 5;
+    static final int LINK_OFFSET = 7;
+    static final int SLOTS_OFFSET = Store.PAGE_HEADERS_SIZE + Store.LINK_POINTER_SIZE;
+    static final int PREFIX_OFFSET = SLOTS_OFFSET;
+    static final int PREFIX_LENGTH_SIZE = Short.BYTES; // in FORMAT_PREFIXED pages
+    /** Value lengths from here up mark an overflow reference; a page holds no longer value. */
+    static final int OVERFLOW_REF_LENGTH = Store.PAGE_SIZE;
+
+    private static final Store.SearchResult ABSENT = new Store.SearchResult(-1, null);
+
+    private SlottedPage() {}
+
+    static boolean fits(int cellBytes, int count) {
+        return fits(cellBytes, count, 0);
+    }
+
+    /** Whether cells of {@code cellBytes} in total, keys cut by {@code prefix} bytes, fit. */
+    static boolean fits(int cellBytes, int count, int prefix) {
+        return slotsStart(prefix) + count * Store.SLOT_SIZE + cellBytes <= Store.PAGE_SIZE;
+    }
+
+    /**
+     * Length of the prefix that sorted {@code keys} are written with: the prefix they all share,
+     * or {@code 0} when storing it once would not save more than its length field costs.
+     */
+    static int prefixLength(Value[] keys) {
+        if (keys.length < 2) {
+            return 0;
+        }
+        return prefixSaving(keys[0], keys[keys.length - 1], keys.length) > 0
+                ? commonPrefix(keys[0], keys[keys.length - 1])
+                : 0;
+    }
+
+    /**
+     * Bytes saved by writing sorted {@code keys}, or {@code count} of them from {@code first} to
+     * {@code last}, with their common prefix taken out; {@link LeafNode#size()} and
+     * {@link BranchNode#size()} subtract it from the uncompressed size.
+     */
+    static int prefixSaving(Value[] keys) {
+        return keys.length == 0 ? 0 : prefixSaving(keys[0], keys[keys.length - 1], keys.length);
+    }
+
+    static int prefixSaving(Value first, Value last, int count) {
+        if (count < 2) {
+            return 0;
+        }
+        int prefix = commonPrefix(first, last);
+        return Math.max(0, (count - 1) * prefix - ByteUtils.varIntSize(prefix));
+    }
+
+    static void write(ByteBuffer page, int height, Value[] keys, Value[] values, long link) {
+        write(page, height, keys, values, link, null);
+    }
+
+    static void write(ByteBuffer page, int height, Value[] keys, Value[] values, long link, Value highKey) {
+        int prefix = prefixLength(keys);
+        int slots = slotsStart(prefix) + highKeySize(highKey, lastKey(keys));
+        int heap = Store.PAGE_SIZE;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            heap -= leafCellSize(keys[i], prefix, values[i]);
+            writeLeafCell(page, heap, keys[i].bytes(), prefix, values[i]);
+            page.putShort(slots + i * Store.SLOT_SIZE, (short) heap);
+        }
+        writeHeader(page, true, keys, prefix, height, heap, link, highKey);
+    }
+
+    static void write(ByteBuffer page, int height, Value[] keys, long[] pointers, long link) {
+        int prefix = prefixLength(keys);
+        int slots = slotsStart(prefix);
+        int heap = Store.PAGE_SIZE;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            byte[] key = keys[i].bytes();
+            heap -= ByteUtils.varIntSize(key.length) + key.length - prefix + Store.VALUE_POINTER_SIZE;
+            int keyAt = ByteUtils.putVarInt(page, heap, key.length);
+            page.put(keyAt, key, prefix, key.length - prefix);
+            page.putLong(keyAt + key.length - prefix, pointers[i]);
+            page.putShort(slots + i * Store.SLOT_SIZE, (short) heap);
+        }
+        writeHeader(page, false, keys, prefix, height, heap, link, null);
+    }
+
+    static Node read(long id, ByteBuffer page) {
+        int count = count(page);
+        int height = page.getShort(HEIGHT_OFFSET);
+        long link = page.getLong(LINK_OFFSET);
+        boolean varint = ByteUtils.isVarint(page.get(0));
+        int prefix = prefixLength(page);
+        int prefixAt = prefixAt(page, prefix);
+        Value[] keys = new Value[count];
+        if (readIsLeafFlag(page.get(0))) {
+            Value[] values = new Value[count];
+            for (int i = 0; i < count; i++) {
+                int cell = cellAt(page, i);
+                keys[i] = copyKey(page, cell, varint, prefix, prefixAt);
+                values[i] = copyValue(page, valueAt(page, cell, varint, prefix), varint);
+            }
+            Value highKey = ByteUtils.hasHighKey(page.get(0)) ? highKey(page, lastKey(keys)) : null;
+            return new LeafNode(id, height, keys, values, link, highKey);
+        }
+        long[] pointers = new long[count];
+        for (int i = 0; i < count; i++) {
+            int cell = cellAt(page, i);
+            keys[i] = copyKey(page, cell, varint, prefix, prefixAt);
+            pointers[i] = page.getLong(valueAt(page, cell, varint, prefix));
+        }
+        return new BranchNode(id, height, keys, pointers, link);
+    }
+
+    static Store.SearchResult search(ByteBuffer page, Value key) {
+        int count = count(page);
+        long link = page.getLong(LINK_OFFSET);
+        boolean varint = ByteUtils.isVarint(page.get(0));
+        int prefix = prefixLength(page);
+        int idx = find(page, key);
+        if (readIsLeafFlag(page.get(0))) {
+            if (idx >= 0) {
+                int valueAt = valueAt(page, cellAt(page, idx), varint, prefix);
+                return new Store.SearchResult(-1, copyValue(page, valueAt, varint));
+            }
+            if (coveredByRightSibling(page, key, -(idx + 1), count)) {
+                return new Store.SearchResult(link, null);
+            }
+            return ABSENT;
+        }
+        idx = idx < 0 ? -(idx + 1) : idx;
+        if (idx == count && link != -1) {
+            return new Store.SearchResult(link, null);
+        }
+        int child = idx == count ? idx - 1 : idx;
+        return new Store.SearchResult(page.getLong(valueAt(page, cellAt(page, child), varint, prefix)), null);
+    }
+
+    /**
+     * Inserts or overwrites {@code key} in a slotted leaf page in place. A same-length value is
+     * overwritten where it is; otherwise a new cell is carved from the heap (compacting the heap
+     * first if it is fragmented) and only the slots behind it are shifted. Returns {@code false},
+     * leaving the page untouched, if the page is not a slotted leaf with varint lengths, belongs to
+     * a right sibling's key range, or would overflow — exactly the cases where the node path would
+     * rewrite it, move right or split — and also if {@code key} lacks the page's prefix, so the node
+     * path rewrites it with a shorter one. An overflow reference is never overwritten in place, so
+     * the node path sees the chain it replaces.
+     */
+    static boolean put(ByteBuffer page, Value key, Value value) {
+        if (!isVarintLeaf(page)) {
+            return false;
+        }
+        int prefix = prefixLength(page);
+        if (prefix > 0 && comparePrefix(page, prefixAt(page, prefix), prefix, key.bytes()) != 0) {
+            return false;
+        }
+        int count = count(page);
+        int idx = find(page, key);
+        if (idx >= 0) {
+            int valueAt = valueAt(page, cellAt(page, idx), true, prefix);
+            int length = ByteUtils.getVarInt(page, valueAt);
+            if (length >= OVERFLOW_REF_LENGTH) {
+                return false;
+            }
+            if (length == storedValueLength(value)) {
+                page.put(valueAt + ByteUtils.varIntSize(length), value.bytes());
+                return true;
+            }
+            int cell = allocate(page, leafCellSize(key, prefix, value), count, idx, prefix);
+            if (cell < 0) {
+                return false;
+            }
+            writeLeafCell(page, cell, key.bytes(), prefix, value);
+            page.putShort(slotAt(page, idx), (short) cell);
+            return true;
+        }
+
+        int insertAt = -(idx + 1);
+        if (insertAt == count && ByteUtils.hasHighKey(page.get(0)) || coveredByRightSibling(page, key, insertAt, count)) {
+            return false;
+        }
+        int cell = allocate(page, leafCellSize(key, prefix, value), count + 1, -1, prefix);
+        if (cell < 0) {
+            return false;
+        }
+        writeLeafCell(page, cell, key.bytes(), prefix, value);
+        ByteUtils.move(page, slotAt(page, insertAt), slotAt(page, insertAt + 1), (count - insertAt) * Store.SLOT_SIZE);
+        page.putShort(slotAt(page, insertAt), (short) cell);
+        page.putShort(COUNT_OFFSET, (short) (count + 1));
+        return true;
+    }
+
+    /**
+     * Removes {@code key} from a slotted leaf page in place by closing the gap in the slot array;
+     * the cell bytes stay in the heap until the next compaction. Returns {@code false} if the page
+     * is not a slotted leaf with varint lengths, the key belongs to a right sibling, its value is an
+     * overflow reference, whose chain the node path has to free, or it is the last key of a page
+     * whose high key is stored against it.
+     */
+    static boolean remove(ByteBuffer page, Value key) {
+        if (!isVarintLeaf(page)) {
+            return false;
+        }
+        int count = count(page);
+        int idx = find(page, key);
+        if (idx < 0) {
+            return !coveredByRightSibling(page, key, -(idx + 1), count);
+        }
+        if (idx == count - 1 && ByteUtils.hasHighKey(page.get(0))) {
+            return false;
+        }
+        int cell = cellAt(page, idx);
+        int prefix = prefixLength(page);
+        if (ByteUtils.getVarInt(page, valueAt(page, cell, true, prefix)) >= OVERFLOW_REF_LENGTH) {
+            return false;
+        }
+        int heapStart = page.getShort(HEAP_START_OFFSET);
+        if (cell == heapStart) {
+            page.putShort(HEAP_START_OFFSET, (short) (heapStart + leafCellSize(page, cell, prefix)));
+        }
+        ByteUtils.move(page, slotAt(page, idx + 1), slotAt(page, idx), (count - idx - 1) * Store.SLOT_SIZE);
+        page.putShort(COUNT_OFFSET, (short) (count - 1));
+        return true;
+    }
+
+    /**
+     * Binary search over the slot array, with the contract of {@link Arrays#binarySearch}: the
+     * index of {@code key}, or {@code -(insertionPoint + 1)} when it is absent.
+     */
+    static int find(ByteBuffer page, Value key) {
+        int count = count(page);
+        byte[] bytes = key.bytes();
+        boolean varint = ByteUtils.isVarint(page.get(0));
+        int prefix = prefixLength(page);
+        if (prefix > 0) {
+            int cmp = comparePrefix(page, prefixAt(page, prefix), prefix, bytes);
+            if (cmp != 0) {
+                return cmp > 0 ? -1 : -(count + 1);
+            }
+        }
+        int slots = slotsStart(page);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cell = page.getShort(slots + mid * Store.SLOT_SIZE);
+            int cmp = ByteUtils.compare(page, keyAt(page, cell, varint), storedKeyLength(page, cell, varint, prefix),
+                    bytes, prefix, bytes.length - prefix);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Bytes the leaf's live entries take up as {@link LeafNode#size()} measures them, garbage in
+     * the heap excluded, or {@code -1} if the page is not a slotted leaf with varint lengths.
+     */
+    static int leafSize(ByteBuffer page) {
+        if (!isVarintLeaf(page)) {
+            return -1;
+        }
+        int count = count(page);
+        int prefix = prefixLength(page);
+        int size = slotAt(page, count) - SLOTS_OFFSET + Store.LINK_POINTER_SIZE;
+        for (int i = 0; i < count; i++) {
+            size += leafCellSize(page, cellAt(page, i), prefix);
+        }
+        return size;
+    }
+
+    /** The value length a leaf cell records for {@code value}, marking overflow references. */
+    static int storedValueLength(Value value) {
+        return value.isOverflowRef() ? OVERFLOW_REF_LENGTH + value.bytes().length : value.bytes().length;
+    }
+
+    /** Number of value bytes in a cell whose recorded value length is {@code storedLength}. */
+    private static int valueBytes(int storedLength) {
+        return storedLength >= OVERFLOW_REF_LENGTH ? storedLength - OVERFLOW_REF_LENGTH : storedLength;
+    }
+
+    static int count(ByteBuffer page) {
+        return page.getShort(COUNT_OFFSET);
+    }
+
+    static int cellAt(ByteBuffer page, int idx) {
+        return page.getShort(slotAt(page, idx));
+    }
+
+    static int slotAt(ByteBuffer page, int idx) {
+        return slotsStart(page) + idx * Store.SLOT_SIZE;
+    }
+
+    /** Length of the prefix the page's keys are stored without; {@code 0} unless it is prefixed. */
+    static int prefixLength(ByteBuffer page) {
+        return switch (readFormatFlag(page.get(0))) {
+            case ByteUtils.FORMAT_VARINT_PREFIXED -> ByteUtils.getVarInt(page, PREFIX_OFFSET);
+            case ByteUtils.FORMAT_PREFIXED -> page.getShort(PREFIX_OFFSET);
+            default -> 0;
+        };
+    }
+
+    /** Index of the first prefix byte of a page whose prefix is {@code prefix} bytes long. */
+    private static int prefixAt(ByteBuffer page, int prefix) {
+        return PREFIX_OFFSET + (ByteUtils.isVarint(page.get(0)) ? ByteUtils.varIntSize(prefix) : PREFIX_LENGTH_SIZE);
+    }
+
+    private static int slotsStart(ByteBuffer page) {
+        int at = highKeyAt(page);
+        if (!ByteUtils.hasHighKey(page.get(0))) {
+            return at;
+        }
+        int shared = ByteUtils.getVarInt(page, at);
+        at += ByteUtils.varIntSize(shared);
+        int suffix = ByteUtils.getVarInt(page, at);
+        return at + ByteUtils.varIntSize(suffix) + suffix;
+    }
+
+    /** Index of the high key's encoding: just past the prefix, where others have the slot array. */
+    private static int highKeyAt(ByteBuffer page) {
+        int prefix = prefixLength(page);
+        return prefix == 0 ? SLOTS_OFFSET : prefixAt(page, prefix) + prefix;
+    }
+
+    /** Where the slot array starts on a page written now with a {@code prefix}-byte prefix. */
+    private static int slotsStart(int prefix) {
+        return prefix == 0 ? SLOTS_OFFSET : PREFIX_OFFSET + ByteUtils.varIntSize(prefix) + prefix;
+    }
+
+    /** Index of the first key byte stored in {@code cell}, just past the key's length. */
+    private static int keyAt(ByteBuffer page, int cell, boolean varint) {
+        return cell + (varint ? ByteUtils.varIntSize(ByteUtils.getVarInt(page, cell)) : Store.KEY_PREFIX_SIZE);
+    }
+
+    /** Number of key bytes stored in {@code cell}: the whole key less the page's prefix. */
+    private static int storedKeyLength(ByteBuffer page, int cell, boolean varint, int prefix) {
+        return varint ? ByteUtils.getVarInt(page, cell) - prefix : page.getInt(cell);
+    }
+
+    private static int valueAt(ByteBuffer page, int cell, boolean varint, int prefix) {
+        return keyAt(page, cell, varint) + storedKeyLength(page, cell, varint, prefix);
+    }
+
+    /**
+     * Reserves {@code size} heap bytes for a page that will hold {@code slots} slots, where the cell
+     * of slot {@code replaced} (if not {@code -1}) is about to be superseded. Returns the offset of
+     * the new cell, or {@code -1} if the live cells would not fit.
+     */
+    private static int allocate(ByteBuffer page, int size, int slots, int replaced, int prefix) {
+        int slotsEnd = slotAt(page, slots);
+        int heapStart = page.getShort(HEAP_START_OFFSET);
+        if (heapStart - size < slotsEnd) {
+            int count = count(page);
+            int live = 0;
+            for (int i = 0; i < count; i++) {
+                if (i != replaced) {
+                    live += leafCellSize(page, cellAt(page, i), prefix);
+                }
+            }
+            if (slotsEnd + live + size > Store.PAGE_SIZE) {
+                return -1;
+            }
+            heapStart = compact(page, count, replaced, prefix);
+        }
+        heapStart -= size;
+        page.putShort(HEAP_START_OFFSET, (short) heapStart);
+        return heapStart;
+    }
+
+    /**
+     * Rewrites the live cells contiguously at the end of the page, dropping garbage left by removed
+     * or relocated cells, and returns the new heap start. The slot of {@code skipped} is left stale.
+     */
+    private static int compact(ByteBuffer page, int count, int skipped, int prefix) {
+        byte[] cells = new byte[Store.PAGE_SIZE];
+        int heap = Store.PAGE_SIZE;
+        for (int i = count - 1; i >= 0; i--) {
+            if (i == skipped) {
+                continue;
+            }
+            int cell = cellAt(page, i);
+            int size = leafCellSize(page, cell, prefix);
+            heap -= size;
+            page.get(cell, cells, heap, size);
+            page.putShort(slotAt(page, i), (short) heap);
+        }
+        page.put(heap, cells, heap, Store.PAGE_SIZE - heap);
+        page.putShort(HEAP_START_OFFSET, (short) heap);
+        return heap;
+    }
+
+    private static boolean isVarintLeaf(ByteBuffer page) {
+        return ByteUtils.isVarint(page.get(0)) && readIsLeafFlag(page.get(0));
+    }
+
+    /**
+     * Whether {@code key}, absent from the leaf and sorting at {@code insertAt}, belongs to the right
+     * sibling: it is above the high key, or, on a page without one, after a key the leaf holds.
+     */
+    private static boolean coveredByRightSibling(ByteBuffer page, Value key, int insertAt, int count) {
+        if (insertAt != count || page.getLong(LINK_OFFSET) == -1) {
+            return false;
+        }
+        if (ByteUtils.hasHighKey(page.get(0))) {
+            return key.compareTo(highKey(page, lastKey(page, count))) > 0;
+        }
+        return count > 0;
+    }
+
+    /** Bytes {@code highKey}, if any, takes up on a leaf page whose last key is {@code last}. */
+    static int highKeySize(Value highKey, Value last) {
+        if (highKey == null) {
+            return 0;
+        }
+        int shared = last == null ? 0 : commonPrefix(last, highKey);
+        int suffix = highKey.bytes().length - shared;
+        return ByteUtils.varIntSize(shared) + ByteUtils.varIntSize(suffix) + suffix;
+    }
+
+    private static Value highKey(ByteBuffer page, Value last) {
+        int at = highKeyAt(page);
+        int shared = ByteUtils.getVarInt(page, at);
+        at += ByteUtils.varIntSize(shared);
+        int suffix = ByteUtils.getVarInt(page, at);
+        at += ByteUtils.varIntSize(suffix);
+        byte[] lastBytes = last == null ? new byte[0] : last.bytes();
+        Objects.checkFromIndexSize(0, shared, lastBytes.length); // as in copyValue
+        Objects.checkFromIndexSize(at, suffix, page.capacity());
+        byte[] bytes = Arrays.copyOf(lastBytes, shared + suffix);
+        page.get(at, bytes, shared, suffix);
+        return new Value(bytes);
+    }
+
+    private static Value lastKey(ByteBuffer page, int count) {
+        if (count == 0) {
+            return null;
+        }
+        int prefix = prefixLength(page);
+        return copyKey(page, cellAt(page, count - 1), true, prefix, prefixAt(page, prefix));
+    }
+
+    private static Value lastKey(Value[] keys) {
+        return keys.length == 0 ? null : keys[keys.length - 1];
+    }
+
+    private static int leafCellSize(ByteBuffer page, int cell, int prefix) {
+        int valueAt = valueAt(page, cell, true, prefix);
+        int length = ByteUtils.getVarInt(page, valueAt);
+        return valueAt - cell + ByteUtils.varIntSize(length) + valueBytes(length);
+    }
+
+    private static int leafCellSize(Value key, int prefix, Value value) {
+        int keyLength = key.bytes().length;
+        return ByteUtils.varIntSize(keyLength) + keyLength - prefix
+                + ByteUtils.varIntSize(storedValueLength(value)) + value.bytes().length;
+    }
+
+    private static void writeLeafCell(ByteBuffer page, int cell, byte[] key, int prefix, Value value) {
+        int keyAt = ByteUtils.putVarInt(page, cell, key.length);
+        page.put(keyAt, key, prefix, key.length - prefix);
+        int valueAt = ByteUtils.putVarInt(page, keyAt + key.length - prefix, storedValueLength(value));
+        page.put(valueAt, value.bytes());
+    }
+
+    /**
+     * Compares the page's {@code prefix}, stored from index {@code prefixAt}, with the start of
+     * {@code key}: {@code 0} if the key begins with it, otherwise the sign of prefix against key, a
+     * key that is a shorter part of the prefix counting as smaller.
+     */
+    private static int comparePrefix(ByteBuffer page, int prefixAt, int prefix, byte[] key) {
+        int cmp = ByteUtils.compare(page, prefixAt, prefix, key, 0, Math.min(prefix, key.length));
+        return cmp != 0 ? cmp : Integer.compare(prefix, Math.min(prefix, key.length));
+    }
+
+    private static int commonPrefix(Value first, Value last) {
+        byte[] a = first.bytes();
+        byte[] b = last.bytes();
+        int mismatch = Arrays.mismatch(a, b);
+        return mismatch < 0 ? a.length : mismatch;
+    }
+
+    private static Value copyKey(ByteBuffer page, int cell, boolean varint, int prefix, int prefixAt) {
+        int suffix = storedKeyLength(page, cell, varint, prefix);
+        int keyAt = keyAt(page, cell, varint);
+        Objects.checkFromIndexSize(prefixAt, prefix, page.capacity()); // as in copyValue
+        Objects.checkFromIndexSize(keyAt, suffix, page.capacity());
+        byte[] bytes = new byte[prefix + suffix];
+        page.get(prefixAt, bytes, 0, prefix);
+        page.get(keyAt, bytes, prefix, suffix);
+        return new Value(bytes);
+    }
+
+    private static Value copyValue(ByteBuffer page, int offset, boolean varint) {
+        int stored = varint ? ByteUtils.getVarInt(page, offset) : page.getInt(offset);
+        int from = offset + (varint ? ByteUtils.varIntSize(stored) : Store.KEY_PREFIX_SIZE);
+        int length = varint ? valueBytes(stored) : stored;
+        // a torn optimistic read may see any length; fail before allocating it
+        Objects.checkFromIndexSize(from, length, page.capacity());
+        byte[] bytes = new byte[length];
+        page.get(from, bytes);
+        return new Value(bytes, length != stored);
+    }
+
+    private static void writeHeader(ByteBuffer page, boolean isLeaf, Value[] keys, int prefix, int height, int heap, long link,
+                                    Value highKey) {
+        byte flags = ByteUtils.createFlags(isLeaf, prefix == 0 ? ByteUtils.FORMAT_VARINT : ByteUtils.FORMAT_VARINT_PREFIXED);
+        page.put(0, highKey == null ? flags : ByteUtils.withHighKey(flags));
+        if (prefix > 0) {
+            int prefixAt = ByteUtils.putVarInt(page, PREFIX_OFFSET, prefix);
+            page.put(prefixAt, keys[0].bytes(), 0, prefix);
+        }
+        if (highKey != null) {
+            byte[] bytes = highKey.bytes();
+            int shared = keys.length == 0 ? 0 : commonPrefix(lastKey(keys), highKey);
+            int at = ByteUtils.putVarInt(page, slotsStart(prefix), shared);
+            at = ByteUtils.putVarInt(page, at, bytes.length - shared);
+            page.put(at, bytes, shared, bytes.length - shared);
+        }
+        int count = keys.length;
+        page.putShort(COUNT_OFFSET, (short) count);
+        page.putShort(HEIGHT_OFFSET, (short) height);
+        page.putShort(HEAP_START_OFFSET, (short) heap);
+        page.putLong(LINK_OFFSET, link);
+    }
+}
@@ -0,0 +1,30 @@
+package org.rockydb;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+
+/**
+ * How the disc store moves pages between the database file and the buffer pool.
+ */
+public enum StorageBackend {
+    /** A positional read or write system call per page. */
+    FILE_CHANNEL,
+    /**
+     * Memory-mapped chunks of the file. Suited to read-mostly data that fits in the OS page cache,
+     * where a miss becomes a memory copy instead of a system call.
+     */
+    MEMORY_MAPPED,
+    /**
+     * An {@link java.nio.channels.AsynchronousFileChannel} serviced by a few I/O threads, so
+     * asynchronous lookups can keep many page reads in flight without a thread per request.
+     */
+    ASYNC_CHANNEL;
+
+    PageFile open(File dbFile, FileChannel fileChannel) {
+        return switch (this) {
+            case FILE_CHANNEL -> new ChannelPageFile(fileChannel);
+            case MEMORY_MAPPED -> new MappedPageFile(fileChannel);
+            case ASYNC_CHANNEL -> new AsyncPageFile(dbFile, fileChannel);
+        };
+    }
+}
@@ -1,18 +1,67 @@
 package org.rockydb;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 public interface Store {
     int PAGE_SIZE = 8 * 1024;
-    int PAGE_HEADERS_SIZE = 5;
+    int PAGE_HEADERS_SIZE = 7;
+    int SLOT_SIZE = 2;
     int KEY_PREFIX_SIZE = 4;
     int VALUE_POINTER_SIZE = 8;
     int LINK_POINTER_SIZE = VALUE_POINTER_SIZE;
 
     Node readNode(long id);
+    SearchResult search(long id, Value key);
     Node writeNode(Node node);
     WriteHandle latchForWrite(long id);
     Supplier<Long> nodeIdGenerator();
     void updateRootId(long id);
     long rootId();
+
+    /** Copies page {@code id} as it is into {@code page}, for pages that hold no node. */
+    void readRawPage(long id, ByteBuffer page);
+
+    /** Writes {@code page} as page {@code id} as it is, for pages that hold no node. */
+    void writeRawPage(long id, ByteBuffer page);
+
+    /**
+     * Asynchronous {@link #readNode}. The default runs it on the calling thread.
+     */
+    default CompletableFuture<Node> readNodeAsync(long id) {
+        return CompletableFuture.supplyAsync(() -> readNode(id), Runnable::run);
+    }
+
+    /** Asynchronous {@link #search}. The default runs it on the calling thread. */
+    default CompletableFuture<SearchResult> searchAsync(long id, Value key) {
+        return CompletableFuture.supplyAsync(() -> search(id, key), Runnable::run);
+    }
+
+    /** Asynchronous {@link #writeNode}. The default runs it on the calling thread. */
+    default CompletableFuture<Node> writeNodeAsync(Node node) {
+        return CompletableFuture.supplyAsync(() -> writeNode(node), Runnable::run);
+    }
+
+    /**
+     * Hints that the given pages will be read soon. Implementations may start loading them in the
+     * background; the default does nothing.
+     */
+    default void prefetch(long... pageIds) {
+    }
+
+    /**
+     * Returns a page nothing points to any more, so that {@link #nodeIdGenerator} can hand it out
+     * again. The default leaks it.
+     */
+    default void freePage(long id) {
+    }
+
+    /**
+     * One step of a point lookup. {@code next} is the page to visit next (a child or a right
+     * sibling), or {@code -1} once the leaf covering the key is reached, in which case {@code value}
+     * is the stored value, or {@code null} if the key is absent.
+     */
+    record SearchResult(long next, Value value) {
+    }
 }
@@ -0,0 +1,132 @@
+package org.rockydb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Scan-resistant CLOCK in the spirit of 2Q with TinyLFU admission. Each frame is either on
+ * probation or protected. A freshly loaded page starts on probation unless the
+ * {@link FrequencySketch} says it was referenced repeatedly in the recent past, and a probation
+ * page is protected once it is accessed again while resident. The hand only evicts probation
+ * frames; protected frames are aged and, while the protected segment is over its share of the
+ * pool, demoted back to probation when cold. A one-pass scan therefore keeps recycling its own
+ * probation frames and leaves hot branch pages and the working set alone.
+ */
+final class TwoQueueClock implements ReplacementPolicy {
+    static final double PROTECTED_SHARE = 0.8;
+
+    private static final int PROBATION = 0;
+    private static final int PROTECTED = 1;
+    private static final int MAX_SWEEPS = Frame.MAX_USAGE + 1;
+    private static final int PROBES_BEFORE_BACKOFF = 64;
+    private static final long BACKOFF_NANOS = 1_000L;
+
+    private final Frame[] frames;
+    private final AtomicIntegerArray segments;
+    private final AtomicInteger protectedCount = new AtomicInteger();
+    private final AtomicInteger nextVictim = new AtomicInteger();
+    private final FrequencySketch sketch;
+    private final int maxProtected;
+
+    TwoQueueClock(Frame[] frames) {
+        this.frames = frames;
+        this.segments = new AtomicIntegerArray(frames.length);
+        this.sketch = new FrequencySketch(frames.length);
+        this.maxProtected = Math.max(0, Math.min(frames.length - 1, (int) (frames.length * PROTECTED_SHARE)));
+    }
+
+    @Override
+    public void recordAccess(Frame frame) {
+        boolean reReferenced = frame.hasUsage();
+        frame.bumpUsage();
+        sketch.increment(frame.pageId());
+        if (reReferenced) {
+            protect(frame.index);
+        }
+    }
+
+    @Override
+    public void recordLoad(Frame frame) {
+        if (sketch.frequency(frame.pageId()) > 1) {
+            protect(frame.index);
+        } else {
+            demote(frame.index);
+        }
+    }
+
+    @Override
+    public int hand() {
+        return Math.floorMod(nextVictim.get(), frames.length);
+    }
+
+    @Override
+    public Frame findVictim() {
+        final int n = frames.length;
+        int stalled = 0;
+
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            for (int step = 0; step < n; step++) {
+                Frame frame = frames[Math.floorMod(nextVictim.getAndIncrement(), n)];
+                if (!frame.tryClaim()) {
+                    if (++stalled >= PROBES_BEFORE_BACKOFF) {
+                        stalled = 0;
+                        LockSupport.parkNanos(BACKOFF_NANOS);
+                    }
+                    continue;
+                }
+                stalled = 0;
+                if (segments.get(frame.index) == PROTECTED) {
+                    if (frame.hasUsage()) {
+                        frame.decrementUsage();
+                    } else if (protectedCount.get() > maxProtected) {
+                        demote(frame.index);
+                    }
+                    frame.releaseClaim();
+                    continue;
+                }
+                if (frame.hasUsage()) {
+                    frame.decrementUsage();
+                    frame.releaseClaim();
+                    continue;
+                }
+                if (sweep == 0 && frame.isDirty()) {
+                    frame.releaseClaim();
+                    continue;
+                }
+                return frame;
+            }
+        }
+
+        for (int step = 0; step < n * MAX_SWEEPS; step++) {
+            Frame frame = frames[Math.floorMod(nextVictim.getAndIncrement(), n)];
+            if (frame.tryClaim()) {
+                demote(frame.index);
+                return frame;
+            }
+            if (++stalled >= PROBES_BEFORE_BACKOFF) {
+                stalled = 0;
+                LockSupport.parkNanos(BACKOFF_NANOS);
+            }
+        }
+        throw new BufferExhaustedException(
+                "No evictable frame found after " + (2 * MAX_SWEEPS) + " sweeps of " + n
+                        + " frames; pool saturated by in-flight pins");
+    }
+
+    boolean isProtected(Frame frame) {
+        return segments.get(frame.index) == PROTECTED;
+    }
+
+    private void protect(int index) {
+        if (segments.compareAndSet(index, PROBATION, PROTECTED)) {
+            protectedCount.incrementAndGet();
+        }
+    }
+
+    private void demote(int index) {
+        if (segments.compareAndSet(index, PROTECTED, PROBATION)) {
+            protectedCount.decrementAndGet();
+        }
+    }
+}
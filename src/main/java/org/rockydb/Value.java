@@ -3,7 +3,33 @@ package org.rockydb;
 import java.util.Arrays;
 import java.util.Objects;
 
-public record Value(byte[] bytes) implements Comparable<Value> {
+/**
+ * A key or a value, ordered by its signed bytes. Inside a leaf, a value too big to be stored
+ * inline is replaced by a reference to where the tree's {@link ValueStorage} put it; such a
+ * reference is a {@code Value} too, told apart by {@link #isOverflowRef()}, and trees resolve it
+ * before handing values out.
+ */
+public final class Value implements Comparable<Value> {
+    private final byte[] bytes;
+    private final boolean overflowRef;
+
+    public Value(byte[] bytes) {
+        this(bytes, false);
+    }
+
+    Value(byte[] bytes, boolean overflowRef) {
+        this.bytes = bytes;
+        this.overflowRef = overflowRef;
+    }
+
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /** Whether the bytes are a {@link ValueStorage} reference rather than the value itself. */
+    boolean isOverflowRef() {
+        return overflowRef;
+    }
 
     @Override
     public int compareTo(Value o) {
@@ -15,11 +41,16 @@ public record Value(byte[] bytes) implements Comparable<Value> {
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
         Value value = (Value) o;
-        return Objects.deepEquals(bytes, value.bytes);
+        return overflowRef == value.overflowRef && Objects.deepEquals(bytes, value.bytes);
     }
 
     @Override
     public int hashCode() {
         return Arrays.hashCode(bytes);
     }
+
+    @Override
+    public String toString() {
+        return "Value[bytes=" + Arrays.toString(bytes) + (overflowRef ? ", overflowRef" : "") + "]";
+    }
 }
@@ -0,0 +1,470 @@
+package org.rockydb;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log holding the values of a table that keeps them apart from its keys. Its leaves
+ * store a {@link #REF_SIZE}-byte reference per value, the value's offset in the log and its
+ * length, so they stay small whatever the values weigh: inserts and splits move small pages only,
+ * and the values themselves are written strictly sequentially. The log is a run of segment files
+ * named after the offset they start at, each a sequence of records:
+ * <pre>
+ *  0  CRC32          int, of the rest of the record
+ *  4  key length     int
+ *  8  value length   int
+ * 12  key
+ *     value          what the reference points at
+ * </pre>
+ * Values are appended without forcing; {@link #sync} forces them, sharing one force among all
+ * writers that appended before it started. The log is registered with the pool, which syncs it
+ * before write-ahead log records that may hold references to it reach their file, so a commit
+ * makes both durable together. A segment is forced when the log moves on to the next one, so only
+ * the last segment can end in a torn record, which opening cuts off.
+ * <p>
+ * Overwritten and deleted values are counted as garbage of their segment. Once half of a sealed
+ * segment is garbage, {@link #collect} appends its live values again, found through the key kept
+ * in each record, points the tree at the copies, and deletes the segment once no operation that
+ * could still read it is running. The counts live in memory only: segments found on opening,
+ * the one still appended to included, are measured by a scan the first time collection gets to
+ * them.
+ */
+final class ValueLog implements ValueStorage, Closeable {
+    static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    static final int RECORD_HEADER_SIZE = 3 * Integer.BYTES;
+    static final int REF_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final File basePath;
+    private final long segmentSize;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<Long, Long> written = new ConcurrentHashMap<>(); // value bytes per segment base
+    private final Map<Long, Long> garbage = new ConcurrentHashMap<>(); // of those, no longer referenced
+    private final Set<Long> unmeasured = ConcurrentHashMap.newKeySet();
+    private final Set<Long> collected = ConcurrentHashMap.newKeySet(); // waiting to be deleted
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final ReentrantLock collectLock = new ReentrantLock();
+    private final AtomicBoolean collecting = new AtomicBoolean();
+    private final AtomicLong syncedOffset = new AtomicLong();
+    private final LongAdder forces = new LongAdder();
+    private Segment current; // guarded by this
+    private long endOffset; // guarded by this
+    private boolean closed; // guarded by collectLock
+
+    private record Segment(long base, File file, FileChannel channel) {
+    }
+
+    /** Opens the log at {@code basePath}, creating it if there are no segments yet. */
+    ValueLog(File basePath, long segmentSize) throws IOException {
+        this.basePath = basePath;
+        this.segmentSize = segmentSize;
+        try {
+            for (File file : segmentFiles(basePath)) {
+                long base = Long.parseUnsignedLong(file.getName().substring(basePath.getName().length() + 1), 16);
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                segments.put(base, new Segment(base, file, channel));
+            }
+            if (segments.isEmpty()) {
+                startSegment(0);
+            } else {
+                current = segments.lastEntry().getValue();
+                long length = validLength(current);
+                current.channel().truncate(length);
+                endOffset = current.base() + length;
+                // the current segment too: its values from before opening are not in its counts
+                unmeasured.addAll(segments.keySet());
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        syncedOffset.set(endOffset);
+    }
+
+    /** Base path of the value log of the table whose log id is {@code logId}. */
+    static File fileFor(File dbFile, long logId) {
+        return new File(dbFile.getPath() + ".vlog." + logId);
+    }
+
+    /** The segment files of the log at {@code basePath}, in no particular order. */
+    static List<File> segmentFiles(File basePath) {
+        File dir = basePath.getAbsoluteFile().getParentFile();
+        String prefix = basePath.getName() + ".";
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && isHex(name.substring(prefix.length())));
+        return files == null ? List.of() : Arrays.asList(files);
+    }
+
+    private static boolean isHex(String s) {
+        return !s.isEmpty() && s.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    /** Removes the segment files of a log that is not open, e.g. of a dropped table. */
+    static void delete(File basePath) {
+        segmentFiles(basePath).forEach(File::delete);
+    }
+
+    /** The value itself if it is no longer than a reference, otherwise a reference to it, appended. */
+    @Override
+    public Value stored(Value key, Value value) {
+        if (value.bytes().length <= REF_SIZE) {
+            return value;
+        }
+        try {
+            return reference(append(key.bytes(), value.bytes()), value.bytes().length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sync() {
+        if (syncedOffset.get() >= endOffset()) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            long upTo;
+            Segment segment;
+            synchronized (this) {
+                upTo = endOffset;
+                segment = current;
+            }
+            if (syncedOffset.get() < upTo) {
+                segment.channel().force(false); // earlier segments were forced when sealed
+                forces.increment();
+                syncedOffset.accumulateAndGet(upTo, Math::max);
+            }
+        } catch (ClosedChannelException e) {
+            // closed meanwhile, which forced it
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    @Override
+    public Value read(Value ref) {
+        long offset = offset(ref);
+        Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+        if (entry == null) {
+            throw new IllegalStateException("No value log segment holds offset " + offset);
+        }
+        byte[] bytes = new byte[length(ref)];
+        try {
+            readFully(entry.getValue(), ByteBuffer.wrap(bytes), offset - entry.getKey());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Value(bytes);
+    }
+
+    /**
+     * Reads the value whole, values in the log being small enough for that, so {@code onClose}
+     * runs before the stream is even returned.
+     */
+    @Override
+    public InputStream open(Value ref, Runnable onClose) {
+        try {
+            return new ByteArrayInputStream(read(ref).bytes());
+        } finally {
+            onClose.run();
+        }
+    }
+
+    /** Counts the value as garbage of its segment; the segment itself goes in {@link #collect}. */
+    @Override
+    public void release(Value ref, RetiredPages retired) {
+        countGarbage(ref);
+    }
+
+    @Override
+    public List<Long> pageIds(Value ref) {
+        return List.of();
+    }
+
+    /** Number of times {@link #sync} has forced the log. */
+    long forces() {
+        return forces.sum();
+    }
+
+    /** Number of segment files currently making up the log. */
+    int segmentCount() {
+        return segments.size();
+    }
+
+    /** Whether a sealed segment is due for {@link #collect}. */
+    boolean needsCollection() {
+        return candidate() != null;
+    }
+
+    /**
+     * Claims the right to run {@link #collect}, so writers that all find the log due schedule
+     * only one collection; {@code false} if one is already claimed.
+     */
+    boolean startCollecting() {
+        return collecting.compareAndSet(false, true);
+    }
+
+    void finishCollecting() {
+        collecting.set(false);
+    }
+
+    /**
+     * Collects one sealed segment of the log behind {@code tree}, if one is due. Live values are
+     * appended again and {@link BLinkTree#replace replaced} in the tree, {@code commit} makes
+     * those changes durable, and the segment is deleted after the operations still running on the
+     * tree. A segment not measured since opening is measured first and only collected if due.
+     * Returns whether another segment may be due.
+     */
+    boolean collect(BLinkTree tree, Runnable commit) {
+        collectLock.lock();
+        try {
+            Segment segment = closed ? null : candidate();
+            if (segment == null) {
+                return false;
+            }
+            long size = segment.channel().size(); // sealed, so no longer growing
+            if (unmeasured.remove(segment.base())) {
+                long[] bytes = new long[2]; // written, garbage
+                forEachRecord(segment, size, (key, ref, value) -> {
+                    bytes[0] += length(ref);
+                    if (!ref.equals(tree.storedValue(key))) {
+                        bytes[1] += length(ref);
+                    }
+                });
+                written.put(segment.base(), bytes[0]);
+                garbage.put(segment.base(), bytes[1]);
+                if (!isDue(segment.base())) {
+                    return true;
+                }
+            }
+            List<Value[]> moved = new ArrayList<>();
+            forEachRecord(segment, size, (key, ref, value) -> {
+                if (ref.equals(tree.storedValue(key))) {
+                    Value copy = reference(append(key.bytes(), value.get()), length(ref));
+                    moved.add(new Value[]{key, ref, copy});
+                }
+            });
+            sync();
+            for (Value[] entry : moved) {
+                if (!tree.replace(entry[0], entry[1], entry[2])) {
+                    countGarbage(entry[2]); // overwritten meanwhile
+                }
+            }
+            commit.run();
+            collected.add(segment.base());
+            written.remove(segment.base());
+            garbage.remove(segment.base());
+            tree.afterRunningOperations(() -> {
+                segments.remove(segment.base());
+                collected.remove(segment.base());
+                closeQuietly(segment);
+                segment.file().delete();
+            });
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            collectLock.unlock();
+        }
+    }
+
+    /** Forces and closes the segments, once a running {@link #collect} is done. */
+    @Override
+    public void close() throws IOException {
+        collectLock.lock();
+        try {
+            closed = true;
+            Segment last;
+            synchronized (this) {
+                last = current;
+            }
+            if (last != null && last.channel().isOpen()) {
+                last.channel().force(false);
+            }
+            syncedOffset.accumulateAndGet(endOffset(), Math::max); // nothing is appended any more
+            for (Segment segment : segments.values()) {
+                segment.channel().close();
+            }
+        } finally {
+            collectLock.unlock();
+        }
+    }
+
+    private synchronized long endOffset() {
+        return endOffset;
+    }
+
+    /** Appends a record and returns the offset of its value. */
+    private synchronized long append(byte[] key, byte[] value) throws IOException {
+        int size = RECORD_HEADER_SIZE + key.length + value.length;
+        if (endOffset > current.base() && endOffset - current.base() + size > segmentSize) {
+            current.channel().force(false); // sync() only ever forces the newest segment
+            syncedOffset.accumulateAndGet(endOffset, Math::max);
+            startSegment(endOffset);
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.position(Integer.BYTES);
+        record.putInt(key.length).putInt(value.length).put(key).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, size - Integer.BYTES);
+        record.putInt(0, (int) crc.getValue()).flip();
+        long position = endOffset - current.base();
+        while (record.hasRemaining()) {
+            current.channel().write(record, position + record.position());
+        }
+        long valueOffset = endOffset + RECORD_HEADER_SIZE + key.length;
+        endOffset += size;
+        written.merge(current.base(), (long) value.length, Long::sum);
+        return valueOffset;
+    }
+
+    private synchronized void startSegment(long base) throws IOException {
+        File file = new File(basePath.getPath() + "." + String.format("%016x", base));
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        current = new Segment(base, file, channel);
+        segments.put(base, current);
+        endOffset = base;
+    }
+
+    /** The oldest sealed segment that is unmeasured or half garbage by value bytes, or {@code null}. */
+    private Segment candidate() {
+        Segment last;
+        synchronized (this) {
+            last = current;
+        }
+        for (Map.Entry<Long, Segment> entry : segments.headMap(last.base()).entrySet()) {
+            long base = entry.getKey();
+            if (!collected.contains(base) && (unmeasured.contains(base) || isDue(base))) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private boolean isDue(long base) {
+        return 2 * garbage.getOrDefault(base, 0L) >= written.getOrDefault(base, 0L);
+    }
+
+    private void countGarbage(Value ref) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(offset(ref));
+        if (entry != null && !collected.contains(entry.getKey())) {
+            garbage.merge(entry.getKey(), (long) length(ref), Long::sum);
+        }
+    }
+
+    /** Length of the records of {@code segment} that are whole and pass their checksum. */
+    private static long validLength(Segment segment) throws IOException {
+        long size = segment.channel().size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = 0;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            readFully(segment, header.clear(), position);
+            int keyLength = header.getInt(Integer.BYTES);
+            int valueLength = header.getInt(2 * Integer.BYTES);
+            long bodyLength = (long) keyLength + valueLength;
+            if (keyLength < 0 || valueLength < 0 || position + RECORD_HEADER_SIZE + bodyLength > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate((int) bodyLength);
+            readFully(segment, body, position + RECORD_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), Integer.BYTES, RECORD_HEADER_SIZE - Integer.BYTES);
+            crc.update(body.array());
+            if ((int) crc.getValue() != header.getInt(0)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + bodyLength;
+        }
+        return position;
+    }
+
+    private interface RecordVisitor {
+        /** {@code value} reads the record's value; records that are not needed are skipped unread. */
+        void visit(Value key, Value ref, ValueReader value) throws IOException;
+    }
+
+    private interface ValueReader {
+        byte[] get() throws IOException;
+    }
+
+    /** Reads the records of a sealed segment sequentially, up to {@code size}. */
+    private static void forEachRecord(Segment segment, long size, RecordVisitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file())))) {
+            long position = 0;
+            while (position < size) {
+                in.readInt(); // checked when the segment was written or opened
+                byte[] key = new byte[in.readInt()];
+                int valueLength = in.readInt();
+                in.readFully(key);
+                long valueOffset = segment.base() + position + RECORD_HEADER_SIZE + key.length;
+                boolean[] read = new boolean[1];
+                visitor.visit(new Value(key), reference(valueOffset, valueLength), () -> {
+                    read[0] = true;
+                    byte[] value = new byte[valueLength];
+                    in.readFully(value);
+                    return value;
+                });
+                if (!read[0]) {
+                    in.skipNBytes(valueLength);
+                }
+                position += RECORD_HEADER_SIZE + key.length + valueLength;
+            }
+        } catch (EOFException e) {
+            throw new IllegalStateException("Value log segment " + segment.file() + " ends early", e);
+        }
+    }
+
+    private static void readFully(Segment segment, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (segment.channel().read(dst, position + dst.position()) < 0) {
+                throw new IOException("Unexpected end of value log segment " + segment.file());
+            }
+        }
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel().close();
+        } catch (IOException ignored) {
+            // the file is deleted next
+        }
+    }
+
+    static Value reference(long offset, int length) {
+        return new Value(ByteBuffer.allocate(REF_SIZE).putLong(offset).putInt(length).array(), true);
+    }
+
+    static long offset(Value ref) {
+        return ByteBuffer.wrap(ref.bytes()).getLong(0);
+    }
+
+    static int length(Value ref) {
+        return ByteBuffer.wrap(ref.bytes()).getInt(Long.BYTES);
+    }
+}
@@ -0,0 +1,45 @@
+package org.rockydb;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Where a tree keeps the values it does not store in its leaves. A leaf holds a reference
+ * instead, a {@link Value} flagged as {@link Value#isOverflowRef() overflow reference}, which only
+ * the tree's storage can interpret: pages of an {@link OverflowChain}, or a record in a
+ * {@link ValueLog}.
+ */
+interface ValueStorage {
+
+    /**
+     * {@code value} as a leaf stores it under {@code key}: the value itself if it stays inline,
+     * otherwise a reference to where it was put.
+     */
+    Value stored(Value key, Value value);
+
+    /**
+     * Makes the values stored so far durable. A storage that needs it is registered with the
+     * pool, which runs this before log records that may refer to those values reach the log.
+     */
+    default void sync() {
+    }
+
+    /** Reads the whole value behind {@code ref}. */
+    Value read(Value ref);
+
+    /**
+     * Streams the value behind {@code ref}. {@code onClose} runs once, when the stream is closed,
+     * and ends the operation that keeps the value from being freed meanwhile.
+     */
+    InputStream open(Value ref, Runnable onClose);
+
+    /**
+     * Called within the operation that removed {@code ref} from the tree, once no leaf refers to
+     * it any more; anything freed must wait for the operations still running through
+     * {@code retired}.
+     */
+    void release(Value ref, RetiredPages retired);
+
+    /** Pages of the store that hold the value behind {@code ref}, to free with the tree's own. */
+    List<Long> pageIds(Value ref);
+}
@@ -0,0 +1,101 @@
+package org.rockydb;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link ReentrantReadWriteLock} with optimistic reads on top, in the manner of
+ * {@link java.util.concurrent.locks.StampedLock} but reentrant, which the pool relies on. A version counter is odd while the write lock is held and moves on every time it is
+ * taken, so a reader takes a stamp with {@link #tryOptimisticRead}, reads without locking, and
+ * keeps what it read only if {@link #validate} confirms that no writer got in meanwhile. An
+ * optimistic reader writes no shared state, which keeps the cache lines of hot frames shared.
+ * <p>
+ * What is read before validation may be torn, so readers must tolerate garbage: bounds-checked
+ * accesses that throw are fine, as long as nothing is trusted before the stamp is validated.
+ */
+final class VersionedLock {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong version = new AtomicLong(2); // even; 0 is never a valid stamp
+    private final Lock writeLock = new VersionedWriteLock();
+
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    Lock writeLock() {
+        return writeLock;
+    }
+
+    boolean isWriteLocked() {
+        return lock.isWriteLocked();
+    }
+
+    /** A stamp to pass to {@link #validate}, or {@code 0} while the write lock is held. */
+    long tryOptimisticRead() {
+        long stamp = version.get();
+        return (stamp & 1) == 0 ? stamp : 0;
+    }
+
+    /** Whether the write lock has not been taken since {@code stamp} was issued. */
+    boolean validate(long stamp) {
+        VarHandle.acquireFence(); // the reads being validated happen before the version check
+        return stamp != 0 && version.get() == stamp;
+    }
+
+    private final class VersionedWriteLock implements Lock {
+        private final Lock delegate = lock.writeLock();
+
+        @Override
+        public void lock() {
+            delegate.lock();
+            acquired();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            delegate.lockInterruptibly();
+            acquired();
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (!delegate.tryLock()) {
+                return false;
+            }
+            acquired();
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+            if (!delegate.tryLock(timeout, unit)) {
+                return false;
+            }
+            acquired();
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+            if (lock.getWriteHoldCount() == 1) {
+                version.incrementAndGet(); // even again: the frame is consistent
+            }
+            delegate.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return delegate.newCondition();
+        }
+
+        private void acquired() {
+            if (lock.getWriteHoldCount() == 1) {
+                version.incrementAndGet(); // odd before the first byte changes
+            }
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package org.rockydb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Redo log kept next to the database file. Every change to a page is appended here before the
+ * page itself may reach the database file, so after a crash the pages can be brought back to the
+ * last durable change by replaying the log. The log is a sequence of segment files named
+ * {@code <db>.wal.<base LSN>}, each laid out as:
+ * <pre>
+ *  0  magic          int
+ *  4  version        int
+ *  8  base LSN       long
+ * 16  records        length int, CRC32 int, then the body: type byte and payload
+ * </pre>
+ * A record's LSN is its segment's base plus the file offset just past it, so LSNs grow across
+ * segments. Records are collected in a buffer and written in bulk; {@link #flush} implements group
+ * commit: one caller at a time forces the file, and everyone who appended before it started is
+ * covered by that single {@code force}. A segment is forced when the log moves on to the next
+ * one, and whole segments behind a checkpoint are deleted by {@link #truncateBefore}. Replay stops
+ * at the first torn or corrupt record.
+ */
+final class WriteAheadLog implements AutoCloseable {
+    static final byte PAGE = 1;
+    static final byte PUT = 2;
+    static final byte DELETE = 3;
+    static final byte ROOT = 4;
+    static final byte FREE = 5;
+    static final byte PUT_OVERFLOW_REF = 6; // a PUT whose value is an OverflowChain reference
+
+    static final int HEADER_SIZE = 16;
+    static final int BUFFER_SIZE = 1024 * 1024;
+    static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+    private static final int MAGIC = 0x52574C47;
+    private static final int VERSION = 2;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final File basePath;
+    private final long segmentSize;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final LongAdder forces = new LongAdder();
+    private final List<Segment> segments = new ArrayList<>(); // guarded by this, oldest first
+    private Segment current; // guarded by this; null until reset
+    private long writtenLsn; // guarded by this; end of what the channels hold
+    private long endLsn;
+    private volatile long durableLsn;
+    private volatile Runnable beforeWrite = () -> {
+    };
+
+    /** Receives replayed records in log order. */
+    interface Redo {
+        void page(long pageId, ByteBuffer page);
+
+        void put(long pageId, Value key, Value value);
+
+        void delete(long pageId, Value key);
+
+        void root(long rootId);
+
+        void free(long pageId);
+    }
+
+    private record Segment(long base, File file, FileChannel channel) {
+    }
+
+    WriteAheadLog(File basePath, long startLsn) throws IOException {
+        this(basePath, startLsn, SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the segments found at {@code basePath}. They can be {@link #replay replayed}, and the
+     * log has to be {@link #reset} before anything is appended. New LSNs start at
+     * {@code startLsn} or past the existing records, whichever is later.
+     */
+    WriteAheadLog(File basePath, long startLsn, long segmentSize) throws IOException {
+        this.basePath = basePath;
+        this.segmentSize = segmentSize;
+        this.endLsn = startLsn;
+        try {
+            for (File file : segmentFiles(basePath)) {
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                segments.add(new Segment(readBase(file, channel), file, channel));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        segments.sort(Comparator.comparingLong(Segment::base));
+    }
+
+    static File fileFor(File dbFile) {
+        return new File(dbFile.getPath() + ".wal");
+    }
+
+    /** The segment files of the log at {@code basePath}, in no particular order. */
+    static List<File> segmentFiles(File basePath) {
+        File dir = basePath.getAbsoluteFile().getParentFile();
+        String prefix = basePath.getName() + ".";
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && isHex(name.substring(prefix.length())));
+        return files == null ? List.of() : Arrays.asList(files);
+    }
+
+    private static boolean isHex(String s) {
+        return !s.isEmpty() && s.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    private static long readBase(File file, FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a RockyDB log segment: " + file);
+        }
+        return header.getLong(8);
+    }
+
+    /**
+     * Logs a full image of {@code page}. Only the used parts of a slotted page are stored: the
+     * header and slot array, and the cell heap; the free space between them reads back as zeros.
+     * Of an overflow page only the header and the data it holds are stored.
+     */
+    long logPage(long pageId, ByteBuffer page) {
+        int headEnd = Store.PAGE_SIZE;
+        int tailStart = Store.PAGE_SIZE;
+        if (ByteUtils.isSlotted(page.get(0))) {
+            headEnd = SlottedPage.slotAt(page, SlottedPage.count(page));
+            tailStart = page.getShort(SlottedPage.HEAP_START_OFFSET);
+        } else if (OverflowChain.isOverflowPage(page)) {
+            headEnd = OverflowChain.usedBytes(page);
+        }
+        int head = headEnd;
+        int tail = tailStart;
+        return append(PAGE, Long.BYTES + 2 * Integer.BYTES + head + Store.PAGE_SIZE - tail, body -> {
+            body.putLong(pageId).putInt(head).putInt(tail);
+            body.put(page.duplicate().clear().limit(head));
+            body.put(page.duplicate().clear().position(tail));
+        });
+    }
+
+    long logPut(long pageId, Value key, Value value) {
+        byte[] k = key.bytes();
+        byte[] v = value.bytes();
+        byte type = value.isOverflowRef() ? PUT_OVERFLOW_REF : PUT;
+        return append(type, Long.BYTES + 2 * Integer.BYTES + k.length + v.length, body ->
+                body.putLong(pageId).putInt(k.length).put(k).putInt(v.length).put(v));
+    }
+
+    long logDelete(long pageId, Value key) {
+        byte[] k = key.bytes();
+        return append(DELETE, Long.BYTES + Integer.BYTES + k.length, body ->
+                body.putLong(pageId).putInt(k.length).put(k));
+    }
+
+    long logRoot(long rootId) {
+        return append(ROOT, Long.BYTES, body -> body.putLong(rootId));
+    }
+
+    long logFree(long pageId) {
+        return append(FREE, Long.BYTES, body -> body.putLong(pageId));
+    }
+
+    private synchronized long append(byte type, int payloadSize, Consumer<ByteBuffer> payload) {
+        if (current == null) {
+            throw new IllegalStateException("log must be reset before appending");
+        }
+        int size = RECORD_HEADER_SIZE + 1 + payloadSize;
+        if (buffer.remaining() < size) {
+            spill();
+        }
+        ByteBuffer target = size <= buffer.capacity() ? buffer : ByteBuffer.allocate(size);
+        int start = target.position();
+        target.position(start + RECORD_HEADER_SIZE);
+        target.put(type);
+        payload.accept(target);
+        crc.reset();
+        crc.update(target.duplicate().limit(target.position()).position(start + RECORD_HEADER_SIZE));
+        target.putInt(start, size - RECORD_HEADER_SIZE);
+        target.putInt(start + Integer.BYTES, (int) crc.getValue());
+        if (target != buffer) {
+            write(target.flip());
+        }
+        return appendedLsn();
+    }
+
+    /** LSN just past the last appended record. */
+    synchronized long appendedLsn() {
+        return writtenLsn + buffer.position();
+    }
+
+    long durableLsn() {
+        return durableLsn;
+    }
+
+    /**
+     * Returns once every record up to {@code lsn} is on stable storage. If another caller is
+     * already forcing the file this waits for it, and usually finds its own records covered.
+     */
+    void flush(long lsn) {
+        if (durableLsn >= lsn) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            if (durableLsn >= lsn) {
+                return;
+            }
+            long target;
+            FileChannel channel;
+            synchronized (this) {
+                spill();
+                target = writtenLsn;
+                channel = current.channel();
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // the segment was forced when the log moved past it and has been truncated since
+            }
+            forces.increment();
+            durableLsn = target;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Has {@code hook} run whenever records are about to reach a segment file, on the appending or
+     * flushing thread with the log locked. Records may then refer to data kept elsewhere that the
+     * hook makes durable, such as the values in a {@link ValueLog}: whatever was stored there
+     * before a record was appended is on stable storage before the record can be, and a single
+     * {@link #flush} covers both.
+     */
+    void beforeWrite(Runnable hook) {
+        this.beforeWrite = hook;
+    }
+
+    /** Makes everything appended so far durable. */
+    void flushAll() {
+        flush(appendedLsn());
+    }
+
+    /** Number of times the log has been forced to stable storage. */
+    long forces() {
+        return forces.sum();
+    }
+
+    /**
+     * Feeds every intact record from {@code fromLsn} on to {@code redo} and returns how many there
+     * were. Replay stops at the first torn or corrupt record, which can only be the tail of the
+     * last forced write.
+     */
+    synchronized int replay(long fromLsn, Redo redo) throws IOException {
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        int replayed = 0;
+        for (Segment segment : segments) {
+            long end = segment.channel().size();
+            long position = Math.max(HEADER_SIZE, fromLsn - segment.base());
+            while (position + RECORD_HEADER_SIZE <= end) {
+                recordHeader.clear();
+                readFully(segment, recordHeader, position);
+                int length = recordHeader.getInt(0);
+                if (length <= 0 || position + RECORD_HEADER_SIZE + length > end) {
+                    break;
+                }
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(segment, body, position + RECORD_HEADER_SIZE);
+                crc.reset();
+                crc.update(body.flip());
+                if ((int) crc.getValue() != recordHeader.getInt(Integer.BYTES)) {
+                    break;
+                }
+                apply(body.rewind(), redo);
+                position += RECORD_HEADER_SIZE + length;
+                replayed++;
+            }
+            endLsn = Math.max(endLsn, segment.base() + position);
+            if (position < end) {
+                break; // torn tail; anything in later segments was never acknowledged
+            }
+        }
+        return replayed;
+    }
+
+    /** LSN just past the last intact record found by {@link #replay}; where {@link #reset} starts. */
+    synchronized long endLsn() {
+        return Math.max(endLsn, writtenLsn);
+    }
+
+    private static void apply(ByteBuffer body, Redo redo) {
+        byte type = body.get();
+        switch (type) {
+            case PAGE -> {
+                long pageId = body.getLong();
+                int head = body.getInt();
+                int tail = body.getInt();
+                ByteBuffer page = ByteBuffer.allocate(Store.PAGE_SIZE);
+                page.put(0, body, body.position(), head);
+                page.put(tail, body, body.position() + head, Store.PAGE_SIZE - tail);
+                redo.page(pageId, page);
+            }
+            case PUT -> redo.put(body.getLong(), readValue(body), readValue(body));
+            case PUT_OVERFLOW_REF -> redo.put(body.getLong(), readValue(body), readValue(body, true));
+            case DELETE -> redo.delete(body.getLong(), readValue(body));
+            case ROOT -> redo.root(body.getLong());
+            case FREE -> redo.free(body.getLong());
+            default -> throw new IllegalStateException("Unknown log record type " + type);
+        }
+    }
+
+    private static Value readValue(ByteBuffer body) {
+        return readValue(body, false);
+    }
+
+    private static Value readValue(ByteBuffer body, boolean overflowRef) {
+        byte[] bytes = new byte[body.getInt()];
+        body.get(bytes);
+        return new Value(bytes, overflowRef);
+    }
+
+    /**
+     * Drops every record and starts an empty segment past them. Only safe once the pages they
+     * describe are durable in the database file, and only while nobody is appending.
+     */
+    synchronized void reset() {
+        try {
+            for (Segment segment : segments) {
+                segment.channel().close();
+                Files.deleteIfExists(segment.file().toPath());
+            }
+            segments.clear();
+            buffer.clear();
+            current = null;
+            startSegment(Math.max(endLsn, writtenLsn));
+            durableLsn = writtenLsn;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the segments holding only records before {@code lsn}. The segment being appended to
+     * is always kept.
+     */
+    synchronized void truncateBefore(long lsn) {
+        try {
+            while (segments.size() > 1 && segments.get(1).base() <= lsn) {
+                Segment oldest = segments.remove(0);
+                oldest.channel().close();
+                Files.deleteIfExists(oldest.file().toPath());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Number of segment files currently making up the log. */
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    private void startSegment(long base) throws IOException {
+        File file = new File(basePath.getPath() + "." + String.format("%016x", base));
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putLong(base).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+        current = new Segment(base, file, channel);
+        segments.add(current);
+        writtenLsn = base + HEADER_SIZE;
+    }
+
+    /** Writes the buffered records to the current segment without forcing them. */
+    private void spill() {
+        if (buffer.position() > 0) {
+            write(buffer.flip());
+            buffer.clear();
+        }
+    }
+
+    private void write(ByteBuffer src) {
+        beforeWrite.run();
+        try {
+            while (src.hasRemaining()) {
+                writtenLsn += current.channel().write(src, writtenLsn - current.base());
+            }
+            if (writtenLsn - current.base() >= segmentSize) {
+                current.channel().force(false); // flush() only ever forces the newest segment
+                startSegment(writtenLsn);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void readFully(Segment segment, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (segment.channel().read(dst, position + dst.position()) < 0) {
+                throw new IOException("Unexpected end of log segment " + segment.file());
+            }
+        }
+    }
+
+    /** Closes the segments without flushing buffered records, which are lost as in a crash. */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.channel().close();
+        }
+    }
+
+    /** Closes and removes the log; for a clean shutdown once every page is durable. */
+    synchronized void delete() throws IOException {
+        close();
+        for (Segment segment : segments) {
+            Files.deleteIfExists(segment.file().toPath());
+        }
+        segments.clear();
+    }
+}
@@ -7,6 +7,30 @@ public interface WriteHandle extends AutoCloseable {
 
     void set(Node node);
 
+    /**
+     * Inserts or overwrites {@code key} directly in the latched leaf page. Returns {@code false},
+     * leaving the page untouched, when the page cannot be edited in place, does not cover
+     * {@code key}, has no room left, or holds an overflow reference for {@code key}; the caller then
+     * falls back to {@link #get()} and {@link #set(Node)}, splitting if needed.
+     */
+    boolean putInPlace(Value key, Value value);
+
+    /**
+     * Removes {@code key} directly from the latched leaf page, doing nothing if the key is absent.
+     * Returns {@code false} when the page cannot be edited in place, does not cover {@code key}, or
+     * holds an overflow reference for it.
+     */
+    boolean removeInPlace(Value key);
+
+    /**
+     * Bytes the latched node takes up in its page, as {@link LeafNode#size()} and
+     * {@link BranchNode#size()} measure them. The default decodes the node.
+     */
+    default int nodeSize() {
+        Node node = get();
+        return node.isLeaf() ? ((LeafNode) node).size() : ((BranchNode) node).size();
+    }
+
     @Override
     void close();
 }
@@ -1,6 +1,7 @@
 package org.rockydb;
 
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -9,16 +10,27 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -120,6 +132,59 @@ class BLinkTreeIntegrationTest {
         }
     }
 
+    @ParameterizedTest
+    @MethodSource("parameters")
+    void scanDuringConcurrentSplitsSeesEverySeededKeyInOrder(int threads, int elementsPerThread, int insertsPerThread) throws Exception {
+        openTree(threads, elementsPerThread, insertsPerThread);
+        for (long id = 0; id < elementsPerThread; id++) {
+            tree.addValue(keyOf(2 * id), valueOf(2 * id));
+        }
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int threadId = t;
+                executor.submit(() -> {
+                    try {
+                        Random rnd = new Random(5_000L + threadId);
+                        for (int j = 0; j < insertsPerThread; j++) {
+                            long odd = 2L * rnd.nextLong(elementsPerThread) + 1;
+                            tree.addValue(keyOf(odd), valueOf(odd));
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+
+            while (done.getCount() > 0) {
+                Set<Long> seeded = new HashSet<>();
+                Value previous = null;
+                Iterator<Map.Entry<Value, Value>> cursor = tree.scan(null, null);
+                while (cursor.hasNext()) {
+                    Map.Entry<Value, Value> entry = cursor.next();
+                    if (previous != null) {
+                        assertTrue(previous.compareTo(entry.getKey()) < 0, "scan out of order");
+                    }
+                    previous = entry.getKey();
+                    long id = ByteBuffer.wrap(entry.getKey().bytes()).getLong();
+                    if (id % 2 == 0) {
+                        seeded.add(id);
+                    }
+                }
+                assertEquals(elementsPerThread, seeded.size(), "scan skipped a seeded key");
+            }
+            assertTrue(done.await(90, TimeUnit.SECONDS), "writers did not finish in time");
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "executor did not terminate");
+        }
+        assertEquals(0, errors.get(), "writers reported errors");
+    }
+
     private void runWriters(int threads, int elementsPerThread, int insertsPerThread,
                             Map<Long, byte[]> expected, AtomicInteger errors) throws InterruptedException {
         ExecutorService executor = Executors.newFixedThreadPool(threads);
@@ -176,4 +241,465 @@ class BLinkTreeIntegrationTest {
             }
         }
     }
+
+    @Test
+    void deleteWaveMergesLeavesAndFreesTheirPages() throws Exception {
+        openTree(1, 4000, 0);
+        for (long id = 0; id < 4000; id++) {
+            tree.addValue(keyOf(id), valueOf(id));
+        }
+        int pagesBefore = tree.pageIds().size();
+
+        for (long id = 0; id < 4000; id++) {
+            if (id % 20 != 0) {
+                tree.delete(keyOf(id));
+            }
+        }
+
+        int pagesAfter = tree.pageIds().size();
+        assertTrue(pagesAfter * 4 < pagesBefore, pagesBefore + " pages before, " + pagesAfter + " after");
+        assertTrue(pool.getFreePages() >= pagesBefore - pagesAfter - 1, "freed " + pool.getFreePages());
+        TreeSet<Value> kept = new TreeSet<>();
+        for (long id = 0; id < 4000; id += 20) {
+            kept.add(keyOf(id));
+            assertEquals(valueOf(id), tree.get(keyOf(id)));
+        }
+        Iterator<Map.Entry<Value, Value>> cursor = tree.scan(null, null);
+        for (Value key : kept) {
+            assertTrue(cursor.hasNext(), "scan ended early");
+            assertEquals(key, cursor.next().getKey());
+        }
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    void readersAndScansStayCorrectWhileDeletesMergeNodes() throws Exception {
+        openTree(4, 3000, 0);
+        for (long id = 0; id < 3000; id++) {
+            tree.addValue(keyOf(id), valueOf(id));
+        }
+        int deleters = 2;
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(deleters + 1);
+        CountDownLatch done = new CountDownLatch(deleters);
+        try {
+            for (int t = 0; t < deleters; t++) {
+                int threadId = t;
+                executor.submit(() -> {
+                    try {
+                        // keys divisible by 10 stay; the rest go, in two interleaved halves
+                        for (long id = threadId; id < 3000; id += deleters) {
+                            if (id % 10 != 0) {
+                                tree.delete(keyOf(id));
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            executor.submit(() -> {
+                Random rnd = new Random(42);
+                while (done.getCount() > 0) {
+                    long kept = 10L * rnd.nextInt(300);
+                    try {
+                        if (!valueOf(kept).equals(tree.get(keyOf(kept)))) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+
+            while (done.getCount() > 0) {
+                Set<Long> kept = new HashSet<>();
+                Value previous = null;
+                Iterator<Map.Entry<Value, Value>> cursor = tree.scan(null, null);
+                while (cursor.hasNext()) {
+                    Map.Entry<Value, Value> entry = cursor.next();
+                    if (previous != null) {
+                        assertTrue(previous.compareTo(entry.getKey()) < 0, "scan out of order");
+                    }
+                    previous = entry.getKey();
+                    long id = ByteBuffer.wrap(entry.getKey().bytes()).getLong();
+                    if (id % 10 == 0) {
+                        kept.add(id);
+                    }
+                }
+                assertEquals(300, kept.size(), "scan skipped a kept key");
+            }
+            assertTrue(done.await(90, TimeUnit.SECONDS), "deleters did not finish in time");
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "executor did not terminate");
+        }
+
+        assertEquals(0, errors.get(), "readers or deleters reported errors");
+        assertTrue(pool.getFreePages() > 0);
+        for (long id = 0; id < 3000; id++) {
+            assertEquals(id % 10 == 0 ? valueOf(id) : null, tree.get(keyOf(id)), "wrong value for key " + id);
+        }
+    }
+
+    /**
+     * Writes a root branch over the given leaves, each linked to the next and bounded by its
+     * separator in the root, and makes it the root.
+     */
+    private long[] writeLeaves(Value[][] leafKeys) {
+        long[] ids = new long[leafKeys.length];
+        Value[] highKeys = new Value[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pool.nodeIdGenerator().get();
+            Value[] keys = leafKeys[i];
+            highKeys[i] = keys.length > 0 ? keys[keys.length - 1] : new Value(new byte[]{(byte) ('c' + 3 * i)});
+        }
+        highKeys[ids.length - 1] = new Value(new byte[]{'z'});
+        for (int i = 0; i < ids.length; i++) {
+            Value[] keys = leafKeys[i];
+            Value[] values = new Value[keys.length];
+            Arrays.fill(values, new Value(new byte[]{1}));
+            boolean last = i + 1 == ids.length;
+            pool.writeNode(new LeafNode(ids[i], 1, keys, values, last ? -1L : ids[i + 1], last ? null : highKeys[i]));
+        }
+        long rootId = pool.nodeIdGenerator().get();
+        pool.writeNode(new BranchNode(rootId, 2, highKeys, ids.clone(), -1L));
+        pool.updateRootId(rootId);
+        return ids;
+    }
+
+    private static Value[] keys(String... keys) {
+        return Arrays.stream(keys).map(k -> new Value(k.getBytes())).toArray(Value[]::new);
+    }
+
+    @Test
+    void getsDuringAMergeFindTheKeysOfARightSiblingNextToAnEmptyLeaf() throws Exception {
+        openTree(1, 0, 0);
+        writeLeaves(new Value[][]{keys(), keys("m", "n")});
+        CountDownLatch parentWritten = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        BLinkTree pausing = new BLinkTree(new PausingStore(pool, parentWritten, resume));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // an absent key leaves the empty leaf underfull, which asks for a merge with its sibling
+            Future<?> deleting = executor.submit(() -> pausing.delete(new Value("a".getBytes())));
+            assertTrue(parentWritten.await(10, TimeUnit.SECONDS), "the merge did not update the parent");
+
+            Value result = pausing.get(new Value("m".getBytes()));
+
+            resume.countDown();
+            deleting.get();
+            assertEquals(new Value(new byte[]{1}), result);
+        } finally {
+            resume.countDown();
+            executor.shutdown();
+        }
+        assertEquals(new Value(new byte[]{1}), pausing.get(new Value("n".getBytes())));
+    }
+
+    @Test
+    void anEmptiedLeafIsFoldedIntoItsLeftSibling() throws Exception {
+        openTree(1, 0, 0);
+        long[] ids = writeLeaves(new Value[][]{keys("a", "b"), keys(), keys("m", "n")});
+
+        tree.delete(new Value("e".getBytes()));
+
+        List<Long> pages = tree.pageIds();
+        assertFalse(pages.contains(ids[1]), "empty leaf still linked: " + pages);
+        assertTrue(pages.contains(ids[0]) && pages.contains(ids[2]));
+        for (String key : List.of("a", "b", "m", "n")) {
+            assertEquals(new Value(new byte[]{1}), tree.get(new Value(key.getBytes())), key);
+        }
+    }
+
+    @Test
+    void anEmptiedFirstChildTakesInItsRightSibling() throws Exception {
+        openTree(1, 0, 0);
+        long[] ids = writeLeaves(new Value[][]{keys("a"), keys("m", "n")});
+
+        tree.delete(new Value("a".getBytes()));
+
+        List<Long> pages = tree.pageIds();
+        assertTrue(pages.contains(ids[0]), "first leaf unlinked: " + pages);
+        assertFalse(pages.contains(ids[1]), "right sibling still linked: " + pages);
+        assertArrayEquals(keys("m", "n"), ((LeafNode) pool.readNode(ids[0])).getKeys());
+        assertNull(tree.get(new Value("a".getBytes())));
+        for (String key : List.of("m", "n")) {
+            assertEquals(new Value(new byte[]{1}), tree.get(new Value(key.getBytes())), key);
+        }
+        assertEquals(Arrays.asList(keys("m", "n")), scannedKeysUpTo(new Value("z".getBytes())));
+    }
+
+    @Test
+    void keysBetweenALeafAndItsSeparatorStayFindableOnceTheLeafIsEmptied() throws Exception {
+        openTree(1, 0, 0);
+        Value value = new Value(new byte[1900]);
+        for (char c = 'A'; c <= 'L'; c++) {
+            tree.addValue(new Value((c + "zzzz").getBytes()), value);
+        }
+        BranchNode root = (BranchNode) pool.readNode(pool.rootId());
+        LeafNode first = (LeafNode) pool.readNode(root.getPointers()[0]);
+        Value between = new Value((new String(first.biggestKey().bytes()) + "z").getBytes());
+        assertTrue(between.compareTo(root.getKeys()[0]) < 0, "separator " + root.getKeys()[0] + " is not truncated");
+
+        tree.addValue(between, value);
+        for (Value key : first.getKeys()) {
+            tree.delete(key);
+        }
+
+        assertEquals(value, tree.get(between));
+        assertEquals(List.of(between), scannedKeysUpTo(between));
+        tree.addValue(between, new Value(new byte[]{2}));
+        tree.delete(between);
+        assertNull(tree.get(between));
+        assertEquals(List.of(), scannedKeysUpTo(between));
+    }
+
+    private List<Value> scannedKeysUpTo(Value to) {
+        List<Value> keys = new ArrayList<>();
+        tree.scan(null, null).forEachRemaining(entry -> {
+            if (entry.getKey().compareTo(to) <= 0) {
+                keys.add(entry.getKey());
+            }
+        });
+        return keys;
+    }
+
+    /** Lets a test run between a merge's parent write and its left node write. */
+    private record PausingStore(BufferedPool pool, CountDownLatch parentWritten, CountDownLatch resume) implements Store {
+        @Override
+        public Node readNode(long id) {
+            return pool.readNode(id);
+        }
+
+        @Override
+        public SearchResult search(long id, Value key) {
+            return pool.search(id, key);
+        }
+
+        @Override
+        public Node writeNode(Node node) {
+            return pool.writeNode(node);
+        }
+
+        @Override
+        public WriteHandle latchForWrite(long id) {
+            WriteHandle handle = pool.latchForWrite(id);
+            return new WriteHandle() {
+                @Override
+                public Node get() {
+                    return handle.get();
+                }
+
+                @Override
+                public void set(Node node) {
+                    handle.set(node);
+                    if (!node.isLeaf()) {
+                        parentWritten.countDown();
+                        try {
+                            resume.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+
+                @Override
+                public boolean putInPlace(Value key, Value value) {
+                    return handle.putInPlace(key, value);
+                }
+
+                @Override
+                public boolean removeInPlace(Value key) {
+                    return handle.removeInPlace(key);
+                }
+
+                @Override
+                public void close() {
+                    handle.close();
+                }
+            };
+        }
+
+        @Override
+        public Supplier<Long> nodeIdGenerator() {
+            return pool.nodeIdGenerator();
+        }
+
+        @Override
+        public void updateRootId(long id) {
+            pool.updateRootId(id);
+        }
+
+        @Override
+        public long rootId() {
+            return pool.rootId();
+        }
+
+        @Override
+        public void readRawPage(long id, ByteBuffer page) {
+            pool.readRawPage(id, page);
+        }
+
+        @Override
+        public void writeRawPage(long id, ByteBuffer page) {
+            pool.writeRawPage(id, page);
+        }
+    }
+
+    @Test
+    void keysWithLongSharedPrefixPackManyMoreEntriesPerPage() throws Exception {
+        openTree(1, 5000, 0);
+        String prefix = "tenant-000000042/2024-06-01T00:00:00Z/events/";
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 5000; id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, new Random(7));
+        long keyBytes = 0;
+        for (long id : ids) {
+            Value key = new Value((prefix + String.format("%08d", id)).getBytes());
+            tree.addValue(key, valueOf(id));
+            keyBytes += LeafNode.sizeOfCell(key, valueOf(id));
+        }
+
+        int pages = tree.pageIds().size();
+        long uncompressedLeaves = keyBytes / Node.MAX_NODE_SIZE + 1;
+        assertTrue(pages < uncompressedLeaves, pages + " pages, " + uncompressedLeaves + " leaves needed uncompressed");
+        Iterator<Map.Entry<Value, Value>> cursor = tree.scan(null, null);
+        for (long id = 0; id < 5000; id++) {
+            Value key = new Value((prefix + String.format("%08d", id)).getBytes());
+            assertEquals(valueOf(id), tree.get(key), "wrong value for key " + id);
+            assertEquals(key, cursor.next().getKey());
+        }
+        assertFalse(cursor.hasNext());
+    }
+
+    private static Value blobOf(long id, int length) {
+        byte[] bytes = new byte[length];
+        new Random(id).nextBytes(bytes);
+        return new Value(bytes);
+    }
+
+    @Test
+    void largeValuesLiveInOverflowPagesAndLeavesStayDense() throws Exception {
+        openTree(1, 300, 0);
+        int[] lengths = {10, OverflowChain.INLINE_LIMIT + 1, Store.PAGE_SIZE, 3 * Store.PAGE_SIZE + 5, 100_000};
+        for (long id = 0; id < 300; id++) {
+            tree.addValue(keyOf(id), blobOf(id, lengths[(int) (id % lengths.length)]));
+        }
+
+        Map<Value, Value> all = tree.getAll(List.of(keyOf(3), keyOf(4)));
+        for (long id = 0; id < 300; id++) {
+            Value expected = blobOf(id, lengths[(int) (id % lengths.length)]);
+            assertEquals(expected, tree.get(keyOf(id)), "wrong value for key " + id);
+            try (InputStream in = tree.openValue(keyOf(id))) {
+                assertArrayEquals(expected.bytes(), in.readAllBytes(), "wrong streamed value for key " + id);
+            }
+        }
+        int scanned = 0;
+        for (Iterator<Map.Entry<Value, Value>> cursor = tree.scan(null, null); cursor.hasNext(); scanned++) {
+            Map.Entry<Value, Value> entry = cursor.next();
+            long id = ByteBuffer.wrap(entry.getKey().bytes()).getLong();
+            assertEquals(blobOf(id, lengths[(int) (id % lengths.length)]), entry.getValue(), "wrong scanned value for key " + id);
+        }
+        assertEquals(300, scanned);
+        assertEquals(blobOf(3, lengths[3]), all.get(keyOf(3)));
+        assertEquals(blobOf(4, lengths[4]), tree.getAsync(keyOf(4)).get());
+        assertNull(tree.openValue(keyOf(1000)));
+
+        Node root = pool.readNode(pool.rootId());
+        assertTrue(root.isLeaf(), "300 keys with their references should fit one leaf");
+    }
+
+    @Test
+    void overwritingAndDeletingLargeValuesFreesTheirOverflowPages() throws Exception {
+        openTree(1, 100, 0);
+        for (long id = 0; id < 100; id++) {
+            tree.addValue(keyOf(id), blobOf(id, 2 * Store.PAGE_SIZE));
+        }
+        int pagesBefore = tree.pageIds().size();
+
+        for (long id = 0; id < 100; id++) {
+            if (id % 2 == 0) {
+                tree.addValue(keyOf(id), valueOf(id));
+            } else {
+                tree.delete(keyOf(id));
+            }
+        }
+
+        int pagesAfter = tree.pageIds().size();
+        assertEquals(pagesBefore - 100 * 3, pagesAfter);
+        assertTrue(pool.getFreePages() >= 100 * 3, "freed " + pool.getFreePages());
+        for (long id = 0; id < 100; id++) {
+            assertEquals(id % 2 == 0 ? valueOf(id) : null, tree.get(keyOf(id)), "wrong value for key " + id);
+        }
+    }
+
+    @Test
+    void readersSeeWholeLargeValuesWhileTheyAreOverwritten() throws Exception {
+        openTree(3, 20, 0);
+        int length = 2 * Store.PAGE_SIZE;
+        for (long id = 0; id < 20; id++) {
+            tree.addValue(keyOf(id), blobOf(id, length));
+        }
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            executor.submit(() -> {
+                try {
+                    for (int round = 1; round <= 50; round++) {
+                        for (long id = 0; id < 20; id++) {
+                            tree.addValue(keyOf(id), blobOf(id + 100L * round, length));
+                        }
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+            executor.submit(() -> {
+                Random rnd = new Random(42);
+                while (done.getCount() > 0) {
+                    try {
+                        Value value = tree.get(keyOf(rnd.nextInt(20)));
+                        if (value == null || value.bytes().length != length) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+
+            while (done.getCount() > 0) {
+                Iterator<Map.Entry<Value, Value>> cursor = tree.scan(null, null);
+                int seen = 0;
+                while (cursor.hasNext()) {
+                    Map.Entry<Value, Value> entry = cursor.next();
+                    long id = ByteBuffer.wrap(entry.getKey().bytes()).getLong();
+                    boolean known = false;
+                    for (int round = 0; round <= 50 && !known; round++) {
+                        known = blobOf(id + 100L * round, 16).equals(new Value(Arrays.copyOf(entry.getValue().bytes(), 16)));
+                    }
+                    assertTrue(known, "scan returned a value never written for key " + id);
+                    seen++;
+                }
+                assertEquals(20, seen);
+            }
+            assertTrue(done.await(90, TimeUnit.SECONDS), "writer did not finish in time");
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "executor did not terminate");
+        }
+
+        assertEquals(0, errors.get(), "readers or writers reported errors");
+        for (long id = 0; id < 20; id++) {
+            assertEquals(blobOf(id + 100L * 50, length), tree.get(keyOf(id)));
+        }
+    }
 }
@@ -3,6 +3,11 @@ package org.rockydb;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -24,26 +29,24 @@ class BLinkTreeTest {
     @Test
     void getTraversesFromRootToLeafAndReturnsValue() {
         Store store = mock(Store.class);
-        LeafNode leaf = new LeafNode(1, 1, new Value[]{v("a")}, new Value[]{v("1")}, -1L);
-        BranchNode root = new BranchNode(2L, 2, new Value[]{v("a")}, new long[]{1}, -1L);
         when(store.rootId()).thenReturn(2L);
-        when(store.readNode(2L)).thenReturn(root);
-        when(store.readNode(1L)).thenReturn(leaf);
+        when(store.search(2L, v("a"))).thenReturn(new Store.SearchResult(1L, null));
+        when(store.search(1L, v("a"))).thenReturn(new Store.SearchResult(-1L, v("1")));
         BLinkTree given = new BLinkTree(store);
 
         Value result = given.get(v("a"));
 
         assertEquals(v("1"), result);
-        verify(store).readNode(2L);
-        verify(store).readNode(1L);
+        verify(store).search(2L, v("a"));
+        verify(store).search(1L, v("a"));
+        verify(store, never()).readNode(anyLong());
     }
 
     @Test
     void getReturnsNullWhenKeyIsAbsent() {
         Store store = mock(Store.class);
-        LeafNode root = new LeafNode(1, 1, new Value[]{v("a")}, new Value[]{v("1")}, -1L);
         when(store.rootId()).thenReturn(1L);
-        when(store.readNode(1L)).thenReturn(root);
+        when(store.search(1L, v("z"))).thenReturn(new Store.SearchResult(-1L, null));
         BLinkTree given = new BLinkTree(store);
 
         Value result = given.get(v("z"));
@@ -51,6 +54,26 @@ class BLinkTreeTest {
         assertNull(result);
     }
 
+    @Test
+    void getAllReadsEachNodeOnceForSharedDescent() {
+        Store store = mock(Store.class);
+        LeafNode leaf1 = new LeafNode(1, 1, new Value[]{v("a"), v("b")}, new Value[]{v("1"), v("2")}, 2L);
+        LeafNode leaf2 = new LeafNode(2, 1, new Value[]{v("c"), v("d")}, new Value[]{v("3"), v("4")}, -1L);
+        BranchNode root = new BranchNode(3L, 2, new Value[]{v("b"), v("d")}, new long[]{1, 2}, -1L);
+        when(store.rootId()).thenReturn(3L);
+        when(store.readNode(3L)).thenReturn(root);
+        when(store.readNode(1L)).thenReturn(leaf1);
+        when(store.readNode(2L)).thenReturn(leaf2);
+        BLinkTree given = new BLinkTree(store);
+
+        Map<Value, Value> result = given.getAll(List.of(v("d"), v("a"), v("x"), v("b"), v("c")));
+
+        assertEquals(Map.of(v("a"), v("1"), v("b"), v("2"), v("c"), v("3"), v("d"), v("4")), result);
+        verify(store, times(1)).readNode(3L);
+        verify(store, times(1)).readNode(1L);
+        verify(store, times(1)).readNode(2L);
+    }
+
     @Test
     void addValueInsertsIntoLeafWithoutSplit() {
         Store store = mock(Store.class);
@@ -73,6 +96,46 @@ class BLinkTreeTest {
         verify(store, never()).updateRootId(anyLong());
     }
 
+    @Test
+    void addValueEditsLeafInPlaceWhenItFits() {
+        Store store = mock(Store.class);
+        WriteHandle handle = mock(WriteHandle.class);
+        LeafNode leaf = new LeafNode(1, 1, new Value[]{v("a")}, new Value[]{v("1")}, -1L);
+        when(store.rootId()).thenReturn(1L);
+        when(store.readNode(1L)).thenReturn(leaf);
+        when(store.latchForWrite(1L)).thenReturn(handle);
+        when(handle.putInPlace(v("c"), v("3"))).thenReturn(true);
+        BLinkTree given = new BLinkTree(store);
+
+        given.addValue(v("c"), v("3"));
+
+        verify(handle, never()).get();
+        verify(handle, never()).set(any());
+        verify(handle).close();
+    }
+
+    @Test
+    void putAllAppliesKeysOfOneLeafUnderSingleLatch() {
+        Store store = mock(Store.class);
+        WriteHandle handle = mock(WriteHandle.class);
+        LeafNode leaf = new LeafNode(1, 1, new Value[]{v("a")}, new Value[]{v("1")}, -1L);
+        when(store.rootId()).thenReturn(1L);
+        when(store.readNode(1L)).thenReturn(leaf);
+        when(store.latchForWrite(1L)).thenReturn(handle);
+        when(handle.get()).thenReturn(leaf);
+        when(store.nodeIdGenerator()).thenReturn(() -> 99L);
+        BLinkTree given = new BLinkTree(store);
+
+        given.putAll(new TreeMap<>(Map.of(v("b"), v("2"), v("c"), v("3"), v("d"), v("4"))));
+
+        ArgumentCaptor<Node> setNode = ArgumentCaptor.forClass(Node.class);
+        verify(store, times(1)).latchForWrite(1L);
+        verify(handle, times(1)).set(setNode.capture());
+        assertArrayEquals(new Value[]{v("a"), v("b"), v("c"), v("d")}, ((LeafNode) setNode.getValue()).getKeys());
+        verify(handle).close();
+        verify(store, never()).writeNode(any());
+    }
+
     @Test
     void addValueReleasesLatchWhenExceptionOccurs() {
         Store store = mock(Store.class);
@@ -122,7 +185,7 @@ class BLinkTreeTest {
         Value bigKey = new Value(new byte[4000]);
         Value newKey = bytesKey(4000, 1);
         Value bigVal = new Value(new byte[4000]);
-        Value newVal = new Value(new byte[4000]);
+        Value newVal = new Value(new byte[OverflowChain.INLINE_LIMIT]); // still inline, so the leaf splits
         LeafNode leaf = new LeafNode(1, 1, new Value[]{bigKey}, new Value[]{bigVal}, -1L);
         BranchNode parent = new BranchNode(2L, 2, new Value[]{v("m")}, new long[]{1}, -1L);
         AtomicLong ids = new AtomicLong(50);
@@ -154,7 +217,7 @@ class BLinkTreeTest {
         Value bigKey = new Value(new byte[4000]);
         Value newKey = bytesKey(4000, 1);
         Value bigVal = new Value(new byte[4000]);
-        Value newVal = new Value(new byte[4000]);
+        Value newVal = new Value(new byte[OverflowChain.INLINE_LIMIT]); // still inline, so the leaf splits
         LeafNode leaf = new LeafNode(1, 1, new Value[]{bigKey}, new Value[]{bigVal}, -1L);
         AtomicLong ids = new AtomicLong(50);
         when(store.rootId()).thenReturn(1L);
@@ -177,4 +240,62 @@ class BLinkTreeTest {
         verify(handle).set(any());
         verify(handle).close();
     }
+
+    @Test
+    void scanFollowsLeafLinksAndStopsAtUpperBound() {
+        Store store = mock(Store.class);
+        LeafNode leaf1 = new LeafNode(1, 1, new Value[]{v("a"), v("b")}, new Value[]{v("1"), v("2")}, 2L);
+        LeafNode leaf2 = new LeafNode(2, 1, new Value[]{v("c"), v("d")}, new Value[]{v("3"), v("4")}, 3L);
+        BranchNode root = new BranchNode(4L, 2, new Value[]{v("b"), v("z")}, new long[]{1, 2}, -1L);
+        when(store.rootId()).thenReturn(4L);
+        when(store.readNode(4L)).thenReturn(root);
+        when(store.readNode(1L)).thenReturn(leaf1);
+        when(store.readNode(2L)).thenReturn(leaf2);
+        BLinkTree given = new BLinkTree(store);
+
+        List<Value> result = new ArrayList<>();
+        given.scan(v("b"), v("d")).forEachRemaining(e -> result.add(e.getKey()));
+
+        assertEquals(List.of(v("b"), v("c")), result);
+        verify(store).readNode(4L);
+        verify(store).readNode(1L);
+        verify(store).readNode(2L);
+        verify(store, never()).readNode(3L);
+    }
+
+    @Test
+    void scanPrefetchesUpcomingLeavesOfTheRangeFromTheParent() {
+        Store store = mock(Store.class);
+        LeafNode leaf1 = new LeafNode(1, 1, new Value[]{v("a")}, new Value[]{v("1")}, 2L);
+        LeafNode leaf2 = new LeafNode(2, 1, new Value[]{v("c")}, new Value[]{v("3")}, 3L);
+        LeafNode leaf3 = new LeafNode(3, 1, new Value[]{v("e")}, new Value[]{v("5")}, 4L);
+        BranchNode root = new BranchNode(5L, 2, new Value[]{v("a"), v("c"), v("e"), v("g")}, new long[]{1, 2, 3, 4}, -1L);
+        when(store.rootId()).thenReturn(5L);
+        when(store.readNode(5L)).thenReturn(root);
+        when(store.readNode(1L)).thenReturn(leaf1);
+        when(store.readNode(2L)).thenReturn(leaf2);
+        when(store.readNode(3L)).thenReturn(leaf3);
+        BLinkTree given = new BLinkTree(store);
+
+        List<Value> result = new ArrayList<>();
+        given.scan(v("a"), v("d"), 8).forEachRemaining(e -> result.add(e.getKey()));
+
+        assertEquals(List.of(v("a"), v("c")), result);
+        verify(store).prefetch(2L, 3L);
+        verify(store, never()).readNode(4L);
+    }
+
+    @Test
+    void getAsyncChainsSearchStepsUntilLeaf() {
+        Store store = mock(Store.class);
+        when(store.rootId()).thenReturn(2L);
+        when(store.searchAsync(2L, v("a"))).thenReturn(CompletableFuture.completedFuture(new Store.SearchResult(1L, null)));
+        when(store.searchAsync(1L, v("a"))).thenReturn(CompletableFuture.completedFuture(new Store.SearchResult(-1L, v("1"))));
+        BLinkTree given = new BLinkTree(store);
+
+        Value result = given.getAsync(v("a")).join();
+
+        assertEquals(v("1"), result);
+        verify(store, never()).search(anyLong(), any());
+    }
 }
@@ -122,6 +122,8 @@ class BranchNodeTest {
         Value big1 = new Value(new byte[4000]);
         Value bigMid = bytesKey(4000, 1);
         Value big2 = bytesKey(4000, 2);
+        bigMid.bytes()[0] = 1; // no shared prefix for the page to store once
+        big2.bytes()[0] = 2;
         BranchNode given = new BranchNode(1L, 2, new Value[]{big1, big2}, new long[]{10, 20}, -1L);
 
         Node.CreationResult result = given.copyWith(bigMid, 30, big2, () -> 777L);
@@ -140,4 +142,30 @@ class BranchNodeTest {
         assertArrayEquals(new long[]{30}, right.getPointers());
         assertEquals(-1L, right.link());
     }
+
+    @Test
+    void withMergedChildrenDropsSeparatorBetweenThemAndKeepsTheRightBound() {
+        BranchNode given = new BranchNode(1L, 2, new Value[]{v("b"), v("d"), v("f")}, new long[]{10, 20, 30}, 7L);
+
+        BranchNode result = given.withMergedChildren(0);
+
+        assertArrayEquals(new Value[]{v("d"), v("f")}, result.getKeys());
+        assertArrayEquals(new long[]{10, 30}, result.getPointers());
+        assertEquals(10L, result.nextNode(v("c")));
+        assertEquals(7L, result.link());
+    }
+
+    @Test
+    void mergedWithAppendsRightSiblingAndTakesOverItsLink() {
+        BranchNode given = new BranchNode(1L, 2, new Value[]{v("b")}, new long[]{10}, 2L);
+        BranchNode right = new BranchNode(2L, 2, new Value[]{v("d"), v("f")}, new long[]{20, 30}, 9L);
+
+        BranchNode result = given.mergedWith(right);
+
+        assertEquals(1L, result.id());
+        assertArrayEquals(new Value[]{v("b"), v("d"), v("f")}, result.getKeys());
+        assertArrayEquals(new long[]{10, 20, 30}, result.getPointers());
+        assertEquals(9L, result.link());
+        assertEquals(given.size() + right.size() - Store.LINK_POINTER_SIZE, result.size());
+    }
 }
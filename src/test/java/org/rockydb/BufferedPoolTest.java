@@ -7,11 +7,15 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +43,9 @@ class BufferedPoolTest {
         if (dbFile != null && dbFile.exists()) {
             dbFile.delete();
         }
+        if (dbFile != null) {
+            WriteAheadLog.segmentFiles(WriteAheadLog.fileFor(dbFile)).forEach(File::delete);
+        }
     }
 
     @Test
@@ -118,6 +125,28 @@ class BufferedPoolTest {
         assertArrayEquals(keys, read.getKeys());
     }
 
+    @Test
+    void inPlaceEditsAreVisibleAndMarkFrameDirty() throws Exception {
+        pool = new BufferedPool(dbFile, 16);
+        long rootId = pool.rootId();
+        pool.writeNode(new LeafNode(rootId, 1, new Value[]{v("a")}, new Value[]{v("1")}, -1L));
+        pool.close();
+        pool = new BufferedPool(dbFile, 16);
+
+        try (WriteHandle handle = pool.latchForWrite(rootId)) {
+            assertTrue(handle.removeInPlace(v("missing")));
+            assertEquals(0, pool.getDirtyFrames());
+
+            assertTrue(handle.putInPlace(v("b"), v("2")));
+            assertTrue(handle.removeInPlace(v("a")));
+        }
+
+        assertEquals(1, pool.getDirtyFrames());
+        LeafNode read = (LeafNode) pool.readNode(rootId);
+        assertArrayEquals(new Value[]{v("b")}, read.getKeys());
+        assertArrayEquals(new Value[]{v("2")}, read.getValues());
+    }
+
     @Test
     void handleCloseIsIdempotentAndReleasesLatch() throws Exception {
         pool = new BufferedPool(dbFile, 16);
@@ -130,6 +159,58 @@ class BufferedPoolTest {
         pool.latchForWrite(rootId).close();
     }
 
+    @Test
+    void lockFreeReadsNeverReturnTornPagesWhileTheyAreRewritten() throws Exception {
+        pool = new BufferedPool(dbFile, 16);
+        long rootId = pool.rootId();
+        pool.writeNode(leafOfVersion(rootId, 0));
+        ExecutorService readers = Executors.newFixedThreadPool(3);
+        CountDownLatch stop = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < 3; t++) {
+                results.add(readers.submit(() -> {
+                    while (stop.getCount() > 0) {
+                        LeafNode read = (LeafNode) pool.readNode(rootId);
+                        Value[] values = read.getValues();
+                        for (Value value : values) {
+                            assertEquals(values[0], value, "entries from two different writes");
+                        }
+                        Value found = pool.search(rootId, read.getKeys()[0]).value();
+                        assertTrue(isVersionValue(found), "torn value " + new String(found.bytes()));
+                    }
+                    return null;
+                }));
+            }
+            for (int version = 1; version <= 2000; version++) {
+                pool.writeNode(leafOfVersion(rootId, version));
+            }
+        } finally {
+            stop.countDown();
+            readers.shutdown();
+        }
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        assertEquals(leafOfVersion(rootId, 2000).getValues()[0], ((LeafNode) pool.readNode(rootId)).getValues()[0]);
+    }
+
+    /** A leaf whose every value is {@code version}, padded so versions differ in length too. */
+    private static LeafNode leafOfVersion(long id, int version) {
+        Value[] keys = new Value[50];
+        Value[] values = new Value[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = v(String.format("key-%03d", i));
+            values[i] = v(version + "|" + "x".repeat(version % 7 * 10));
+        }
+        return new LeafNode(id, 1, keys, values, -1L);
+    }
+
+    private static boolean isVersionValue(Value value) {
+        String[] parts = new String(value.bytes()).split("\\|", -1);
+        return parts.length == 2 && parts[1].equals("x".repeat(Integer.parseInt(parts[0]) % 7 * 10));
+    }
+
     @Test
     void evictsPagesAndReloadsThemCorrectly() throws Exception {
         pool = new BufferedPool(dbFile, 8);
@@ -150,6 +231,392 @@ class BufferedPoolTest {
         }
     }
 
+    @Test
+    void offHeapFramesEvictReloadAndPersistPages() throws Exception {
+        pool = new BufferedPool(dbFile, 8, PoolOptions.defaults().withOffHeapFrames(true));
+        BLinkTree tree = new BLinkTree(pool);
+        byte[] bigValue = new byte[4000];
+        int count = 150;
+
+        for (int i = 0; i < count; i++) {
+            tree.addValue(v("key" + i), new Value(bigValue));
+        }
+        tree.delete(v("key7"));
+        pool.close();
+        pool = new BufferedPool(dbFile, 8, PoolOptions.defaults().withOffHeapFrames(true));
+        BLinkTree reopened = new BLinkTree(pool);
+
+        for (int i = 0; i < count; i++) {
+            Value expected = i == 7 ? null : new Value(bigValue);
+            assertEquals(expected, reopened.get(v("key" + i)), "wrong value for key " + i);
+        }
+    }
+
+    @Test
+    void evictingDirtyPagesWithoutCleanerCountsForegroundFlushes() throws Exception {
+        pool = new BufferedPool(dbFile, 8, PoolOptions.defaults().withCleanerThreads(0));
+        BLinkTree tree = new BLinkTree(pool);
+
+        for (int i = 0; i < 150; i++) {
+            tree.addValue(v("key" + i), new Value(new byte[4000]));
+        }
+
+        assertTrue(pool.getForegroundFlushes() > 0);
+        assertEquals(0, pool.getBackgroundFlushes());
+    }
+
+    @Test
+    void backgroundCleanerBringsDirtyFramesDownToLowRatio() throws Exception {
+        PoolOptions options = PoolOptions.defaults()
+                .withDirtyRatios(0.25, 0.5)
+                .withCleanerIntervalMillis(5);
+        pool = new BufferedPool(dbFile, 16, options);
+        long first = pool.nodeIdGenerator().get();
+        for (long id = first; id < first + 12; id++) {
+            pool.writeNode(new LeafNode(id, 1, new Value[]{v("k")}, new Value[]{v("v")}, -1L));
+        }
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getDirtyFrames() > 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertTrue(pool.getDirtyFrames() <= 4);
+        assertTrue(pool.getBackgroundFlushes() >= 8);
+        assertEquals(0, pool.getForegroundFlushes());
+        for (long id = first; id < first + 12; id++) {
+            assertArrayEquals(new Value[]{v("k")}, ((LeafNode) pool.readNode(id)).getKeys());
+        }
+    }
+
+    @Test
+    void prefetchedPagesAreServedAsHits() throws Exception {
+        pool = new BufferedPool(dbFile, 16);
+        long first = pool.nodeIdGenerator().get();
+        long last = pool.nodeIdGenerator().get();
+        for (long id = first; id <= last; id++) {
+            pool.writeNode(new LeafNode(id, 1, new Value[]{v("k" + id)}, new Value[]{v("v")}, -1L));
+        }
+        pool.close();
+        pool = new BufferedPool(dbFile, 16);
+
+        pool.prefetch(first, last);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getPrefetches() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(2, pool.getPrefetches());
+        assertArrayEquals(new Value[]{v("k" + first)}, ((LeafNode) pool.readNode(first)).getKeys());
+        assertArrayEquals(new Value[]{v("k" + last)}, ((LeafNode) pool.readNode(last)).getKeys());
+        assertEquals(0, pool.getBufferMisses());
+    }
+
+    @Test
+    void coldScanWithReadAheadPrefetchesLeavesAndReturnsEveryKey() throws Exception {
+        pool = new BufferedPool(dbFile, 64);
+        BLinkTree tree = new BLinkTree(pool);
+        int count = 400;
+        for (int i = 0; i < count; i++) {
+            tree.addValue(v(String.format("key%04d", i)), new Value(new byte[500]));
+        }
+        pool.close();
+        pool = new BufferedPool(dbFile, 64);
+
+        List<Value> result = new ArrayList<>();
+        Iterator<Map.Entry<Value, Value>> scan = new BLinkTree(pool).scan(null, null, 8);
+        result.add(scan.next().getKey());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getPrefetches() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5); // the first leaf asked for the next ones; let them land before the walk gets there
+        }
+        scan.forEachRemaining(e -> result.add(e.getKey()));
+
+        assertTrue(pool.getPrefetches() > 0);
+        assertEquals(count, result.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(v(String.format("key%04d", i)), result.get(i));
+        }
+    }
+
+    @Test
+    void prefetchIsNoOpWithoutPrefetchThreads() throws Exception {
+        pool = new BufferedPool(dbFile, 16, PoolOptions.defaults().withPrefetchThreads(0));
+        long rootId = pool.rootId();
+
+        pool.prefetch(rootId);
+
+        assertEquals(0, pool.getPrefetches());
+        assertEquals(0, pool.getUsedFrames());
+    }
+
+    @Test
+    void concurrentAsyncReadsOnAsyncBackendLoadEveryPage() throws Exception {
+        pool = new BufferedPool(dbFile, 16);
+        long first = pool.nodeIdGenerator().get();
+        int count = 200;
+        for (int i = 1; i < count; i++) {
+            pool.nodeIdGenerator().get();
+        }
+        for (long id = first; id < first + count; id++) {
+            pool.writeNode(new LeafNode(id, 1, new Value[]{v("k" + id)}, new Value[]{v("v")}, -1L));
+        }
+        pool.close();
+        pool = new BufferedPool(dbFile, 32, PoolOptions.defaults().withStorageBackend(StorageBackend.ASYNC_CHANNEL));
+
+        List<CompletableFuture<Node>> reads = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            for (long id = first; id < first + count; id++) {
+                reads.add(pool.readNodeAsync(id));
+            }
+        }
+
+        for (int i = 0; i < reads.size(); i++) {
+            long id = first + i % count;
+            LeafNode result = (LeafNode) reads.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals(id, result.id());
+            assertArrayEquals(new Value[]{v("k" + id)}, result.getKeys());
+        }
+    }
+
+    @Test
+    void writeNodeAsyncIsVisibleToSyncReads() throws Exception {
+        pool = new BufferedPool(dbFile, 16);
+        long rootId = pool.rootId();
+
+        pool.writeNodeAsync(new LeafNode(rootId, 1, new Value[]{v("a")}, new Value[]{v("1")}, -1L)).join();
+
+        assertArrayEquals(new Value[]{v("a")}, ((LeafNode) pool.readNode(rootId)).getKeys());
+        assertEquals(1, pool.getDirtyFrames());
+    }
+
+    @Test
+    void committedChangesSurviveCrashWithoutAnyPageWritten() throws Exception {
+        PoolOptions options = PoolOptions.defaults().withCleanerThreads(0);
+        pool = new BufferedPool(dbFile, 256, options);
+        BLinkTree tree = new BLinkTree(pool);
+        for (int i = 0; i < 300; i++) {
+            tree.addValue(v(String.format("key%04d", i)), new Value(new byte[200]));
+        }
+        for (int i = 0; i < 300; i += 3) {
+            tree.delete(v(String.format("key%04d", i)));
+        }
+        tree.addValue(v("key0001"), v("updated"));
+        pool.commit();
+        assertEquals(0, pool.getForegroundFlushes());
+        pool.crash();
+
+        pool = new BufferedPool(dbFile, 256, options);
+        BLinkTree recovered = new BLinkTree(pool);
+
+        for (int i = 0; i < 300; i++) {
+            Value expected = i == 1 ? v("updated") : i % 3 == 0 ? null : new Value(new byte[200]);
+            assertEquals(expected, recovered.get(v(String.format("key%04d", i))), "wrong value for key " + i);
+        }
+    }
+
+    @Test
+    void recoveryConvergesWhenEvictedPagesAreAheadOfTheLogStart() throws Exception {
+        PoolOptions options = PoolOptions.defaults().withCleanerThreads(0);
+        pool = new BufferedPool(dbFile, 8, options);
+        BLinkTree tree = new BLinkTree(pool);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 200; i++) {
+                tree.addValue(v("key" + i), v(String.format("round%d-%-200d", round, i)));
+            }
+            for (int i = round; i < 200; i += 7) {
+                tree.delete(v("key" + i));
+            }
+        }
+        pool.commit();
+        assertTrue(pool.getForegroundFlushes() > 0);
+        pool.crash();
+
+        pool = new BufferedPool(dbFile, 8, options);
+        BLinkTree recovered = new BLinkTree(pool);
+
+        for (int i = 0; i < 200; i++) {
+            Value expected = i % 7 == 2 ? null : v(String.format("round2-%-200d", i));
+            assertEquals(expected, recovered.get(v("key" + i)), "wrong value for key " + i);
+        }
+    }
+
+    @Test
+    void cleanCloseRemovesTheLogAndDisabledLogIsNeverCreated() throws Exception {
+        File log = WriteAheadLog.fileFor(dbFile);
+        pool = new BufferedPool(dbFile, 16);
+        new BLinkTree(pool).addValue(v("k"), v("v"));
+        assertFalse(WriteAheadLog.segmentFiles(log).isEmpty());
+        pool.close();
+        assertTrue(WriteAheadLog.segmentFiles(log).isEmpty());
+
+        pool = new BufferedPool(dbFile, 16, PoolOptions.defaults().withWriteAheadLog(false));
+        new BLinkTree(pool).addValue(v("k2"), v("v2"));
+        pool.commit();
+
+        assertTrue(WriteAheadLog.segmentFiles(log).isEmpty());
+        assertEquals(0, pool.getLogForces());
+        assertEquals(v("v"), new BLinkTree(pool).get(v("k")));
+    }
+
+    @Test
+    void checkpointWritesDirtyPagesSoRestartReplaysOnlyLaterChanges() throws Exception {
+        PoolOptions options = PoolOptions.defaults().withCleanerThreads(0).withCheckpointIntervalMillis(0);
+        pool = new BufferedPool(dbFile, 64, options);
+        BLinkTree tree = new BLinkTree(pool);
+        for (int i = 0; i < 100; i++) {
+            tree.addValue(v("key" + i), new Value(new byte[300]));
+        }
+
+        int written = pool.checkpoint();
+
+        assertTrue(written > 1);
+        assertEquals(0, pool.getDirtyFrames());
+        assertEquals(1, pool.getCheckpoints());
+
+        tree.addValue(v("late"), v("value"));
+        pool.commit();
+        pool.crash();
+        pool = new BufferedPool(dbFile, 64, options);
+
+        assertEquals(1, pool.getRecoveredRecords());
+        BLinkTree recovered = new BLinkTree(pool);
+        assertEquals(v("value"), recovered.get(v("late")));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(new Value(new byte[300]), recovered.get(v("key" + i)), "wrong value for key " + i);
+        }
+    }
+
+    @Test
+    void checkpointsRacingWritesToCleanPagesLoseNoCommittedChange() throws Exception {
+        PoolOptions options = PoolOptions.defaults().withCleanerThreads(0).withCheckpointIntervalMillis(0);
+        pool = new BufferedPool(dbFile, 256, options);
+        BLinkTree tree = new BLinkTree(pool);
+        for (int i = 0; i < 2000; i++) {
+            tree.addValue(v(String.format("key%04d", i)), v("v"));
+        }
+        pool.checkpoint();
+        ExecutorService checkpointer = Executors.newSingleThreadExecutor();
+        try {
+            for (int round = 0; round < 20; round++) {
+                CountDownLatch done = new CountDownLatch(1);
+                Future<?> checkpoints = checkpointer.submit(() -> {
+                    while (done.getCount() > 0) {
+                        pool.checkpoint();
+                    }
+                });
+                for (int i = round; i < 2000; i += 20) {
+                    tree.addValue(v(String.format("key%04d", i)), v("round" + round)); // in place, into a clean leaf
+                }
+                done.countDown();
+                checkpoints.get();
+            }
+        } finally {
+            checkpointer.shutdown();
+        }
+        pool.commit();
+        pool.crash();
+
+        pool = new BufferedPool(dbFile, 256, options);
+        BLinkTree recovered = new BLinkTree(pool);
+
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(v("round" + i % 20), recovered.get(v(String.format("key%04d", i))), "wrong value for key " + i);
+        }
+    }
+
+    @Test
+    void backgroundCheckpointsBoundReplayWhileWritesContinue() throws Exception {
+        PoolOptions options = PoolOptions.defaults()
+                .withCleanerThreads(0)
+                .withCheckpointIntervalMillis(60_000)
+                .withCheckpointLogBytes(64 * 1024)
+                .withCheckpointPagesPerSecond(0);
+        pool = new BufferedPool(dbFile, 64, options);
+        BLinkTree tree = new BLinkTree(pool);
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            tree.addValue(v(String.format("key%04d", i)), new Value(new byte[200]));
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getCheckpoints() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(pool.getCheckpoints() > 0);
+
+        pool.commit();
+        pool.crash();
+        pool = new BufferedPool(dbFile, 64, options);
+
+        assertTrue(pool.getRecoveredRecords() < count, "replayed " + pool.getRecoveredRecords());
+        BLinkTree recovered = new BLinkTree(pool);
+        for (int i = 0; i < count; i++) {
+            assertEquals(new Value(new byte[200]), recovered.get(v(String.format("key%04d", i))), "wrong value for key " + i);
+        }
+    }
+
+    @Test
+    void freedPagesStayFreeAfterCrashUnlessReusedBeforeIt() throws Exception {
+        PoolOptions options = PoolOptions.defaults().withCleanerThreads(0).withCheckpointIntervalMillis(0);
+        pool = new BufferedPool(dbFile, 64, options);
+        long[] ids = new long[4];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pool.nodeIdGenerator().get();
+            pool.writeNode(new LeafNode(ids[i], 1, new Value[]{v("k" + i)}, new Value[]{v("v" + i)}, -1L));
+        }
+        pool.checkpoint();
+        pool.freePage(ids[1]);
+        pool.freePage(ids[2]);
+        long reused = pool.nodeIdGenerator().get();
+        pool.writeNode(new LeafNode(reused, 1, new Value[]{v("new")}, new Value[]{v("page")}, -1L));
+        pool.commit();
+        pool.crash();
+
+        pool = new BufferedPool(dbFile, 64, options);
+
+        assertEquals(ids[1], reused);
+        assertEquals(1, pool.getFreePages());
+        long allocated = pool.nodeIdGenerator().get();
+        assertTrue(allocated != ids[0] && allocated != ids[1] && allocated != ids[3]);
+        assertArrayEquals(new Value[]{v("new")}, ((LeafNode) pool.readNode(reused)).getKeys());
+        assertArrayEquals(new Value[]{v("k3")}, ((LeafNode) pool.readNode(ids[3])).getKeys());
+    }
+
+    @Test
+    void checkpointForcesTheLogBeforeStoringPagesFreedSinceTheLastCommit() throws Exception {
+        PoolOptions options = PoolOptions.defaults().withCleanerThreads(0).withCheckpointIntervalMillis(0);
+        pool = new BufferedPool(dbFile, 64, options);
+        long id = pool.nodeIdGenerator().get();
+        pool.writeNode(new LeafNode(id, 1, new Value[]{v("k")}, new Value[]{v("v")}, -1L));
+        pool.checkpoint();
+        pool.freePage(id); // not committed
+        long forces = pool.getLogForces();
+
+        pool.checkpoint();
+
+        assertTrue(pool.getLogForces() > forces);
+    }
+
+    @Test
+    void closeTrimsFreePagesAtTheEndOfTheFile() throws Exception {
+        pool = new BufferedPool(dbFile, 64);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(pool.nodeIdGenerator().get());
+            pool.writeNode(new LeafNode(ids.get(i), 1, new Value[]{}, new Value[]{}, -1L));
+        }
+        pool.checkpoint();
+        long grown = dbFile.length();
+        for (int i = 5; i < 10; i++) {
+            pool.freePage(ids.get(i));
+        }
+
+        pool.close();
+        pool = null;
+
+        assertEquals(grown - 5L * Store.PAGE_SIZE, dbFile.length());
+    }
+
     @Test
     void closeFlushesDirtyPagesToDisk() throws IOException {
         pool = new BufferedPool(dbFile, 16);
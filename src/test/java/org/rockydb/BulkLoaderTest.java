@@ -0,0 +1,146 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoaderTest {
+
+    private File dbFile;
+    private BufferedPool pool;
+
+    private static Value v(String s) {
+        return new Value(s.getBytes());
+    }
+
+    private static Iterator<Map.Entry<Value, Value>> sorted(int count, int valueSize) {
+        TreeMap<Value, Value> entries = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            entries.put(v(String.format("key%06d", i)), new Value(new byte[valueSize]));
+        }
+        return entries.entrySet().iterator();
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dbFile = File.createTempFile("rockydb-bulk-", ".db");
+        dbFile.deleteOnExit();
+        pool = new BufferedPool(dbFile, 64);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.close();
+        dbFile.delete();
+    }
+
+    @Test
+    void bulkLoadBuildsSearchableMultiLevelTree() {
+        BLinkTree given = new BLinkTree(pool);
+
+        given.bulkLoad(sorted(20_000, 16));
+
+        Node root = pool.readNode(pool.rootId());
+        assertEquals(2, root.height());
+        for (int i = 0; i < 20_000; i += 7) {
+            assertEquals(new Value(new byte[16]), given.get(v(String.format("key%06d", i))), "missing key " + i);
+        }
+        assertNull(given.get(v("key999999")));
+    }
+
+    @Test
+    void bulkLoadBoundsLeavesWithShortSeparators() {
+        BLinkTree given = new BLinkTree(pool);
+        String prefix = "https://example.com/very/long/shared/path/";
+        TreeMap<Value, Value> entries = new TreeMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            entries.put(v(prefix + String.format("%06d", i) + "/details.html"), new Value(new byte[16]));
+        }
+
+        given.bulkLoad(entries.entrySet().iterator());
+
+        BranchNode root = (BranchNode) pool.readNode(pool.rootId());
+        Value[] bounds = root.getKeys();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            assertTrue(bounds[i].bytes().length <= prefix.length() + 6, "bound " + i + " not shortened");
+        }
+        for (Map.Entry<Value, Value> entry : entries.entrySet()) {
+            assertEquals(entry.getValue(), given.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void bulkLoadPacksLeavesToFillFactor() {
+        BLinkTree given = new BLinkTree(pool);
+
+        given.bulkLoad(sorted(5_000, 100), 1.0);
+
+        int leaves = 0;
+        long leafId = pool.rootId();
+        Node node = pool.readNode(leafId);
+        while (!node.isLeaf()) {
+            node = pool.readNode(((BranchNode) node).getPointers()[0]);
+        }
+        while (true) {
+            leaves++;
+            if (node.link() == -1) {
+                break;
+            }
+            node = pool.readNode(node.link());
+        }
+        int perLeaf = Node.MAX_NODE_SIZE / LeafNode.sizeOfCell(v("key000000"), new Value(new byte[100]));
+        assertEquals((5_000 + perLeaf - 1) / perLeaf, leaves);
+    }
+
+    @Test
+    void bulkLoadedTreeAcceptsFurtherInserts() {
+        BLinkTree given = new BLinkTree(pool);
+        given.bulkLoad(sorted(3_000, 100));
+
+        for (int i = 0; i < 3_000; i++) {
+            given.addValue(v(String.format("key%06dx", i)), v("x"));
+        }
+
+        List<Value> scanned = new ArrayList<>();
+        given.scan(null, null).forEachRemaining(e -> scanned.add(e.getKey()));
+        assertEquals(6_000, scanned.size());
+        assertEquals(v("x"), given.get(v("key002999x")));
+    }
+
+    @Test
+    void bulkLoadRejectsNonEmptyTree() {
+        BLinkTree given = new BLinkTree(pool);
+        given.addValue(v("a"), v("1"));
+
+        assertThrows(IllegalStateException.class, () -> given.bulkLoad(sorted(10, 1)));
+    }
+
+    @Test
+    void bulkLoadRejectsUnsortedInput() {
+        BLinkTree given = new BLinkTree(pool);
+        Iterator<Map.Entry<Value, Value>> unsorted = List.of(Map.entry(v("b"), v("1")), Map.entry(v("a"), v("2"))).iterator();
+
+        assertThrows(IllegalArgumentException.class, () -> given.bulkLoad(unsorted));
+    }
+
+    @Test
+    void bulkLoadOfEmptyInputLeavesEmptyTree() {
+        BLinkTree given = new BLinkTree(pool);
+        long rootBefore = pool.rootId();
+
+        given.bulkLoad(sorted(0, 1));
+
+        assertEquals(rootBefore, pool.rootId());
+        assertNull(given.get(v("a")));
+    }
+}
@@ -2,6 +2,9 @@ package org.rockydb;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class ByteUtilsTest {
@@ -50,4 +53,70 @@ class ByteUtilsTest {
 
         assertFalse(result);
     }
+
+    @Test
+    void createFlagsStoresFormatNextToLeafBit() {
+        byte given = ByteUtils.createFlags(true, ByteUtils.FORMAT_SLOTTED);
+
+        assertTrue(ByteUtils.readIsLeafFlag(given));
+        assertEquals(ByteUtils.FORMAT_SLOTTED, ByteUtils.readFormatFlag(given));
+        assertEquals(ByteUtils.FORMAT_LEGACY, ByteUtils.readFormatFlag(ByteUtils.createFlags(true)));
+    }
+
+    @Test
+    void varintFormatsUseTheThirdFormatBitAndStaySlotted() {
+        byte given = ByteUtils.createFlags(false, ByteUtils.FORMAT_VARINT_PREFIXED);
+
+        assertFalse(ByteUtils.readIsLeafFlag(given));
+        assertEquals(ByteUtils.FORMAT_VARINT_PREFIXED, ByteUtils.readFormatFlag(given));
+        assertTrue(ByteUtils.isSlotted(given) && ByteUtils.isVarint(given));
+        assertTrue(ByteUtils.isSlotted(ByteUtils.createFlags(true, ByteUtils.FORMAT_PREFIXED)));
+        assertFalse(ByteUtils.isVarint(ByteUtils.createFlags(true, ByteUtils.FORMAT_PREFIXED)));
+        assertFalse(ByteUtils.isSlotted(ByteUtils.createFlags(true)));
+    }
+
+    @Test
+    void varIntRoundTripsWithOneByteForEverySevenBits() {
+        ByteBuffer given = ByteBuffer.allocate(8);
+        for (int value : new int[]{0, 1, 127, 128, 300, 8192, 16383, 16384, Integer.MAX_VALUE}) {
+            int end = ByteUtils.putVarInt(given, 1, value);
+
+            assertEquals(value, ByteUtils.getVarInt(given, 1));
+            assertEquals(ByteUtils.varIntSize(value), end - 1);
+        }
+        assertEquals(1, ByteUtils.varIntSize(127));
+        assertEquals(2, ByteUtils.varIntSize(128));
+        assertEquals(3, ByteUtils.varIntSize(16384));
+    }
+
+    @Test
+    void compareUsesValueOrderingOnSubrange() {
+        for (ByteBuffer given : List.of(ByteBuffer.allocate(5), ByteBuffer.allocateDirect(5))) {
+            given.put(0, new byte[]{9, 'a', 'b', 'c', 9});
+
+            assertEquals(0, ByteUtils.compare(given, 1, 3, new Value("abc".getBytes())));
+            assertTrue(ByteUtils.compare(given, 1, 2, new Value("abc".getBytes())) < 0);
+            assertTrue(ByteUtils.compare(given, 1, 3, new Value("abb".getBytes())) > 0);
+            assertTrue(ByteUtils.compare(given, 1, 4, new Value("abc".getBytes())) > 0);
+        }
+        ByteBuffer negative = ByteBuffer.allocateDirect(1).put(0, (byte) 0x80);
+        assertTrue(ByteUtils.compare(negative, 0, 1, new Value(new byte[]{0})) < 0);
+    }
+
+    @Test
+    void moveHandlesOverlappingRangesInBothDirections() {
+        for (ByteBuffer given : List.of(ByteBuffer.allocate(6), ByteBuffer.allocateDirect(6))) {
+            given.put(0, new byte[]{1, 2, 3, 4, 5, 6});
+
+            ByteUtils.move(given, 0, 2, 4);
+            byte[] right = new byte[6];
+            given.get(0, right);
+            assertArrayEquals(new byte[]{1, 2, 1, 2, 3, 4}, right);
+
+            ByteUtils.move(given, 2, 0, 4);
+            byte[] left = new byte[6];
+            given.get(0, left);
+            assertArrayEquals(new byte[]{1, 2, 3, 4, 3, 4}, left);
+        }
+    }
 }
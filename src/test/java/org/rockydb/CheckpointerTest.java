@@ -0,0 +1,125 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointerTest {
+
+    private static Frame[] dirtyFrames(long... pageIds) {
+        Frame[] frames = new Frame[pageIds.length + 1];
+        for (int i = 0; i < pageIds.length; i++) {
+            frames[i] = new Frame(i);
+            frames[i].setPageId(pageIds[i]);
+            frames[i].markDirty();
+        }
+        frames[pageIds.length] = new Frame(pageIds.length); // free frame, never visited
+        return frames;
+    }
+
+    private static PoolOptions options(int pagesPerSecond) {
+        return PoolOptions.defaults().withCheckpointPagesPerSecond(pagesPerSecond);
+    }
+
+    private static class RecordingTarget implements Checkpointer.Target {
+        final List<Long> flushed = new ArrayList<>();
+        final List<Long> completed = new ArrayList<>();
+        volatile long logEnd = 100;
+
+        @Override
+        public long logEnd() {
+            return logEnd;
+        }
+
+        @Override
+        public boolean flush(Frame frame, long pageId) {
+            flushed.add(pageId);
+            frame.markClean();
+            return true;
+        }
+
+        @Override
+        public void complete(long redoLsn) {
+            completed.add(redoLsn);
+        }
+    }
+
+    @Test
+    void writesDirtyFramesInPageIdOrderAndCompletesAtTheLogEndItStartedFrom() {
+        Frame[] frames = dirtyFrames(42, 7, 19, 3);
+        frames[2].markClean();
+        RecordingTarget target = new RecordingTarget();
+        Checkpointer checkpointer = new Checkpointer(frames, target, options(0), false);
+        target.logEnd = 500;
+
+        int result = checkpointer.checkpoint(false);
+
+        assertEquals(3, result);
+        assertEquals(List.of(3L, 7L, 42L), target.flushed);
+        assertEquals(List.of(500L), target.completed);
+        assertEquals(500L, checkpointer.redoLsn());
+        assertEquals(1, checkpointer.checkpoints());
+    }
+
+    @Test
+    void throttledCheckpointPacesItsWrites() {
+        Frame[] frames = dirtyFrames(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        Checkpointer checkpointer = new Checkpointer(frames, new RecordingTarget(), options(50), false);
+        long start = System.nanoTime();
+
+        checkpointer.checkpoint(true);
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 150, "took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void closingAbandonsThrottledCheckpointWithoutMovingTheRestartPoint() throws Exception {
+        Frame[] frames = dirtyFrames(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        RecordingTarget target = new RecordingTarget();
+        Checkpointer checkpointer = new Checkpointer(frames, target, options(2), false);
+        target.logEnd = 900;
+        CountDownLatch done = new CountDownLatch(1);
+        Thread runner = new Thread(() -> {
+            checkpointer.checkpoint(true);
+            done.countDown();
+        });
+        runner.start();
+        Thread.sleep(100);
+
+        checkpointer.close();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(target.completed.isEmpty());
+        assertEquals(100L, checkpointer.redoLsn());
+        assertEquals(0, checkpointer.checkpoints());
+    }
+
+    @Test
+    void backgroundCheckpointStartsOnceEnoughLogIsWritten() throws Exception {
+        Frame[] frames = dirtyFrames(1, 2);
+        RecordingTarget target = new RecordingTarget();
+        PoolOptions options = options(0).withCheckpointIntervalMillis(60_000).withCheckpointLogBytes(1000);
+        Checkpointer checkpointer = new Checkpointer(frames, target, options, true);
+        try {
+            Thread.sleep(2 * Checkpointer.POLL_MILLIS);
+            assertEquals(0, checkpointer.checkpoints());
+
+            target.logEnd = 2000;
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (checkpointer.checkpoints() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1, checkpointer.checkpoints());
+            assertEquals(2000L, checkpointer.redoLsn());
+        } finally {
+            checkpointer.close();
+        }
+    }
+}
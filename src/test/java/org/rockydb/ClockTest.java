@@ -56,4 +56,29 @@ class ClockTest {
 
         frame.unpin();
     }
+
+    @Test
+    void findVictimPrefersCleanColdFrameOverDirtyOne() {
+        Frame dirty = new Frame(0);
+        dirty.setDirty(true);
+        Frame clean = new Frame(1);
+        Clock given = new Clock(new Frame[]{dirty, clean});
+
+        Frame result = given.findVictim();
+
+        assertSame(clean, result);
+        result.releaseClaim();
+    }
+
+    @Test
+    void findVictimFallsBackToDirtyFrameWhenNoCleanOneExists() {
+        Frame dirty = new Frame(0);
+        dirty.setDirty(true);
+        Clock given = new Clock(new Frame[]{dirty});
+
+        Frame result = given.findVictim();
+
+        assertSame(dirty, result);
+        result.releaseClaim();
+    }
 }
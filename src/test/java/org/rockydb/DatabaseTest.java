@@ -6,11 +6,17 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,6 +33,17 @@ class DatabaseTest {
         return tempDir.resolve("rocky.db").toFile();
     }
 
+    private int valueLogSegments() {
+        File[] files = tempDir.toFile().listFiles((dir, name) -> name.startsWith("rocky.db.vlog."));
+        return files == null ? 0 : files.length;
+    }
+
+    private static Value blob(int seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return new Value(bytes);
+    }
+
     @Test
     void createInsertGet() throws Exception {
         try (Database db = new Database(newFile(), 16)) {
@@ -86,6 +103,166 @@ class DatabaseTest {
         }
     }
 
+    @Test
+    void scanReturnsRangeInKeyOrderAcrossLeaves() throws Exception {
+        Value big = new Value(new byte[200]);
+        try (Database db = new Database(newFile(), 64)) {
+            db.createTable("t");
+            for (int i = 0; i < 300; i++) {
+                db.insert("t", v(String.format("k%03d", i)), big);
+            }
+
+            List<Value> result = new ArrayList<>();
+            Iterator<Map.Entry<Value, Value>> cursor = db.scan("t", v("k050"), v("k250"));
+            cursor.forEachRemaining(e -> result.add(e.getKey()));
+
+            assertEquals(200, result.size());
+            for (int i = 0; i < result.size(); i++) {
+                assertEquals(v(String.format("k%03d", i + 50)), result.get(i));
+            }
+
+            int all = 0;
+            for (Iterator<Map.Entry<Value, Value>> it = db.scan("t", null, null); it.hasNext(); it.next()) {
+                all++;
+            }
+            assertEquals(300, all);
+        }
+    }
+
+    @Test
+    void createTableFromSortedEntriesPersistsAcrossReopen() throws Exception {
+        File file = newFile();
+        TreeMap<Value, Value> entries = new TreeMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            entries.put(v("k" + i), v("val" + i));
+        }
+        try (Database db = new Database(file, 32)) {
+            db.createTable("t", entries.entrySet().iterator(), 0.8);
+            assertEquals(v("val7"), db.get("t", v("k7")));
+        }
+        try (Database db = new Database(file, 32)) {
+            for (int i = 0; i < 2_000; i++) {
+                assertEquals(v("val" + i), db.get("t", v("k" + i)), "missing key " + i);
+            }
+        }
+    }
+
+    @Test
+    void failedBulkLoadLeavesNoTableAndHandsItsPagesBack() throws Exception {
+        File file = newFile();
+        TreeMap<Value, Value> entries = new TreeMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            entries.put(v(String.format("key%04d", i)), i % 100 == 0 ? blob(i, 10_000) : new Value(new byte[200]));
+        }
+        List<Map.Entry<Value, Value>> unsorted = new ArrayList<>(entries.entrySet());
+        unsorted.add(Map.entry(v("key0000"), v("out of order")));
+        try (Database db = new Database(file, 16)) {
+            long sizeAfterFirstRound = 0;
+            for (int round = 0; round < 5; round++) {
+                assertThrows(IllegalArgumentException.class, () -> db.createTable("t", unsorted.iterator(), 1.0));
+                assertFalse(db.tableExists("t"));
+                if (round == 0) {
+                    sizeAfterFirstRound = file.length();
+                }
+            }
+
+            assertTrue(file.length() <= sizeAfterFirstRound + 4L * Store.PAGE_SIZE,
+                    file.length() + " > " + sizeAfterFirstRound);
+            db.createTable("t", entries.entrySet().iterator(), 1.0);
+            assertEquals(blob(100, 10_000), db.get("t", v("key0100")));
+        }
+    }
+
+    @Test
+    void memoryMappedDatabaseIsReadableThroughEitherBackendAfterReopen() throws Exception {
+        File file = newFile();
+        PoolOptions mapped = PoolOptions.defaults().withStorageBackend(StorageBackend.MEMORY_MAPPED);
+        try (Database db = new Database(file, 16, mapped)) {
+            db.createTable("t");
+            for (int i = 0; i < 1_000; i++) {
+                db.insert("t", v("k" + i), v("val" + i));
+            }
+        }
+        try (Database db = new Database(file, 16, mapped)) {
+            for (int i = 0; i < 1_000; i += 7) {
+                assertEquals(v("val" + i), db.get("t", v("k" + i)), "missing key " + i);
+            }
+        }
+        try (Database db = new Database(file, 16)) {
+            assertEquals(v("val999"), db.get("t", v("k999")));
+        }
+    }
+
+    @Test
+    void getAsyncOnAsyncBackendMatchesGet() throws Exception {
+        File file = newFile();
+        try (Database db = new Database(file, 32)) {
+            db.createTable("t");
+            for (int i = 0; i < 2_000; i++) {
+                db.insert("t", v("k" + i), v("val" + i));
+            }
+        }
+        PoolOptions async = PoolOptions.defaults().withStorageBackend(StorageBackend.ASYNC_CHANNEL);
+        try (Database db = new Database(file, 16, async)) {
+            List<CompletableFuture<Value>> lookups = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                lookups.add(db.getAsync("t", v("k" + i)));
+            }
+            lookups.add(db.getAsync("t", v("missing")));
+
+            for (int i = 0; i < 2_000; i++) {
+                assertEquals(v("val" + i), lookups.get(i).get(10, TimeUnit.SECONDS), "wrong value for key " + i);
+            }
+            assertNull(lookups.get(2_000).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void insertAllMergesBatchesIntoExistingTable() throws Exception {
+        try (Database db = new Database(newFile(), 64)) {
+            db.createTable("t");
+            for (int i = 0; i < 500; i += 2) {
+                db.insert("t", v(String.format("k%04d", i)), v("old"));
+            }
+            TreeMap<Value, Value> batch = new TreeMap<>();
+            for (int i = 0; i < 3_000; i++) {
+                batch.put(v(String.format("k%04d", i)), new Value(new byte[50]));
+            }
+
+            db.insertAll("t", batch);
+
+            for (int i = 0; i < 3_000; i++) {
+                assertEquals(new Value(new byte[50]), db.get("t", v(String.format("k%04d", i))), "wrong value for key " + i);
+            }
+            int scanned = 0;
+            for (Iterator<Map.Entry<Value, Value>> it = db.scan("t", null, null); it.hasNext(); it.next()) {
+                scanned++;
+            }
+            assertEquals(3_000, scanned);
+        }
+    }
+
+    @Test
+    void getAllReturnsPresentKeysAcrossLeaves() throws Exception {
+        Value big = new Value(new byte[200]);
+        try (Database db = new Database(newFile(), 64)) {
+            db.createTable("t");
+            List<Value> lookup = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                db.insert("t", v("k" + i), big);
+                lookup.add(v("k" + i));
+                lookup.add(v("missing" + i));
+            }
+
+            Map<Value, Value> result = db.getAll("t", lookup);
+
+            assertEquals(400, result.size());
+            for (int i = 0; i < 400; i++) {
+                assertEquals(big, result.get(v("k" + i)), "missing key " + i);
+            }
+        }
+    }
+
     @Test
     void dataPersistsAcrossReopen() throws Exception {
         File file = newFile();
@@ -175,4 +352,180 @@ class DatabaseTest {
             }
         }
     }
+
+    @Test
+    void concurrentCommittedWritesSurviveCrash() throws Exception {
+        File file = newFile();
+        int threads = 8;
+        int perThread = 100;
+        Database db = new Database(file, 64);
+        db.createTable("t");
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int tid = t;
+                futures.add(exec.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        db.insert("t", v(tid + ":" + i), v("val" + i));
+                    }
+                    db.delete("t", v(tid + ":0"));
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            exec.shutdown();
+        }
+        db.crash();
+
+        try (Database reopened = new Database(file, 64)) {
+            for (int t = 0; t < threads; t++) {
+                assertNull(reopened.get("t", v(t + ":0")));
+                for (int i = 1; i < perThread; i++) {
+                    assertEquals(v("val" + i), reopened.get("t", v(t + ":" + i)), "missing key t=" + t + " i=" + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void droppedTableStaysDroppedAfterCrash() throws Exception {
+        File file = newFile();
+        Database db = new Database(file, 16);
+        db.createTable("kept");
+        db.createTable("dropped");
+        db.insert("kept", v("k"), v("v"));
+        db.dropTable("dropped");
+        db.crash();
+
+        try (Database reopened = new Database(file, 16)) {
+            assertTrue(reopened.tableExists("kept"));
+            assertFalse(reopened.tableExists("dropped"));
+            assertEquals(v("v"), reopened.get("kept", v("k")));
+        }
+    }
+
+    @Test
+    void droppedTablePagesAreReusedSoTheFileStopsGrowing() throws Exception {
+        File file = newFile();
+        try (Database db = new Database(file, 16)) {
+            long sizeAfterFirstRound = 0;
+            for (int round = 0; round < 5; round++) {
+                db.createTable("scratch");
+                for (int i = 0; i < 1000; i++) {
+                    db.insert("scratch", v(String.format("key%04d", i)), new Value(new byte[200]));
+                }
+                db.dropTable("scratch");
+                db.awaitReclaimed();
+                if (round == 0) {
+                    sizeAfterFirstRound = file.length();
+                }
+            }
+
+            assertTrue(file.length() <= sizeAfterFirstRound + 4L * Store.PAGE_SIZE,
+                    file.length() + " > " + sizeAfterFirstRound);
+            assertFalse(db.tableExists("scratch"));
+        }
+    }
+
+    @Test
+    void rejectsTableNamesThatCollideWithDroppedTableMarkers() throws Exception {
+        try (Database db = new Database(newFile(), 16)) {
+            assertThrows(IllegalArgumentException.class, () -> db.createTable("\0sneaky"));
+        }
+    }
+
+    @Test
+    void tableWithSeparateValuesKeepsLeavesSmallAndSurvivesReopen() throws Exception {
+        File file = newFile();
+        try (Database db = new Database(file, 64)) {
+            db.createTable("t", true);
+            db.insert("t", v("small"), v("inline"));
+            for (int i = 0; i < 500; i++) {
+                db.insert("t", v(String.format("key%04d", i)), blob(i, 2000));
+            }
+
+            assertTrue(file.length() < 500L * 2000 / 8, "leaves hold the values: " + file.length());
+            assertTrue(valueLogSegments() > 0);
+            assertEquals(blob(42, 2000), db.get("t", v("key0042")));
+        }
+
+        try (Database reopened = new Database(file, 64)) {
+            assertEquals(v("inline"), reopened.get("t", v("small")));
+            for (int i = 0; i < 500; i++) {
+                assertEquals(blob(i, 2000), reopened.get("t", v(String.format("key%04d", i))));
+            }
+            assertArrayEquals(blob(7, 2000).bytes(), reopened.openValue("t", v("key0007")).readAllBytes());
+        }
+    }
+
+    @Test
+    void committedWritesToSeparateValuesSurviveCrash() throws Exception {
+        File file = newFile();
+        Database db = new Database(file, 64);
+        db.createTable("t", true);
+        for (int i = 0; i < 200; i++) {
+            db.insert("t", v(String.format("key%04d", i)), blob(i, 1000));
+        }
+        db.delete("t", v("key0000"));
+        db.crash();
+
+        try (Database reopened = new Database(file, 64)) {
+            assertNull(reopened.get("t", v("key0000")));
+            for (int i = 1; i < 200; i++) {
+                assertEquals(blob(i, 1000), reopened.get("t", v(String.format("key%04d", i))));
+            }
+        }
+    }
+
+    @Test
+    void valueLogGarbageIsCollectedInTheBackground() throws Exception {
+        File file = newFile();
+        try (Database db = new Database(file, 64, PoolOptions.defaults(), 64 * 1024)) {
+            db.createTable("t", true);
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 200; i++) {
+                    db.insert("t", v(String.format("key%04d", i)), blob(round * 1000 + i, 1000));
+                }
+            }
+            for (int i = 100; i < 200; i++) {
+                db.delete("t", v(String.format("key%04d", i)));
+            }
+            db.awaitReclaimed();
+            db.get("t", v("key0000")); // ends an operation, so collected segments are deleted
+
+            // ~1 MB was appended; about 100 KB of it is live
+            assertTrue(valueLogSegments() <= 6, valueLogSegments() + " segments");
+            for (int i = 0; i < 200; i++) {
+                assertEquals(i < 100 ? blob(4000 + i, 1000) : null, db.get("t", v(String.format("key%04d", i))));
+            }
+        }
+
+        try (Database reopened = new Database(file, 64)) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(blob(4000 + i, 1000), reopened.get("t", v(String.format("key%04d", i))));
+            }
+        }
+    }
+
+    @Test
+    void droppingATableWithSeparateValuesDeletesItsValueLog() throws Exception {
+        File file = newFile();
+        try (Database db = new Database(file, 16)) {
+            db.createTable("kept");
+            db.createTable("dropped", true);
+            for (int i = 0; i < 50; i++) {
+                db.insert("dropped", v(String.format("key%04d", i)), blob(i, 1000));
+            }
+            db.dropTable("dropped");
+            db.awaitReclaimed();
+
+            assertEquals(0, valueLogSegments());
+            db.createTable("dropped");
+            assertNull(db.get("dropped", v("key0001")));
+        }
+    }
 }
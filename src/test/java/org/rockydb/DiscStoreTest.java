@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,6 +56,85 @@ class DiscStoreTest {
         }
     }
 
+    @Test
+    void writeAndReadPageRoundTripThroughDirectBuffers() throws Exception {
+        try (DiscStore given = openStore()) {
+            ByteBuffer payload = ByteBuffer.allocateDirect(Store.PAGE_SIZE);
+            payload.putLong(Store.PAGE_SIZE - Long.BYTES, 42L);
+
+            given.writePage(3L, payload);
+
+            ByteBuffer result = ByteBuffer.allocateDirect(Store.PAGE_SIZE);
+            given.readPage(3L, result);
+            assertEquals(42L, result.getLong(Store.PAGE_SIZE - Long.BYTES));
+            assertEquals(0, result.position());
+        }
+    }
+
+    @Test
+    void readPagePastEndOfFileZeroesStaleBytes() throws Exception {
+        try (DiscStore given = openStore()) {
+            ByteBuffer result = ByteBuffer.allocateDirect(Store.PAGE_SIZE);
+            result.putLong(0, -1L);
+            result.putLong(Store.PAGE_SIZE - Long.BYTES, -1L);
+
+            given.readPage(1000L, result);
+
+            assertEquals(0L, result.getLong(0));
+            assertEquals(0L, result.getLong(Store.PAGE_SIZE - Long.BYTES));
+        }
+    }
+
+    @Test
+    void mappedBackendGrowsByChunksAndTrimsFileOnClose() throws Exception {
+        dbFile = File.createTempFile("rockydb-disc-", ".db");
+        dbFile.deleteOnExit();
+        long far = MappedPageFile.CHUNK_PAGES + 3L;
+        try (DiscStore given = new DiscStore(dbFile, StorageBackend.MEMORY_MAPPED)) {
+            ByteBuffer payload = ByteBuffer.allocateDirect(Store.PAGE_SIZE);
+            payload.putLong(8, 42L);
+            long id = given.nodeIdGenerator().get();
+            while (id < far) {
+                id = given.nodeIdGenerator().get();
+            }
+
+            given.writePage(far, payload);
+
+            ByteBuffer result = ByteBuffer.allocate(Store.PAGE_SIZE);
+            given.readPage(far, result);
+            assertEquals(42L, result.getLong(8));
+            given.readPage(far + MappedPageFile.CHUNK_PAGES * 4L, result);
+            assertEquals(0L, result.getLong(8));
+        }
+
+        assertEquals((far + 1) * Store.PAGE_SIZE, dbFile.length());
+        try (DiscStore reopened = new DiscStore(dbFile)) {
+            assertEquals(42L, reopened.readRawPage(far).getLong(8));
+        }
+    }
+
+    @Test
+    void mappedBackendGivesBackTheChunkTailACrashLeftBehind() throws Exception {
+        dbFile = File.createTempFile("rockydb-disc-", ".db");
+        dbFile.deleteOnExit();
+        long last;
+        try (DiscStore given = new DiscStore(dbFile, StorageBackend.MEMORY_MAPPED)) {
+            last = given.nodeIdGenerator().get();
+            ByteBuffer payload = ByteBuffer.allocate(Store.PAGE_SIZE);
+            payload.putLong(8, 42L);
+            given.writePage(last, payload);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(dbFile, "rw")) {
+            file.setLength((long) MappedPageFile.CHUNK_PAGES * Store.PAGE_SIZE); // as mapped when the crash came
+        }
+
+        try (DiscStore reopened = new DiscStore(dbFile, StorageBackend.MEMORY_MAPPED)) {
+            assertEquals((last + 1) * Store.PAGE_SIZE, dbFile.length());
+            assertEquals(last + 1, (long) reopened.nodeIdGenerator().get());
+            assertEquals(42L, reopened.readRawPage(last).getLong(8));
+        }
+    }
+
     @Test
     void nodeIdGeneratorIsMonotonicallyIncreasing() throws Exception {
         try (DiscStore given = openStore()) {
@@ -88,4 +168,51 @@ class DiscStoreTest {
             assertEquals(allocated, reopened.rootId());
         }
     }
+
+    @Test
+    void freedPagesAreHandedOutLowestFirstAndSurviveReopen() throws Exception {
+        DiscStore first = openStore();
+        long[] ids = new long[6];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = first.nodeIdGenerator().get();
+            first.writePage(ids[i], ByteBuffer.allocate(Store.PAGE_SIZE));
+        }
+        first.freePage(ids[4]);
+        first.freePage(ids[1]);
+        first.freePage(ids[2]);
+        assertEquals(ids[1], (long) first.nodeIdGenerator().get());
+        first.checkpoint(0);
+        first.close();
+
+        try (DiscStore reopened = new DiscStore(dbFile)) {
+            // one of the two free pages holds the list until the next checkpoint
+            assertEquals(2, reopened.freePageCount());
+            long result = reopened.nodeIdGenerator().get();
+            assertTrue(result == ids[2] || result == ids[4], "allocated " + result);
+        }
+    }
+
+    @Test
+    void checkpointForcesTheLogOnceTheFreeListToStoreIsFixed() throws Exception {
+        DiscStore first = openStore();
+        long[] ids = new long[3];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = first.nodeIdGenerator().get();
+            first.writePage(ids[i], ByteBuffer.allocate(Store.PAGE_SIZE));
+        }
+        first.freePage(ids[0]);
+        int[] forced = new int[1];
+
+        first.checkpoint(0, () -> {
+            forced[0]++;
+            first.freePage(ids[1]); // logged after the force started, so not stored
+        });
+        first.close();
+
+        assertEquals(1, forced[0]);
+        try (DiscStore reopened = new DiscStore(dbFile)) {
+            assertEquals(1, reopened.freePageCount()); // ids[0], holding the list
+            assertNotEquals(ids[1], (long) reopened.nodeIdGenerator().get());
+        }
+    }
 }
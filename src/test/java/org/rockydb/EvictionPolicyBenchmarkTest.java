@@ -0,0 +1,77 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hit-ratio benchmark for the replacement policies on a mixed workload: skewed point reads over a
+ * hot set that fits in the pool, interleaved with one-pass scans over many more cold pages than the
+ * pool holds.
+ */
+class EvictionPolicyBenchmarkTest {
+    private static final int FRAMES = 64;
+    private static final int HOT_PAGES = 40;
+    private static final int COLD_PAGES = 2_000;
+    private static final int ROUNDS = 30;
+    private static final int POINT_READS_PER_ROUND = 400;
+    private static final int SCAN_LENGTH = 200;
+
+    @TempDir
+    Path dir;
+
+    private static Value v(String s) {
+        return new Value(s.getBytes());
+    }
+
+    private record HitRatios(double pointReads, double overall) {
+    }
+
+    private HitRatios hitRatios(EvictionPolicy policy) throws Exception {
+        File dbFile = dir.resolve(policy + ".db").toFile();
+        PoolOptions options = PoolOptions.defaults().withCleanerThreads(0).withEvictionPolicy(policy);
+        try (BufferedPool pool = new BufferedPool(dbFile, FRAMES, options)) {
+            long first = pool.nodeIdGenerator().get();
+            for (int i = 1; i < HOT_PAGES + COLD_PAGES; i++) {
+                pool.nodeIdGenerator().get();
+            }
+            for (long id = first; id < first + HOT_PAGES + COLD_PAGES; id++) {
+                pool.writeNode(new LeafNode(id, 1, new Value[]{v("k")}, new Value[]{v("v")}, -1L));
+            }
+
+            Random random = new Random(42);
+            long coldCursor = 0;
+            int pointHits = 0;
+            int pointReads = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < POINT_READS_PER_ROUND; i++) {
+                    long id = first + random.nextInt(HOT_PAGES);
+                    int hitsBefore = pool.getBufferHits();
+                    pool.readNode(id);
+                    pointHits += pool.getBufferHits() - hitsBefore;
+                    pointReads++;
+                }
+                for (int i = 0; i < SCAN_LENGTH; i++) {
+                    pool.readNode(first + HOT_PAGES + (coldCursor++ % COLD_PAGES));
+                }
+            }
+            return new HitRatios((double) pointHits / pointReads, pool.getHitRatio());
+        }
+    }
+
+    @Test
+    void twoQueueKeepsHotSetResidentThroughScans() throws Exception {
+        HitRatios clock = hitRatios(EvictionPolicy.CLOCK);
+        HitRatios twoQueue = hitRatios(EvictionPolicy.TWO_QUEUE);
+
+        assertTrue(twoQueue.pointReads() > clock.pointReads(), "2Q " + twoQueue + " should beat CLOCK " + clock);
+        assertTrue(twoQueue.pointReads() > 0.95, "2Q point-read hit ratio " + twoQueue.pointReads());
+        // the scans miss under either policy, so the point reads alone decide the overall ratio
+        assertTrue(twoQueue.overall() > clock.overall(), "2Q " + twoQueue + " should beat CLOCK " + clock);
+    }
+}
@@ -2,6 +2,7 @@ package org.rockydb;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -16,6 +17,24 @@ class FrameTest {
         assertEquals(Frame.FREE, given.pageId());
     }
 
+    @Test
+    void frameRejectsBufferThatIsNotOnePage() {
+        assertThrows(IllegalArgumentException.class, () -> new Frame(0, ByteBuffer.allocateDirect(16)));
+    }
+
+    @Test
+    void arenaSlicesOffHeapFramesFromDirectMemory() {
+        Frame[] result = FrameArena.allocate(3, true);
+
+        for (int i = 0; i < result.length; i++) {
+            assertEquals(i, result[i].index);
+            assertTrue(result[i].buffer.isDirect());
+            assertEquals(Store.PAGE_SIZE, result[i].buffer.capacity());
+        }
+        result[0].buffer.put(Store.PAGE_SIZE - 1, (byte) 7);
+        assertEquals(0, result[1].buffer.get(0));
+    }
+
     @Test
     void setPageIdUpdatesIdentity() {
         Frame given = new Frame(0);
@@ -108,4 +127,14 @@ class FrameTest {
         assertFalse(acquiredByOther.get());
         given.treeLatch().unlock();
     }
+
+    @Test
+    void markDirtyAndMarkCleanReportTransitionsOnce() {
+        Frame given = new Frame(0);
+
+        assertTrue(given.markDirty());
+        assertFalse(given.markDirty());
+        assertTrue(given.markClean());
+        assertFalse(given.markClean());
+    }
 }
@@ -0,0 +1,67 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FreePageListTest {
+
+    @Test
+    void chainSpanningSeveralTrunksLoadsBackEveryId() {
+        FreePageList given = new FreePageList();
+        int count = 3 * FreePageList.IDS_PER_TRUNK;
+        for (long id = 1; id <= count; id++) {
+            given.add(id);
+        }
+
+        FreePageList.Chain chain = given.prepare(() -> {
+            throw new AssertionError("enough free pages for the trunks");
+        });
+        given.commit(chain);
+
+        Map<Long, ByteBuffer> file = new HashMap<>();
+        for (int i = 0; i < chain.pages().size(); i++) {
+            file.put(chain.trunkIds().get(i), chain.pages().get(i));
+        }
+        FreePageList result = FreePageList.load(chain.head(), (id, page) -> page.put(0, file.get(id), 0, Store.PAGE_SIZE));
+        assertEquals(3, chain.trunkIds().size());
+        assertEquals(count, result.size());
+        assertEquals(4, result.poll());
+    }
+
+    @Test
+    void trunksOfTheStoredChainAreHeldBackUntilTheNextOneIsStored() {
+        AtomicLong next = new AtomicLong(100);
+        FreePageList given = new FreePageList();
+        given.add(7);
+        given.add(9);
+        FreePageList.Chain first = given.prepare(next::getAndIncrement);
+        given.commit(first);
+        given.add(7); // a stored trunk freed again during recovery is ignored
+
+        assertEquals(9, given.poll());
+        assertEquals(-1, given.poll());
+
+        given.commit(given.prepare(next::getAndIncrement));
+
+        assertEquals(7, given.poll());
+    }
+
+    @Test
+    void trimTailDropsOnlyTheTrailingRunOfFreePages() {
+        FreePageList given = new FreePageList();
+        given.add(3);
+        given.add(8);
+        given.add(9);
+
+        long result = given.trimTail(10);
+
+        assertEquals(8, result);
+        assertEquals(1, given.size());
+    }
+}
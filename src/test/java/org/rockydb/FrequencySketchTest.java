@@ -0,0 +1,47 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test
+    void frequencyCountsIncrementsPerPage() {
+        FrequencySketch given = new FrequencySketch(64);
+
+        given.increment(7L);
+        given.increment(7L);
+        given.increment(7L);
+        given.increment(8L);
+
+        assertEquals(3, given.frequency(7L));
+        assertTrue(given.frequency(8L) >= 1);
+        assertEquals(0, given.frequency(123_456L));
+    }
+
+    @Test
+    void countersSaturate() {
+        FrequencySketch given = new FrequencySketch(64);
+
+        for (int i = 0; i < 100; i++) {
+            given.increment(1L);
+        }
+
+        assertEquals(FrequencySketch.MAX_COUNT, given.frequency(1L));
+    }
+
+    @Test
+    void countersAgeAfterSampleSizeAdditions() {
+        FrequencySketch given = new FrequencySketch(4);
+        for (int i = 0; i < 8; i++) {
+            given.increment(1L);
+        }
+
+        for (long id = 100; id < 132; id++) {
+            given.increment(id);
+        }
+
+        assertTrue(given.frequency(1L) <= 4, "frequency " + given.frequency(1L));
+    }
+}
@@ -2,6 +2,10 @@ package org.rockydb;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -87,6 +91,15 @@ class LeafNodeTest {
         assertTrue(result);
     }
 
+    @Test
+    void shouldGoRightComparesWithHighKeyWhateverTheLeafHolds() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{}, new Value[]{}, 99L, v("d"));
+
+        assertFalse(given.shouldGoRight(v("czz")));
+        assertFalse(given.shouldGoRight(v("d")));
+        assertTrue(given.shouldGoRight(v("da")));
+    }
+
     @Test
     void biggestKeyReturnsLastKey() {
         LeafNode given = new LeafNode(1, 1, new Value[]{v("a"), v("c")}, new Value[]{v("1"), v("3")}, -1L);
@@ -151,4 +164,174 @@ class LeafNodeTest {
         assertArrayEquals(new Value[]{keyB}, right.getKeys());
         assertEquals(-1L, right.link());
     }
+
+    @Test
+    void copyWithAllMergesAndUpsertsRunInOnePass() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{v("b"), v("d")}, new Value[]{v("2"), v("4")}, -1L);
+        NavigableMap<Value, Value> pending = new TreeMap<>(Map.of(v("a"), v("1"), v("d"), v("44"), v("e"), v("5")));
+
+        Node.CreationResult result = given.copyWithAll(pending, noAllocation());
+
+        assertTrue(pending.isEmpty());
+        assertNull(result.right());
+        LeafNode left = (LeafNode) result.left();
+        assertArrayEquals(new Value[]{v("a"), v("b"), v("d"), v("e")}, left.getKeys());
+        assertArrayEquals(new Value[]{v("1"), v("2"), v("44"), v("5")}, left.getValues());
+    }
+
+    @Test
+    void copyWithAllStopsAtKeysBeyondLinkedLeaf() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{v("b"), v("d")}, new Value[]{v("2"), v("4")}, 99L);
+        NavigableMap<Value, Value> pending = new TreeMap<>(Map.of(v("c"), v("3"), v("z"), v("26")));
+
+        Node.CreationResult result = given.copyWithAll(pending, noAllocation());
+
+        assertEquals(Set.of(v("z")), pending.keySet());
+        assertArrayEquals(new Value[]{v("b"), v("c"), v("d")}, ((LeafNode) result.left()).getKeys());
+    }
+
+    @Test
+    void copyWithAllTakesOnlyFirstKeyIntoEmptyLinkedLeaf() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{}, new Value[]{}, 99L);
+        NavigableMap<Value, Value> pending = new TreeMap<>(Map.of(v("a"), v("1"), v("b"), v("2")));
+
+        Node.CreationResult result = given.copyWithAll(pending, noAllocation());
+
+        assertEquals(Set.of(v("b")), pending.keySet());
+        assertArrayEquals(new Value[]{v("a")}, ((LeafNode) result.left()).getKeys());
+    }
+
+    @Test
+    void copyWithAllSplitsOnceAtFirstOverflow() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{}, new Value[]{}, -1L);
+        NavigableMap<Value, Value> pending = new TreeMap<>();
+        for (int i = 0; i < 5; i++) {
+            pending.put(bytesKey(10, i), new Value(new byte[3000]));
+        }
+
+        Node.CreationResult result = given.copyWithAll(pending, () -> 555L);
+
+        assertEquals(2, pending.size());
+        assertNotNull(result.right());
+        int merged = ((LeafNode) result.left()).getKeys().length + ((LeafNode) result.right()).getKeys().length;
+        assertEquals(3, merged);
+    }
+
+    @Test
+    void mergedWithAppendsRightSiblingAndTakesOverItsLink() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{v("a"), v("b")}, new Value[]{v("1"), v("2")}, 2L);
+        LeafNode right = new LeafNode(2, 1, new Value[]{v("d")}, new Value[]{v("4")}, 9L);
+
+        LeafNode result = given.mergedWith(right);
+
+        assertEquals(1L, result.id());
+        assertArrayEquals(new Value[]{v("a"), v("b"), v("d")}, result.getKeys());
+        assertEquals(v("4"), result.getValueForKey(v("d")));
+        assertEquals(9L, result.link());
+        assertEquals(given.size() + right.size() - Store.LINK_POINTER_SIZE, result.size());
+    }
+
+    @Test
+    void separatorCutsRightKeyJustPastTheCommonPrefix() {
+        Value result = LeafNode.separator(v("https://x.com/alpha/123"), v("https://x.com/beta/1"));
+
+        assertEquals(v("https://x.com/b"), result);
+    }
+
+    @Test
+    void separatorBumpsLeftKeyWhenRightKeyIsAlreadyShort() {
+        Value result = LeafNode.separator(v("abc-long-tail"), v("abe"));
+
+        assertEquals(v("abd"), result);
+    }
+
+    @Test
+    void separatorKeepsLeftKeyWhenNothingShorterSeparates() {
+        assertEquals(v("ab"), LeafNode.separator(v("ab"), v("abc")));
+        assertEquals(v("abc"), LeafNode.separator(v("abc"), v("abd")));
+        assertEquals(v("abc-tail"), LeafNode.separator(v("abc-tail"), v("abd")));
+    }
+
+    @Test
+    void splitPromotesShortSeparatorThatStillBoundsTheLeftHalf() {
+        Value keyA = bytesKey(3000, 1);
+        Value keyB = bytesKey(3000, 2);
+        keyB.bytes()[0] = 5;
+        LeafNode given = new LeafNode(1, 1, new Value[]{keyA}, new Value[]{new Value(new byte[4000])}, -1L);
+
+        Node.CreationResult result = given.copyWith(keyB, new Value(new byte[4000]), () -> 555L);
+
+        Value promoted = result.promotedValue();
+        assertEquals(1, promoted.bytes().length);
+        assertTrue(keyA.compareTo(promoted) <= 0);
+        assertTrue(promoted.compareTo(keyB) < 0);
+    }
+
+    @Test
+    void splitBoundsTheLeftHalfByTheSeparatorAndTheRightByTheOldHighKey() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{v("azz")}, new Value[]{new Value(new byte[4100])}, 99L, v("m"));
+
+        Node.CreationResult result = given.copyWith(v("czz"), new Value(new byte[4100]), () -> 555L);
+
+        assertEquals(v("c"), result.promotedValue());
+        assertEquals(v("c"), ((LeafNode) result.left()).getHighKey());
+        assertEquals(v("m"), ((LeafNode) result.right()).getHighKey());
+        assertEquals(v("m"), ((LeafNode) result.left()).mergedWith((LeafNode) result.right()).getHighKey());
+    }
+
+    @Test
+    void sizeCountsTheHighKeyAsItIsWrittenToThePage() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{v("key-1"), v("key-2")}, new Value[]{v("1"), v("2")}, 99L, v("key-3"));
+
+        int result = given.size();
+
+        assertEquals(new LeafNode(1, 1, given.getKeys(), given.getValues(), 99L).size() + 3, result);
+        assertEquals(result, SlottedPage.leafSize(PageCodec.serialize(given)));
+    }
+
+    @Test
+    void sizeCountsSharedKeyPrefixOnce() {
+        String prefix = "x".repeat(100);
+        LeafNode given = new LeafNode(1, 1, new Value[]{v(prefix + "a"), v(prefix + "b"), v(prefix + "c")},
+                new Value[]{v("1"), v("2"), v("3")}, -1L);
+        LeafNode unshared = new LeafNode(1, 1, new Value[]{v("a" + prefix), v("b" + prefix), v("c" + prefix)},
+                new Value[]{v("1"), v("2"), v("3")}, -1L);
+
+        assertEquals(unshared.size() - 2 * prefix.length() + ByteUtils.varIntSize(prefix.length()), given.size());
+    }
+
+    @Test
+    void sizeCountsVarintLengthsAsTheyAreWrittenToThePage() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{v("k1"), v("k2")},
+                new Value[]{v("small"), new Value(new byte[300])}, -1L);
+
+        int result = given.size();
+
+        assertEquals(2 * Store.SLOT_SIZE + (1 + 2 + 1 + 5) + (1 + 2 + 2 + 300) + Store.LINK_POINTER_SIZE, result);
+        assertEquals(result, SlottedPage.leafSize(PageCodec.serialize(given)));
+    }
+
+    @Test
+    void splitMeasuresHalvesCompressedWhenAKeyBreaksTheSharedPrefix() {
+        String prefix = "p".repeat(200);
+        int count = 60;
+        Value[] keys = new Value[count];
+        Value[] values = new Value[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = v(prefix + String.format("%03d", i));
+            values[i] = v("v");
+        }
+        LeafNode given = new LeafNode(1, 1, keys, values, -1L);
+        assertFalse(Node.needsSplit(given.size()), "the shared prefix keeps the page within bounds");
+
+        Node.CreationResult result = given.copyWith(v("q"), v("v"), () -> 555L);
+
+        LeafNode left = (LeafNode) result.left();
+        LeafNode right = (LeafNode) result.right();
+        assertFalse(Node.needsSplit(left.size()));
+        assertFalse(Node.needsSplit(right.size()));
+        assertEquals(count + 1, left.getKeys().length + right.getKeys().length);
+        assertEquals(v("q"), right.biggestKey());
+        assertTrue(left.getKeys().length > right.getKeys().length, "the compressed half takes more keys");
+    }
 }
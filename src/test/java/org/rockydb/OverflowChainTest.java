@@ -0,0 +1,103 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OverflowChainTest {
+    private static final Value KEY = new Value(new byte[]{1});
+
+    private File dbFile;
+    private BufferedPool pool;
+    private OverflowChain chain;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dbFile = File.createTempFile("rockydb-overflow-", ".db");
+        dbFile.deleteOnExit();
+        pool = new BufferedPool(dbFile, 16);
+        chain = new OverflowChain(pool);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.close();
+        dbFile.delete();
+        WriteAheadLog.segmentFiles(WriteAheadLog.fileFor(dbFile)).forEach(File::delete);
+    }
+
+    private static Value randomValue(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return new Value(bytes);
+    }
+
+    @Test
+    void storedKeepsValuesUpToTheInlineLimitAsTheyAre() {
+        Value given = randomValue(OverflowChain.INLINE_LIMIT);
+
+        Value result = chain.stored(KEY, given);
+
+        assertSame(given, result);
+    }
+
+    @Test
+    void storedWritesLongerValuesToAChainThatReadsBackWhole() {
+        Value given = randomValue(2 * OverflowChain.PAGE_CAPACITY + 100);
+
+        Value result = chain.stored(KEY, given);
+
+        assertTrue(result.isOverflowRef());
+        assertEquals(OverflowChain.REF_SIZE, result.bytes().length);
+        assertEquals(given.bytes().length, OverflowChain.length(result));
+        assertEquals(given, chain.read(result));
+        assertEquals(3, chain.pageIds(result).size());
+    }
+
+    @Test
+    void chainPagesAreTakenFromTheFreeList() {
+        long freed = pool.nodeIdGenerator().get();
+        pool.freePage(freed);
+
+        Value result = chain.stored(KEY, randomValue(OverflowChain.INLINE_LIMIT + 1));
+
+        assertEquals(List.of(freed), chain.pageIds(result));
+    }
+
+    @Test
+    void openStreamsTheValueAndRunsOnCloseOnce() throws Exception {
+        Value given = randomValue(OverflowChain.PAGE_CAPACITY + 1);
+        Value ref = chain.stored(KEY, given);
+        AtomicInteger closed = new AtomicInteger();
+
+        byte[] result;
+        try (InputStream in = chain.open(ref, closed::incrementAndGet)) {
+            assertEquals(given.bytes()[0] & 0xFF, in.read());
+            byte[] rest = in.readAllBytes();
+            result = new byte[rest.length + 1];
+            result[0] = given.bytes()[0];
+            System.arraycopy(rest, 0, result, 1, rest.length);
+            in.close();
+        }
+
+        assertArrayEquals(given.bytes(), result);
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    void readRejectsAReferenceToAPageOutsideAChain() {
+        Value ref = chain.stored(KEY, randomValue(OverflowChain.INLINE_LIMIT + 1));
+        pool.writeNode(new LeafNode(chain.pageIds(ref).get(0), 1, new Value[0], new Value[0], -1L));
+
+        assertThrows(IllegalStateException.class, () -> chain.read(ref));
+    }
+}
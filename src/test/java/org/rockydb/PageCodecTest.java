@@ -12,6 +12,23 @@ class PageCodecTest {
         return new Value(s.getBytes());
     }
 
+    private static byte[] legacyLeafPage(Value[] keys, Value[] values, long link) {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        buffer.put(ByteUtils.createFlags(true));
+        buffer.putShort((short) keys.length);
+        buffer.putShort((short) 1);
+        for (Value key : keys) {
+            buffer.putInt(key.bytes().length);
+            buffer.put(key.bytes());
+        }
+        for (Value value : values) {
+            buffer.putInt(value.bytes().length);
+            buffer.put(value.bytes());
+        }
+        buffer.putLong(link);
+        return buffer.array();
+    }
+
     private static Node roundTrip(long id, Node node) {
         ByteBuffer serialized = PageCodec.serialize(node);
         serialized.rewind();
@@ -68,4 +85,117 @@ class PageCodecTest {
         LeafNode second = (LeafNode) roundTrip(1, given);
         assertEquals(v("1"), second.getValues()[0]);
     }
+
+    @Test
+    void searchOnBranchPageMatchesNextNode() {
+        BranchNode given = new BranchNode(3L, 2, new Value[]{v("b"), v("d")}, new long[]{10, 20}, 42L);
+        ByteBuffer page = PageCodec.serialize(given);
+
+        for (String key : new String[]{"a", "b", "c", "d", "z"}) {
+            Store.SearchResult result = PageCodec.search(page, v(key));
+
+            assertEquals(given.nextNode(v(key)), result.next(), "wrong step for " + key);
+            assertNull(result.value());
+        }
+    }
+
+    @Test
+    void searchOnRightmostBranchPageFallsBackToLastChild() {
+        BranchNode given = new BranchNode(3L, 2, new Value[]{v("b"), v("d")}, new long[]{10, 20}, -1L);
+
+        Store.SearchResult result = PageCodec.search(PageCodec.serialize(given), v("z"));
+
+        assertEquals(20L, result.next());
+    }
+
+    @Test
+    void searchOnLeafPageReturnsCopyOfMatchedValue() {
+        LeafNode given = new LeafNode(7, 1, new Value[]{v("a"), v("c")}, new Value[]{v("1"), v("33")}, 42L);
+        ByteBuffer page = PageCodec.serialize(given);
+
+        assertEquals(new Store.SearchResult(-1L, v("33")), PageCodec.search(page, v("c")));
+        assertEquals(new Store.SearchResult(-1L, null), PageCodec.search(page, v("b")));
+        assertEquals(new Store.SearchResult(42L, null), PageCodec.search(page, v("d")));
+    }
+
+    @Test
+    void searchOnEmptyLeafPageNeverGoesRight() {
+        LeafNode given = new LeafNode(7, 1, new Value[]{}, new Value[]{}, 42L);
+
+        Store.SearchResult result = PageCodec.search(PageCodec.serialize(given), v("a"));
+
+        assertEquals(new Store.SearchResult(-1L, null), result);
+    }
+
+    @Test
+    void serializeWritesSlottedFormatWithVarintLengths() {
+        LeafNode given = new LeafNode(1, 1, new Value[]{v("a")}, new Value[]{v("1")}, -1L);
+
+        byte[] result = PageCodec.serialize(given).array();
+
+        assertEquals(ByteUtils.FORMAT_VARINT, ByteUtils.readFormatFlag(result[0]));
+        assertTrue(ByteUtils.readIsLeafFlag(result[0]));
+    }
+
+    @Test
+    void serializeIntoReusedDirectBufferOverwritesPreviousPage() {
+        ByteBuffer given = ByteBuffer.allocateDirect(Store.PAGE_SIZE);
+        PageCodec.serialize(new BranchNode(3L, 2, new Value[]{v("m"), v("z")}, new long[]{10, 20}, 5L), given);
+        LeafNode leaf = new LeafNode(4L, 1, new Value[]{v("a")}, new Value[]{v("1")}, -1L);
+
+        PageCodec.serialize(leaf, given);
+
+        LeafNode result = (LeafNode) PageCodec.deserialize(4L, given);
+        assertArrayEquals(leaf.getKeys(), result.getKeys());
+        assertArrayEquals(leaf.getValues(), result.getValues());
+        assertEquals(-1L, result.link());
+        assertEquals(0, given.position());
+    }
+
+    @Test
+    void legacyPagesAreStillReadableAndSearchable() {
+        byte[] given = legacyLeafPage(new Value[]{v("a"), v("c")}, new Value[]{v("1"), v("3")}, 42L);
+
+        LeafNode result = (LeafNode) PageCodec.deserialize(9, ByteBuffer.wrap(given));
+
+        assertArrayEquals(new Value[]{v("a"), v("c")}, result.getKeys());
+        assertArrayEquals(new Value[]{v("1"), v("3")}, result.getValues());
+        assertEquals(42L, result.link());
+        assertEquals(new Store.SearchResult(-1L, v("3")), PageCodec.search(ByteBuffer.wrap(given), v("c")));
+        assertEquals(new Store.SearchResult(42L, null), PageCodec.search(ByteBuffer.wrap(given), v("d")));
+    }
+
+    @Test
+    void fullLegacyPageIsRewrittenWithSlotsOnceLengthsAreVarints() {
+        int count = 800;
+        Value[] keys = new Value[count];
+        Value[] values = new Value[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = new Value(new byte[]{(byte) (i >> 8), (byte) i});
+            values[i] = new Value(new byte[0]);
+        }
+        LeafNode given = new LeafNode(1, 1, keys, values, -1L);
+
+        ByteBuffer serialized = PageCodec.serialize(given);
+
+        assertEquals(ByteUtils.FORMAT_VARINT, ByteUtils.readFormatFlag(serialized.get(0)));
+        LeafNode result = (LeafNode) roundTrip(1, given);
+        assertArrayEquals(keys, result.getKeys());
+    }
+
+    @Test
+    void branchWithSharedKeyPrefixRoundTripsAndSearchesThroughPrefixedPage() {
+        BranchNode given = new BranchNode(3L, 2,
+                new Value[]{v("2024-01-01T10"), v("2024-01-01T12"), v("2024-01-01T14")}, new long[]{10, 20, 30}, 5L);
+
+        ByteBuffer page = PageCodec.serialize(given);
+
+        assertEquals(ByteUtils.FORMAT_VARINT_PREFIXED, ByteUtils.readFormatFlag(page.get(0)));
+        BranchNode result = (BranchNode) roundTrip(3L, given);
+        assertArrayEquals(given.getKeys(), result.getKeys());
+        assertArrayEquals(given.getPointers(), result.getPointers());
+        assertEquals(20L, PageCodec.search(page, v("2024-01-01T11")).next());
+        assertEquals(10L, PageCodec.search(page, v("2023")).next());
+        assertEquals(5L, PageCodec.search(page, v("2024-01-02")).next());
+    }
 }
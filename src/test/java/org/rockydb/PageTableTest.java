@@ -0,0 +1,107 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageTableTest {
+
+    @Test
+    void getReturnsAbsentForUnknownPage() {
+        PageTable given = new PageTable(16);
+
+        assertEquals(PageTable.ABSENT, given.get(42L));
+    }
+
+    @Test
+    void putIfAbsentInstallsMappingOnce() {
+        PageTable given = new PageTable(16);
+
+        assertEquals(PageTable.ABSENT, given.putIfAbsent(42L, 3));
+        assertEquals(3, given.putIfAbsent(42L, 7));
+
+        assertEquals(3, given.get(42L));
+    }
+
+    @Test
+    void removeOnlyDropsMappingToExpectedFrame() {
+        PageTable given = new PageTable(16);
+        given.putIfAbsent(42L, 3);
+
+        assertFalse(given.remove(42L, 4));
+        assertEquals(3, given.get(42L));
+
+        assertTrue(given.remove(42L, 3));
+        assertEquals(PageTable.ABSENT, given.get(42L));
+    }
+
+    @Test
+    void removedSlotsAreReclaimedWithoutGrowing() {
+        PageTable given = new PageTable(8);
+        int capacity = given.capacity();
+
+        for (long page = 0; page < capacity * 10L; page++) {
+            int frame = (int) (page % 8);
+            assertEquals(PageTable.ABSENT, given.putIfAbsent(page, frame));
+            if (page >= 8) {
+                assertTrue(given.remove(page - 8, frame));
+            }
+        }
+
+        assertEquals(capacity, given.capacity());
+        for (long page = capacity * 10L - 8; page < capacity * 10L; page++) {
+            assertEquals((int) (page % 8), given.get(page));
+        }
+        assertEquals(PageTable.ABSENT, given.get(capacity * 10L - 9));
+    }
+
+    @Test
+    void largeFrameIndicesAndPageIdsRoundTrip() {
+        PageTable given = new PageTable(1 << 20);
+
+        given.putIfAbsent(1L << 40, (1 << 20) - 1);
+
+        assertEquals((1 << 20) - 1, given.get(1L << 40));
+    }
+
+    @Test
+    void concurrentInstallsOfSamePageHaveSingleWinner() throws Exception {
+        int threads = 8;
+        PageTable given = new PageTable(64);
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        try {
+            for (long page = 0; page < 200; page++) {
+                long id = page;
+                CountDownLatch start = new CountDownLatch(1);
+                AtomicInteger winners = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int frame = t;
+                    futures.add(exec.submit(() -> {
+                        start.await();
+                        if (given.putIfAbsent(id, frame) == PageTable.ABSENT) {
+                            winners.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+                assertEquals(1, winners.get(), "page " + id);
+                assertTrue(given.remove(id, given.get(id)));
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PoolOptionsTest {
+
+    @Test
+    void eachWitherSetsTheComponentItNames() {
+        PoolOptions result = PoolOptions.defaults()
+                .withOffHeapFrames(true)
+                .withCleanerThreads(3)
+                .withDirtyRatios(0.2, 0.4)
+                .withCleanerIntervalMillis(70)
+                .withEvictionPolicy(EvictionPolicy.TWO_QUEUE)
+                .withPrefetchThreads(5)
+                .withStorageBackend(StorageBackend.MEMORY_MAPPED)
+                .withWriteAheadLog(false)
+                .withCheckpointIntervalMillis(9_000)
+                .withCheckpointLogBytes(1024)
+                .withCheckpointPagesPerSecond(11);
+
+        assertEquals(new PoolOptions(true, 3, 0.2, 0.4, 70, EvictionPolicy.TWO_QUEUE, 5, StorageBackend.MEMORY_MAPPED, false,
+                9_000, 1024, 11), result);
+    }
+
+    @Test
+    void withersValidateLikeTheConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> PoolOptions.defaults().withDirtyRatios(0.5, 0.4));
+        assertThrows(IllegalArgumentException.class, () -> PoolOptions.defaults().withCheckpointLogBytes(0));
+    }
+}
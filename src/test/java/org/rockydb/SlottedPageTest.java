@@ -0,0 +1,359 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlottedPageTest {
+
+    private static Value v(String s) {
+        return new Value(s.getBytes());
+    }
+
+    private static LeafNode read(ByteBuffer page) {
+        return (LeafNode) SlottedPage.read(1L, page);
+    }
+
+    private static ByteBuffer linkedLeafPage(long link, String... keys) {
+        ByteBuffer page = leafPage(keys);
+        page.putLong(SlottedPage.LINK_OFFSET, link);
+        return page;
+    }
+
+    private static ByteBuffer leafPage(String... keys) {
+        Value[] k = new Value[keys.length];
+        Value[] values = new Value[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            k[i] = v(keys[i]);
+            values[i] = v(keys[i] + keys[i]);
+        }
+        ByteBuffer page = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        SlottedPage.write(page, 1, k, values, -1L);
+        return page;
+    }
+
+    @Test
+    void findBinarySearchesSlotArray() {
+        ByteBuffer given = leafPage("b", "d", "f", "h");
+
+        assertEquals(0, SlottedPage.find(given, v("b")));
+        assertEquals(3, SlottedPage.find(given, v("h")));
+        assertEquals(-1, SlottedPage.find(given, v("a")));
+        assertEquals(-3, SlottedPage.find(given, v("e")));
+        assertEquals(-5, SlottedPage.find(given, v("z")));
+    }
+
+    @Test
+    void cellsFillHeapFromEndOfPage() {
+        ByteBuffer given = leafPage("a", "b");
+
+        int heapStart = given.getShort(SlottedPage.HEAP_START_OFFSET);
+
+        assertEquals(Store.PAGE_SIZE - 2 * (2 * ByteUtils.varIntSize(2) + 3), heapStart);
+        assertEquals(heapStart, SlottedPage.cellAt(given, 0));
+        assertTrue(SlottedPage.cellAt(given, 1) > SlottedPage.cellAt(given, 0));
+    }
+
+    @Test
+    void readRestoresBranchNode() {
+        ByteBuffer page = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        SlottedPage.write(page, 3, new Value[]{v("a"), v("c")}, new long[]{10, 20}, 7L);
+
+        BranchNode result = (BranchNode) SlottedPage.read(5L, page);
+
+        assertEquals(5L, result.id());
+        assertEquals(3, result.height());
+        assertEquals(7L, result.link());
+        assertArrayEquals(new Value[]{v("a"), v("c")}, result.getKeys());
+        assertArrayEquals(new long[]{10, 20}, result.getPointers());
+    }
+
+    @Test
+    void fitsAccountsForHeaderSlotsAndCells() {
+        int header = SlottedPage.SLOTS_OFFSET;
+
+        assertTrue(SlottedPage.fits(Store.PAGE_SIZE - header - Store.SLOT_SIZE, 1));
+        assertFalse(SlottedPage.fits(Store.PAGE_SIZE - header - Store.SLOT_SIZE + 1, 1));
+    }
+
+    @Test
+    void putInsertsNewKeyBetweenExistingSlots() {
+        ByteBuffer given = leafPage("a", "c");
+
+        boolean result = SlottedPage.put(given, v("b"), v("2"));
+
+        assertTrue(result);
+        assertArrayEquals(new Value[]{v("a"), v("b"), v("c")}, read(given).getKeys());
+        assertArrayEquals(new Value[]{v("aa"), v("2"), v("cc")}, read(given).getValues());
+    }
+
+    @Test
+    void putOverwritesValueOfSameLengthWithoutAllocating() {
+        ByteBuffer given = leafPage("a", "c");
+        int heapBefore = given.getShort(SlottedPage.HEAP_START_OFFSET);
+
+        assertTrue(SlottedPage.put(given, v("c"), v("xy")));
+
+        assertEquals(heapBefore, given.getShort(SlottedPage.HEAP_START_OFFSET));
+        assertEquals(v("xy"), read(given).getValueForKey(v("c")));
+    }
+
+    @Test
+    void putRelocatesValueOfDifferentLength() {
+        ByteBuffer given = leafPage("a", "c");
+
+        assertTrue(SlottedPage.put(given, v("a"), v("longer value")));
+
+        assertArrayEquals(new Value[]{v("longer value"), v("cc")}, read(given).getValues());
+    }
+
+    @Test
+    void putRefusesKeyBeyondLinkedLeaf() {
+        ByteBuffer given = linkedLeafPage(9L, "a", "c");
+
+        assertFalse(SlottedPage.put(given, v("d"), v("4")));
+        assertTrue(SlottedPage.put(given, v("b"), v("2")));
+    }
+
+    @Test
+    void putRefusesCellThatWouldOverflowPage() {
+        ByteBuffer given = leafPage("a");
+        Value big = new Value(new byte[Store.PAGE_SIZE / 2]);
+        assertTrue(SlottedPage.put(given, v("b"), big));
+
+        boolean result = SlottedPage.put(given, v("c"), big);
+
+        assertFalse(result);
+        assertArrayEquals(new Value[]{v("a"), v("b")}, read(given).getKeys());
+    }
+
+    @Test
+    void putCompactsHeapLeftFragmentedByRemovals() {
+        ByteBuffer given = leafPage("a");
+        Value big = new Value(new byte[Store.PAGE_SIZE / 3]);
+        assertTrue(SlottedPage.put(given, v("b"), big));
+        assertTrue(SlottedPage.put(given, v("c"), big));
+        assertTrue(SlottedPage.remove(given, v("b")));
+
+        boolean result = SlottedPage.put(given, v("d"), big);
+
+        assertTrue(result);
+        assertArrayEquals(new Value[]{v("a"), v("c"), v("d")}, read(given).getKeys());
+        assertEquals(big, read(given).getValueForKey(v("c")));
+        assertEquals(v("aa"), read(given).getValueForKey(v("a")));
+    }
+
+    @Test
+    void removeClosesSlotGap() {
+        ByteBuffer given = leafPage("a", "b", "c");
+
+        assertTrue(SlottedPage.remove(given, v("b")));
+
+        assertArrayEquals(new Value[]{v("a"), v("c")}, read(given).getKeys());
+        assertArrayEquals(new Value[]{v("aa"), v("cc")}, read(given).getValues());
+    }
+
+    @Test
+    void removeOfAbsentKeyLeavesPageUntouched() {
+        ByteBuffer given = leafPage("a", "c");
+        byte[] before = given.array().clone();
+
+        assertTrue(SlottedPage.remove(given, v("b")));
+
+        assertArrayEquals(before, given.array());
+    }
+
+    @Test
+    void removeRefusesKeyBeyondLinkedLeaf() {
+        ByteBuffer given = linkedLeafPage(9L, "a", "c");
+
+        assertFalse(SlottedPage.remove(given, v("z")));
+    }
+
+    @Test
+    void highKeyIsReadBackAndRoutesOnlyKeysAboveItRight() {
+        ByteBuffer given = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        SlottedPage.write(given, 1, new Value[]{v("tenant-42/a"), v("tenant-42/c")}, new Value[]{v("1"), v("3")}, 9L,
+                v("tenant-42/d"));
+
+        assertEquals(v("tenant-42/d"), read(given).getHighKey());
+        assertArrayEquals(new Value[]{v("tenant-42/a"), v("tenant-42/c")}, read(given).getKeys());
+        assertEquals(new Store.SearchResult(-1, null), SlottedPage.search(given, v("tenant-42/cz")));
+        assertEquals(new Store.SearchResult(9L, null), SlottedPage.search(given, v("tenant-42/da")));
+    }
+
+    @Test
+    void emptyLeafWithHighKeyKeepsRoutingKeysAboveItRight() {
+        ByteBuffer given = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        SlottedPage.write(given, 1, new Value[]{}, new Value[]{}, 9L, v("d"));
+
+        assertEquals(new Store.SearchResult(-1, null), SlottedPage.search(given, v("c")));
+        assertEquals(new Store.SearchResult(9L, null), SlottedPage.search(given, v("e")));
+        assertTrue(SlottedPage.remove(given, v("c")));
+        assertFalse(SlottedPage.remove(given, v("e")));
+    }
+
+    @Test
+    void lastKeyOfAPageWithHighKeyIsNeitherAddedNorRemovedInPlace() {
+        ByteBuffer given = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        SlottedPage.write(given, 1, new Value[]{v("a"), v("c")}, new Value[]{v("1"), v("3")}, 9L, v("d"));
+
+        assertFalse(SlottedPage.put(given, v("cz"), v("4")));
+        assertFalse(SlottedPage.remove(given, v("c")));
+        assertTrue(SlottedPage.put(given, v("b"), v("2")));
+        assertTrue(SlottedPage.remove(given, v("a")));
+        assertArrayEquals(new Value[]{v("b"), v("c")}, read(given).getKeys());
+        assertEquals(v("d"), read(given).getHighKey());
+    }
+
+    @Test
+    void putAndRemoveEditDirectBuffersInPlace() {
+        ByteBuffer given = ByteBuffer.allocateDirect(Store.PAGE_SIZE);
+        given.put(0, leafPage("a", "c").array());
+
+        assertTrue(SlottedPage.put(given, v("b"), v("2")));
+        assertTrue(SlottedPage.remove(given, v("a")));
+
+        assertArrayEquals(new Value[]{v("b"), v("c")}, read(given).getKeys());
+        assertArrayEquals(new Value[]{v("2"), v("cc")}, read(given).getValues());
+        assertEquals(0, given.position());
+    }
+
+    @Test
+    void sharedKeyPrefixIsStoredOnceAndKeysReadBackWhole() {
+        ByteBuffer given = leafPage("tenant-42/a", "tenant-42/c", "tenant-42/e");
+
+        assertEquals(ByteUtils.FORMAT_VARINT_PREFIXED, ByteUtils.readFormatFlag(given.get(0)));
+        assertEquals("tenant-42/".length(), SlottedPage.prefixLength(given));
+        assertArrayEquals(new Value[]{v("tenant-42/a"), v("tenant-42/c"), v("tenant-42/e")}, read(given).getKeys());
+        assertArrayEquals(new Value[]{v("tenant-42/atenant-42/a"), v("tenant-42/ctenant-42/c"), v("tenant-42/etenant-42/e")},
+                read(given).getValues());
+    }
+
+    @Test
+    void findOnPrefixedPageSettlesKeysOutsideThePrefixWithoutSearching() {
+        ByteBuffer given = leafPage("tenant-42/b", "tenant-42/d");
+
+        assertEquals(1, SlottedPage.find(given, v("tenant-42/d")));
+        assertEquals(-2, SlottedPage.find(given, v("tenant-42/c")));
+        assertEquals(-1, SlottedPage.find(given, v("tenant-41/z")));
+        assertEquals(-1, SlottedPage.find(given, v("tenant")));
+        assertEquals(-3, SlottedPage.find(given, v("tenant-43/a")));
+    }
+
+    @Test
+    void putOnPrefixedPageKeepsPrefixAndRefusesKeysWithoutIt() {
+        ByteBuffer given = leafPage("tenant-42/b", "tenant-42/d");
+
+        assertTrue(SlottedPage.put(given, v("tenant-42/c"), v("3")));
+        assertTrue(SlottedPage.remove(given, v("tenant-42/b")));
+        boolean result = SlottedPage.put(given, v("tenant-43/a"), v("1"));
+
+        assertFalse(result);
+        assertArrayEquals(new Value[]{v("tenant-42/c"), v("tenant-42/d")}, read(given).getKeys());
+        assertEquals(v("3"), read(given).getValueForKey(v("tenant-42/c")));
+    }
+
+    @Test
+    void shortPrefixThatDoesNotPayForItselfIsNotStored() {
+        ByteBuffer given = leafPage("ab", "ac");
+
+        assertEquals(ByteUtils.FORMAT_VARINT, ByteUtils.readFormatFlag(given.get(0)));
+        assertEquals(0, SlottedPage.prefixLength(given));
+    }
+
+    @Test
+    void lengthsOfAHundredAndTwentyEightBytesOrMoreTakeTwoVarintBytes() {
+        Value key = new Value(new byte[200]);
+        Value value = new Value(new byte[1000]);
+        ByteBuffer given = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        SlottedPage.write(given, 1, new Value[]{key, v("a")}, new Value[]{value, v("1")}, -1L);
+
+        assertEquals(Store.PAGE_SIZE - (2 + 200 + 2 + 1000) - (1 + 1 + 1 + 1), given.getShort(SlottedPage.HEAP_START_OFFSET));
+        assertArrayEquals(new Value[]{key, v("a")}, read(given).getKeys());
+        assertEquals(value, read(given).getValueForKey(key));
+        assertEquals(new Store.SearchResult(-1, value), SlottedPage.search(given, key));
+    }
+
+    @Test
+    void pagesWithFourByteLengthsAreReadAndSearchedButNotUpdatedInPlace() {
+        ByteBuffer given = fourByteLengthLeafPage("", "b", "d");
+
+        assertArrayEquals(new Value[]{v("b"), v("d")}, read(given).getKeys());
+        assertArrayEquals(new Value[]{v("vb"), v("vd")}, read(given).getValues());
+        assertEquals(new Store.SearchResult(-1, v("vd")), SlottedPage.search(given, v("d")));
+        assertEquals(-2, SlottedPage.find(given, v("c")));
+        assertFalse(SlottedPage.put(given, v("c"), v("3")));
+        assertFalse(SlottedPage.remove(given, v("b")));
+        assertEquals(-1, SlottedPage.leafSize(given));
+    }
+
+    @Test
+    void prefixedPagesWithFourByteLengthsAreReadWithTheirShortPrefix() {
+        ByteBuffer given = fourByteLengthLeafPage("tenant-42/", "b", "d");
+
+        assertEquals("tenant-42/".length(), SlottedPage.prefixLength(given));
+        assertArrayEquals(new Value[]{v("tenant-42/b"), v("tenant-42/d")}, read(given).getKeys());
+        assertEquals(new Store.SearchResult(-1, v("vd")), SlottedPage.search(given, v("tenant-42/d")));
+        assertEquals(-1, SlottedPage.find(given, v("tenant-41/z")));
+        assertEquals(-2, SlottedPage.find(given, v("tenant-42/c")));
+    }
+
+    /**
+     * A leaf page as written before lengths were varints: {@link ByteUtils#FORMAT_SLOTTED}, or
+     * {@link ByteUtils#FORMAT_PREFIXED} with a short prefix length when {@code prefix} is not empty.
+     */
+    @Test
+    void overflowReferencesAreMarkedByTheirLengthAndReadBackAsReferences() {
+        Value ref = new Value(new byte[OverflowChain.REF_SIZE], true);
+        ByteBuffer given = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        SlottedPage.write(given, 1, new Value[]{v("a"), v("b")}, new Value[]{ref, v("bb")}, -1L);
+
+        LeafNode result = read(given);
+
+        assertTrue(result.getValues()[0].isOverflowRef());
+        assertEquals(ref, result.getValues()[0]);
+        assertFalse(result.getValues()[1].isOverflowRef());
+        assertEquals(ref, SlottedPage.search(given, v("a")).value());
+        assertEquals(result.size(), SlottedPage.leafSize(given));
+    }
+
+    @Test
+    void overflowReferencesAreNeitherOverwrittenNorRemovedInPlace() {
+        Value ref = new Value(new byte[OverflowChain.REF_SIZE], true);
+        ByteBuffer given = leafPage("b");
+        assertTrue(SlottedPage.put(given, v("a"), ref));
+
+        assertFalse(SlottedPage.put(given, v("a"), new Value(new byte[OverflowChain.REF_SIZE], true)));
+        assertFalse(SlottedPage.remove(given, v("a")));
+        assertEquals(ref, read(given).getValueForKey(v("a")));
+    }
+
+    private static ByteBuffer fourByteLengthLeafPage(String prefix, String... suffixes) {
+        ByteBuffer page = ByteBuffer.wrap(new byte[Store.PAGE_SIZE]);
+        int slots = SlottedPage.SLOTS_OFFSET;
+        if (!prefix.isEmpty()) {
+            page.putShort(SlottedPage.PREFIX_OFFSET, (short) prefix.length());
+            page.put(SlottedPage.PREFIX_OFFSET + SlottedPage.PREFIX_LENGTH_SIZE, prefix.getBytes());
+            slots += SlottedPage.PREFIX_LENGTH_SIZE + prefix.length();
+        }
+        int heap = Store.PAGE_SIZE;
+        for (int i = suffixes.length - 1; i >= 0; i--) {
+            byte[] suffix = suffixes[i].getBytes();
+            byte[] value = ("v" + suffixes[i]).getBytes();
+            heap -= 2 * Store.KEY_PREFIX_SIZE + suffix.length + value.length;
+            page.putInt(heap, suffix.length).put(heap + Store.KEY_PREFIX_SIZE, suffix);
+            int valueAt = heap + Store.KEY_PREFIX_SIZE + suffix.length;
+            page.putInt(valueAt, value.length).put(valueAt + Store.KEY_PREFIX_SIZE, value);
+            page.putShort(slots + i * Store.SLOT_SIZE, (short) heap);
+        }
+        page.put(0, ByteUtils.createFlags(true, prefix.isEmpty() ? ByteUtils.FORMAT_SLOTTED : ByteUtils.FORMAT_PREFIXED));
+        page.putShort(SlottedPage.COUNT_OFFSET, (short) suffixes.length);
+        page.putShort(SlottedPage.HEIGHT_OFFSET, (short) 1);
+        page.putShort(SlottedPage.HEAP_START_OFFSET, (short) heap);
+        page.putLong(SlottedPage.LINK_OFFSET, -1L);
+        return page;
+    }
+}
@@ -0,0 +1,83 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TwoQueueClockTest {
+
+    private static Frame[] frames(int n) {
+        Frame[] frames = new Frame[n];
+        for (int i = 0; i < n; i++) {
+            frames[i] = new Frame(i);
+        }
+        return frames;
+    }
+
+    private static void load(TwoQueueClock policy, Frame frame, long pageId) {
+        frame.setPageId(pageId);
+        frame.resetUsage();
+        policy.recordLoad(frame);
+    }
+
+    @Test
+    void reReferencedPageIsProtected() {
+        Frame[] frames = frames(4);
+        TwoQueueClock given = new TwoQueueClock(frames);
+        load(given, frames[0], 10L);
+
+        given.recordAccess(frames[0]);
+        assertFalse(given.isProtected(frames[0]));
+
+        given.recordAccess(frames[0]);
+        assertTrue(given.isProtected(frames[0]));
+    }
+
+    @Test
+    void scanRecyclesProbationFramesAndKeepsProtectedOnes() {
+        Frame[] frames = frames(4);
+        TwoQueueClock given = new TwoQueueClock(frames);
+        load(given, frames[0], 1L);
+        given.recordAccess(frames[0]);
+        given.recordAccess(frames[0]);
+        for (int i = 1; i < frames.length; i++) {
+            load(given, frames[i], 100L + i);
+            given.recordAccess(frames[i]);
+        }
+
+        for (long page = 200; page < 220; page++) {
+            Frame victim = given.findVictim();
+            assertNotSame(frames[0], victim, "hot page evicted by scan page " + page);
+            load(given, victim, page);
+            given.recordAccess(victim);
+            victim.releaseClaim();
+        }
+    }
+
+    @Test
+    void frequentlySeenPageIsProtectedOnReload() {
+        Frame[] frames = frames(4);
+        TwoQueueClock given = new TwoQueueClock(frames);
+        load(given, frames[0], 5L);
+        given.recordAccess(frames[0]);
+        given.recordAccess(frames[0]);
+        load(given, frames[0], 6L);
+        given.recordAccess(frames[0]);
+
+        assertFalse(given.isProtected(frames[0]));
+
+        load(given, frames[1], 5L);
+
+        assertTrue(given.isProtected(frames[1]));
+    }
+
+    @Test
+    void findVictimThrowsWhenAllFramesPinned() {
+        Frame[] frames = frames(2);
+        frames[0].pin();
+        frames[1].pin();
+        TwoQueueClock given = new TwoQueueClock(frames);
+
+        assertThrows(BufferExhaustedException.class, given::findVictim);
+    }
+}
@@ -0,0 +1,238 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueLogTest {
+    private static final long SEGMENT_SIZE = 16 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private File basePath;
+    private ValueLog log;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        basePath = tempDir.resolve("rocky.db.vlog.1").toFile();
+        log = new ValueLog(basePath, SEGMENT_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        log.close();
+    }
+
+    private static Value key(int i) {
+        return new Value(String.format("key%05d", i).getBytes());
+    }
+
+    private static Value randomValue(int seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return new Value(bytes);
+    }
+
+    /** A tree rooted at the pool's root page that keeps its values in {@code log}, synced by the pool. */
+    private static BLinkTree treeOver(BufferedPool pool, ValueLog log) {
+        pool.registerValueStorage(log);
+        return new BLinkTree(pool, new RootRef() {
+            @Override
+            public long get() {
+                return pool.rootId();
+            }
+
+            @Override
+            public void set(long rootId) {
+                pool.updateRootId(rootId);
+            }
+        }, log);
+    }
+
+    @Test
+    void storedKeepsValuesNoLongerThanAReferenceInline() {
+        Value given = randomValue(1, ValueLog.REF_SIZE);
+
+        Value result = log.stored(key(1), given);
+
+        assertSame(given, result);
+    }
+
+    @Test
+    void storedAppendsLongerValuesThatReadBackWhole() {
+        Value given = randomValue(1, 1000);
+
+        Value result = log.stored(key(1), given);
+
+        assertTrue(result.isOverflowRef());
+        assertEquals(ValueLog.REF_SIZE, result.bytes().length);
+        assertEquals(1000, ValueLog.length(result));
+        assertEquals(given, log.read(result));
+    }
+
+    @Test
+    void appendsRollOverToANewSegmentAtTheSegmentSize() {
+        List<Value> refs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            refs.add(log.stored(key(i), randomValue(i, 1000)));
+        }
+
+        assertEquals(3, log.segmentCount());
+        assertEquals(3, ValueLog.segmentFiles(basePath).size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(randomValue(i, 1000), log.read(refs.get(i)));
+        }
+    }
+
+    @Test
+    void reopeningCutsOffATornRecordAtTheEnd() throws Exception {
+        Value first = log.stored(key(1), randomValue(1, 100));
+        Value second = log.stored(key(2), randomValue(2, 100));
+        log.sync();
+        log.close();
+        File segment = ValueLog.segmentFiles(basePath).get(0);
+        long length = segment.length();
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            out.write(new byte[]{0, 0, 0, 1, 0, 0, 0, 5, 0, 0, 0, 100, 1, 2}); // header and part of a key
+        }
+
+        log = new ValueLog(basePath, SEGMENT_SIZE);
+        Value third = log.stored(key(3), randomValue(3, 100));
+
+        assertEquals(randomValue(1, 100), log.read(first));
+        assertEquals(randomValue(2, 100), log.read(second));
+        assertEquals(randomValue(3, 100), log.read(third));
+        assertEquals(length + ValueLog.RECORD_HEADER_SIZE + key(3).bytes().length, ValueLog.offset(third));
+    }
+
+    @Test
+    void valuesAreForcedByTheCommitThatForcesTheirReferences() throws Exception {
+        File dbFile = tempDir.resolve("rocky.db").toFile();
+        try (BufferedPool pool = new BufferedPool(dbFile, 64, PoolOptions.defaults().withCheckpointIntervalMillis(0))) {
+            BLinkTree tree = treeOver(pool, log);
+            long logForces = pool.getLogForces();
+
+            tree.addValue(key(1), randomValue(1, 1000));
+            tree.addValue(key(2), randomValue(2, 1000));
+            assertEquals(0, log.forces());
+
+            pool.commit();
+
+            assertEquals(1, log.forces());
+            assertEquals(logForces + 1, pool.getLogForces());
+        }
+    }
+
+    @Test
+    void openReadsTheValueAndEndsTheOperationAtOnce() throws Exception {
+        Value given = randomValue(1, 500);
+        Value ref = log.stored(key(1), given);
+        AtomicInteger closed = new AtomicInteger();
+
+        try (InputStream in = log.open(ref, closed::incrementAndGet)) {
+            assertEquals(1, closed.get());
+            assertArrayEquals(given.bytes(), in.readAllBytes());
+        }
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    void collectMovesLiveValuesOutOfSegmentsThatAreMostlyGarbage() throws Exception {
+        File dbFile = tempDir.resolve("rocky.db").toFile();
+        try (BufferedPool pool = new BufferedPool(dbFile, 64)) {
+            BLinkTree tree = treeOver(pool, log);
+            for (int i = 0; i < 45; i++) {
+                tree.addValue(key(i), randomValue(i, 1000));
+            }
+            for (int i = 0; i < 30; i++) {
+                if (i % 3 == 0) {
+                    tree.delete(key(i));
+                } else if (i % 3 == 1) {
+                    tree.addValue(key(i), randomValue(-i, 1000));
+                }
+            }
+            int before = log.segmentCount();
+            assertTrue(log.needsCollection());
+
+            while (log.collect(tree, pool::commit)) {
+                // collect every segment that is due
+            }
+            tree.get(key(0)); // ends an operation, so the collected segments are deleted
+
+            assertFalse(log.needsCollection());
+            assertTrue(log.segmentCount() < before, log.segmentCount() + " >= " + before);
+            assertEquals(log.segmentCount(), ValueLog.segmentFiles(basePath).size());
+            for (int i = 0; i < 45; i++) {
+                Value expected = i >= 30 || i % 3 == 2 ? randomValue(i, 1000) : i % 3 == 1 ? randomValue(-i, 1000) : null;
+                assertEquals(expected, tree.get(key(i)), "key " + i);
+            }
+        }
+    }
+
+    @Test
+    void collectMeasuresSegmentsFoundOnOpeningBeforeCollectingThem() throws Exception {
+        File dbFile = tempDir.resolve("rocky.db").toFile();
+        try (BufferedPool pool = new BufferedPool(dbFile, 64)) {
+            BLinkTree tree = treeOver(pool, log);
+            for (int i = 0; i < 45; i++) {
+                tree.addValue(key(i), randomValue(i, 1000));
+            }
+            log.close();
+            log = new ValueLog(basePath, SEGMENT_SIZE);
+            BLinkTree reopened = treeOver(pool, log);
+            int before = log.segmentCount();
+
+            while (log.collect(reopened, pool::commit)) {
+                // measures every sealed segment, all of it live
+            }
+
+            assertEquals(before, log.segmentCount());
+            assertFalse(log.needsCollection());
+            assertEquals(randomValue(7, 1000), reopened.get(key(7)));
+        }
+    }
+
+    @Test
+    void reopeningMeasuresTheSegmentItKeepsAppendingTo() throws Exception {
+        File dbFile = tempDir.resolve("rocky.db").toFile();
+        try (BufferedPool pool = new BufferedPool(dbFile, 64)) {
+            BLinkTree tree = treeOver(pool, log);
+            for (int i = 0; i < 10; i++) {
+                tree.addValue(key(i), randomValue(i, 1000));
+            }
+            log.close();
+            log = new ValueLog(basePath, SEGMENT_SIZE);
+            BLinkTree reopened = treeOver(pool, log);
+            for (int i = 0; i < 5; i++) {
+                reopened.addValue(key(i), randomValue(-i, 1000)); // a third of the segment, not half
+            }
+            for (int i = 10; log.segmentCount() < 2; i++) {
+                reopened.addValue(key(i), randomValue(i, 1000));
+            }
+            List<File> before = ValueLog.segmentFiles(basePath);
+
+            while (log.collect(reopened, pool::commit)) {
+                // measures the sealed segment, which is not due
+            }
+            reopened.get(key(0));
+
+            assertEquals(new HashSet<>(before), new HashSet<>(ValueLog.segmentFiles(basePath)));
+            assertFalse(log.needsCollection());
+            assertEquals(randomValue(7, 1000), reopened.get(key(7)));
+        }
+    }
+}
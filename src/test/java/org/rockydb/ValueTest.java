@@ -83,6 +83,18 @@ class ValueTest {
         assertFalse(result);
     }
 
+    @Test
+    void equalsTellsOverflowReferencesFromValuesWithTheSameBytes() {
+        Value given = new Value(new byte[]{1, 2}, true);
+        Value inline = new Value(new byte[]{1, 2});
+
+        boolean result = given.equals(inline);
+
+        assertFalse(result);
+        assertTrue(given.isOverflowRef());
+        assertFalse(inline.isOverflowRef());
+    }
+
     @Test
     void hashCodeIsConsistentWithEquals() {
         Value given = new Value(new byte[]{5, 6, 7});
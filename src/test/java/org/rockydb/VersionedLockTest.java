@@ -0,0 +1,50 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionedLockTest {
+
+    @Test
+    void stampStaysValidWhileOnlyReadersLock() {
+        VersionedLock given = new VersionedLock();
+        long stamp = given.tryOptimisticRead();
+
+        given.readLock().lock();
+        given.readLock().unlock();
+
+        assertNotEquals(0, stamp);
+        assertTrue(given.validate(stamp));
+    }
+
+    @Test
+    void writeLockInvalidatesEarlierStampsAndRefusesNewOnes() {
+        VersionedLock given = new VersionedLock();
+        long before = given.tryOptimisticRead();
+
+        given.writeLock().lock();
+        long during = given.tryOptimisticRead();
+        given.writeLock().unlock();
+
+        assertEquals(0, during);
+        assertFalse(given.validate(during));
+        assertFalse(given.validate(before));
+        assertTrue(given.validate(given.tryOptimisticRead()));
+    }
+
+    @Test
+    void reentrantWriteLockCountsAsOneWrite() {
+        VersionedLock given = new VersionedLock();
+
+        given.writeLock().lock();
+        given.writeLock().lock();
+        given.writeLock().unlock();
+        long stillLocked = given.tryOptimisticRead();
+        given.writeLock().unlock();
+
+        assertEquals(0, stillLocked);
+        assertNotEquals(0, given.tryOptimisticRead());
+        assertFalse(given.isWriteLocked());
+    }
+}
@@ -0,0 +1,293 @@
+package org.rockydb;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Value v(String s) {
+        return new Value(s.getBytes());
+    }
+
+    private File base() {
+        return tempDir.resolve("rocky.db.wal").toFile();
+    }
+
+    /** A log ready for appending, as the pool leaves it after recovery. */
+    private WriteAheadLog fresh() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(base(), 0);
+        wal.reset();
+        return wal;
+    }
+
+    private List<String> replayAll(long fromLsn) throws IOException {
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(base(), 0)) {
+            wal.replay(fromLsn, new Recorder(replayed));
+        }
+        return replayed;
+    }
+
+    @Test
+    void replayReturnsFlushedRecordsInAppendOrder() throws Exception {
+        ByteBuffer page = PageCodec.serialize(new LeafNode(3, 1, new Value[]{v("a")}, new Value[]{v("1")}, 9L));
+        try (WriteAheadLog wal = fresh()) {
+            wal.logPage(3, page);
+            wal.logPut(3, v("b"), v("2"));
+            wal.logDelete(3, v("a"));
+            wal.logRoot(3);
+            wal.logFree(7);
+            wal.flushAll();
+        }
+
+        List<String> replayed = new ArrayList<>();
+        ByteBuffer[] image = new ByteBuffer[1];
+        try (WriteAheadLog wal = new WriteAheadLog(base(), 0)) {
+            int result = wal.replay(0, new Recorder(replayed) {
+                @Override
+                public void page(long pageId, ByteBuffer p) {
+                    super.page(pageId, p);
+                    image[0] = p;
+                }
+            });
+            assertEquals(5, result);
+        }
+
+        assertEquals(List.of("page 3", "put 3 b=2", "delete 3 a", "root 3", "free 7"), replayed);
+        assertEquals(page.clear(), image[0].clear());
+    }
+
+    @Test
+    void oneFlushCoversEveryRecordAppendedBeforeIt() throws Exception {
+        try (WriteAheadLog wal = fresh()) {
+            long first = wal.logPut(1, v("a"), v("1"));
+            wal.logPut(1, v("b"), v("2"));
+            long last = wal.logPut(1, v("c"), v("3"));
+
+            wal.flush(first);
+            wal.flush(last);
+
+            assertEquals(1, wal.forces());
+            assertEquals(last, wal.durableLsn());
+        }
+    }
+
+    @Test
+    void beforeWriteHookRunsBeforeRecordsReachTheFile() throws Exception {
+        try (WriteAheadLog wal = fresh()) {
+            File segment = WriteAheadLog.segmentFiles(base()).get(0);
+            List<Long> sizesSeen = new ArrayList<>();
+            wal.beforeWrite(() -> sizesSeen.add(segment.length()));
+            long headerOnly = segment.length();
+
+            wal.logPut(1, v("a"), v("1"));
+            assertTrue(sizesSeen.isEmpty());
+            wal.flushAll();
+
+            assertEquals(List.of(headerOnly), sizesSeen);
+            assertTrue(segment.length() > headerOnly);
+        }
+    }
+
+    @Test
+    void unflushedRecordsAreLostAndTornTailIsIgnored() throws Exception {
+        try (WriteAheadLog wal = fresh()) {
+            wal.logPut(1, v("kept"), v("1"));
+            wal.flushAll();
+            wal.logPut(1, v("lost"), v("2"));
+        }
+        File segment = WriteAheadLog.segmentFiles(base()).get(0);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, WriteAheadLog.PUT, 0, 0});
+        }
+
+        assertEquals(List.of("put 1 kept=1"), replayAll(0));
+    }
+
+    @Test
+    void slottedPageImageLeavesOutFreeSpace() throws Exception {
+        ByteBuffer page = PageCodec.serialize(new LeafNode(2, 1, new Value[]{v("k")}, new Value[]{v("v")}, -1L));
+        try (WriteAheadLog wal = fresh()) {
+            long before = wal.appendedLsn();
+
+            long result = wal.logPage(2, page);
+
+            assertTrue(result - before < 100, "logged " + (result - before) + " bytes");
+        }
+    }
+
+    @Test
+    void overflowReferencesReplayAsReferencesAndOverflowPagesLeaveOutFreeSpace() throws Exception {
+        ByteBuffer overflowPage = ByteBuffer.allocate(Store.PAGE_SIZE);
+        overflowPage.put(0, ByteUtils.createFlags(false, ByteUtils.FORMAT_OVERFLOW));
+        overflowPage.putShort(OverflowChain.LENGTH_OFFSET, (short) 10);
+        Value ref = new Value(new byte[OverflowChain.REF_SIZE], true);
+        List<Value> values = new ArrayList<>();
+        try (WriteAheadLog wal = fresh()) {
+            long before = wal.appendedLsn();
+            long result = wal.logPage(4, overflowPage);
+            assertTrue(result - before < 100, "logged " + (result - before) + " bytes");
+            wal.logPut(3, v("a"), ref);
+            wal.logPut(3, v("b"), v("2"));
+            wal.flushAll();
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(base(), 0)) {
+            wal.replay(0, new Recorder(new ArrayList<>()) {
+                @Override
+                public void put(long pageId, Value key, Value value) {
+                    values.add(value);
+                }
+            });
+        }
+
+        assertEquals(List.of(ref, v("2")), values);
+    }
+
+    @Test
+    void resetDropsRecordsAndKeepsLsnsGrowing() throws Exception {
+        long before;
+        try (WriteAheadLog wal = fresh()) {
+            before = wal.logRoot(5);
+            wal.flushAll();
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(base(), 0)) {
+            wal.replay(0, new Recorder(new ArrayList<>()));
+            wal.reset();
+
+            long result = wal.logRoot(6);
+            wal.flushAll();
+
+            assertTrue(result > before);
+        }
+
+        assertEquals(List.of("root 6"), replayAll(0));
+    }
+
+    @Test
+    void rollsOverSegmentsAndTruncatesThoseBehindTheCheckpoint() throws Exception {
+        long checkpoint = 0;
+        try (WriteAheadLog wal = new WriteAheadLog(base(), 0, 256)) {
+            wal.reset();
+            for (int i = 0; i < 20; i++) {
+                long lsn = wal.logPut(1, v("key" + i), v("value" + i));
+                wal.flushAll();
+                if (i == 9) {
+                    checkpoint = lsn;
+                }
+            }
+            int segments = wal.segmentCount();
+
+            wal.truncateBefore(checkpoint);
+
+            assertTrue(segments > 2, "segments: " + segments);
+            assertTrue(wal.segmentCount() < segments);
+            assertEquals(wal.segmentCount(), WriteAheadLog.segmentFiles(base()).size());
+        }
+
+        List<String> result = replayAll(checkpoint);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 10; i < 20; i++) {
+            expected.add("put 1 key" + i + "=value" + i);
+        }
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void newLogStartsAtTheGivenLsn() throws Exception {
+        try (WriteAheadLog wal = new WriteAheadLog(base(), 1_000_000)) {
+            wal.reset();
+
+            assertTrue(wal.logRoot(1) > 1_000_000);
+        }
+    }
+
+    @Test
+    void rejectsSegmentThatIsNotALog() throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(base().getPath() + ".0000000000000000", "rw")) {
+            raf.write(new byte[64]);
+        }
+
+        assertThrows(IOException.class, () -> new WriteAheadLog(base(), 0));
+    }
+
+    @Test
+    void recoveryFailsOnChangesToAPageThatHoldsNoLeaf() throws Exception {
+        try (DiscStore store = new DiscStore(tempDir.resolve("rocky.db").toFile());
+             WriteAheadLog wal = fresh()) {
+            store.writePage(5, PageCodec.serialize(new BranchNode(5L, 2, new Value[]{v("m")}, new long[]{6, 7}, -1L)));
+            wal.logPut(5, v("a"), v("1"));
+            wal.flushAll();
+
+            assertThrows(IOException.class, () -> Recovery.run(wal, store));
+            assertTrue(PageCodec.deserialize(5, store.readRawPage(5)) instanceof BranchNode);
+        }
+    }
+
+    @Test
+    void recoveryRedoesChangesToAPageThatHoldsNoLeafWhenALaterImageReplacesIt() throws Exception {
+        try (DiscStore store = new DiscStore(tempDir.resolve("rocky.db").toFile());
+             WriteAheadLog wal = fresh()) {
+            store.writePage(5, PageCodec.serialize(new BranchNode(5L, 2, new Value[]{v("m")}, new long[]{6, 7}, -1L)));
+            wal.logPut(5, v("a"), v("1"));
+            wal.logPage(5, PageCodec.serialize(new LeafNode(5, 1, new Value[]{v("b")}, new Value[]{v("2")}, -1L)));
+            wal.logPut(5, v("c"), v("3"));
+            wal.logPut(9, v("d"), v("4")); // past the end of the file
+            wal.flushAll();
+
+            Recovery.run(wal, store);
+
+            LeafNode result = (LeafNode) PageCodec.deserialize(5, store.readRawPage(5));
+            assertArrayEquals(new Value[]{v("b"), v("c")}, result.getKeys());
+            assertArrayEquals(new Value[]{v("d")}, ((LeafNode) PageCodec.deserialize(9, store.readRawPage(9))).getKeys());
+        }
+    }
+
+    private static class Recorder implements WriteAheadLog.Redo {
+        private final List<String> records;
+
+        Recorder(List<String> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void page(long pageId, ByteBuffer page) {
+            records.add("page " + pageId);
+        }
+
+        @Override
+        public void put(long pageId, Value key, Value value) {
+            records.add("put " + pageId + " " + new String(key.bytes()) + "=" + new String(value.bytes()));
+        }
+
+        @Override
+        public void delete(long pageId, Value key) {
+            records.add("delete " + pageId + " " + new String(key.bytes()));
+        }
+
+        @Override
+        public void root(long rootId) {
+            records.add("root " + rootId);
+        }
+
+        @Override
+        public void free(long pageId) {
+            records.add("free " + pageId);
+        }
+    }
+}